@@ -0,0 +1,47 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Implementation of {@link DistanceReduction} using the incubating Vector API.
+ * Only compiled with the "vector" Maven profile and only used if the JVM was started with
+ * --add-modules jdk.incubator.vector (see {@link DistanceReduction#create()}).
+ * Each block of positions keeps its running min and sum in registers while every detective row is added.
+ */
+public final class VectorDistanceReduction implements DistanceReduction {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public void reduce(float[][] distances, int n, float[] closest, float[] total){
+        int upper = SPECIES.loopBound(n);
+        int i = 0;
+        for(; i < upper; i += SPECIES.length()){
+            FloatVector min = FloatVector.broadcast(SPECIES, Float.POSITIVE_INFINITY);
+            FloatVector sum = FloatVector.zero(SPECIES);
+            for(float[] row : distances){
+                FloatVector v = FloatVector.fromArray(SPECIES, row, i);
+                min = min.min(v);
+                sum = sum.add(v);
+            }
+            min.intoArray(closest, i);
+            sum.intoArray(total, i);
+        }
+        //Positions that don't fill a whole vector
+        for(; i < n; i++){
+            float min = Float.POSITIVE_INFINITY;
+            float sum = 0;
+            for(float[] row : distances){
+                min = Math.min(min, row[i]);
+                sum += row[i];
+            }
+            closest[i] = min;
+            total[i] = sum;
+        }
+    }
+
+    @Override
+    public String name(){
+        return "vector (" + SPECIES.length() + " lanes)";
+    }
+}
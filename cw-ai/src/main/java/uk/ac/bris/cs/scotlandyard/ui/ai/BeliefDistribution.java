@@ -0,0 +1,185 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import java.util.Arrays;
+
+/**
+ * Probability of MrX being at each node, from the detectives' point of view.
+ * MrX is assumed to pick uniformly between the distinct nodes he can reach with the ticket he used, so
+ * (unlike a {@link BeliefSet}) locations that many routes lead to are more likely than those that few do.
+ * Probabilities are stored in a primitive array indexed by the dense indices of a {@link CompiledGraph}, and
+ * each ticket's transition matrix is stored in compressed sparse row form, so one round of propagation
+ * is a single pass of multiply-adds over contiguous arrays.
+ */
+public final class BeliefDistribution {
+    private final TransitionMatrices matrices;
+    private final double[] probabilities; //Indexed by dense index
+
+    /**
+     * Creates a distribution
+     * @param matrices The transition matrices of the graph
+     * @param probabilities The probabilities (not copied)
+     */
+    private BeliefDistribution(TransitionMatrices matrices, double[] probabilities){
+        this.matrices = matrices;
+        this.probabilities = probabilities;
+    }
+
+    /**
+     * Creates a distribution that is uniform over some locations
+     * @param matrices The transition matrices of the graph
+     * @param locations The locations (node ids)
+     * @return The distribution
+     */
+    public static BeliefDistribution uniform(TransitionMatrices matrices, Iterable<Integer> locations){
+        double[] probabilities = new double[matrices.graph.size()];
+        for(Integer location : locations) probabilities[matrices.graph.index(location)] = 1;
+        BeliefDistribution distribution = new BeliefDistribution(matrices, probabilities);
+        distribution.normalise();
+        return distribution;
+    }
+
+    /**
+     * Creates a copy of the distribution that can be changed independently
+     * @return The copy
+     */
+    public BeliefDistribution copy(){
+        return new BeliefDistribution(matrices, probabilities.clone());
+    }
+
+    /**
+     * Gets the distribution after MrX uses a ticket. The result is normalised.
+     * @param ticket The ticket used
+     * @return The new distribution
+     */
+    public BeliefDistribution propagate(ScotlandYard.Ticket ticket){
+        int t = ticket.ordinal();
+        int[] rowStart = matrices.rowStart[t];
+        if(rowStart == null) throw new IllegalArgumentException(ticket + " tickets can't be used to travel");
+        int[] source = matrices.source[t];
+        float[] weight = matrices.weight[t];
+        double[] next = new double[probabilities.length];
+        //Each row holds the edges into a node, so every row is an independent dot product
+        for(int j = 0; j < next.length; j++){
+            double sum = 0;
+            for(int k = rowStart[j]; k < rowStart[j + 1]; k++) sum += probabilities[source[k]] * weight[k];
+            next[j] = sum;
+        }
+        BeliefDistribution distribution = new BeliefDistribution(matrices, next);
+        distribution.normalise();
+        return distribution;
+    }
+
+    /**
+     * Removes a location (e.g. one occupied by a detective). The distribution isn't renormalised.
+     * @param location The node id
+     */
+    public void exclude(int location){
+        int index = matrices.graph.index(location);
+        if(index != CompiledGraph.NO_INDEX) probabilities[index] = 0;
+    }
+
+    /**
+     * Scales the probabilities so they sum to 1 (if any are non-zero)
+     */
+    public void normalise(){
+        double total = 0;
+        for(double p : probabilities) total += p;
+        if(total <= 0) return;
+        double scale = 1 / total;
+        for(int i = 0; i < probabilities.length; i++) probabilities[i] *= scale;
+    }
+
+    /**
+     * Gets the probability of MrX being at a node
+     * @param location The node id
+     * @return The probability
+     */
+    public double probability(int location){
+        int index = matrices.graph.index(location);
+        return index == CompiledGraph.NO_INDEX ? 0 : probabilities[index];
+    }
+
+    /**
+     * Gets the number of locations with a non-zero probability
+     * @return The number of locations
+     */
+    public int supportSize(){
+        int size = 0;
+        for(double p : probabilities) if(p > 0) size++;
+        return size;
+    }
+
+    /**
+     * Gets a copy of the probabilities, indexed by the dense indices of the compiled graph
+     * @return The probabilities
+     */
+    public double[] toArray(){
+        return Arrays.copyOf(probabilities, probabilities.length);
+    }
+
+    /**
+     * The transition matrix of each ticket, stored in compressed sparse row form.
+     * Row j holds the edges into node j, with the probability that MrX (at the source) moved along the edge.
+     */
+    public static final class TransitionMatrices {
+        private final CompiledGraph graph;
+        private final int[][] rowStart; //[ticket][j] to [ticket][j + 1] are the edges into j (null for double)
+        private final int[][] source; //Source index of each edge
+        private final float[][] weight; //Probability of each edge being taken
+
+        /**
+         * Creates the matrices for a graph
+         * @param graph The compiled graph
+         */
+        public TransitionMatrices(CompiledGraph graph){
+            this.graph = graph;
+            int n = graph.size();
+            int noTickets = ScotlandYard.Ticket.values().length;
+            rowStart = new int[noTickets][];
+            source = new int[noTickets][];
+            weight = new float[noTickets][];
+            for(ScotlandYard.Ticket ticket : ScotlandYard.Ticket.values()){
+                int transports = CompiledGraph.transportsForTicket(ticket);
+                if(transports == 0) continue;
+                int t = ticket.ordinal();
+                //Counts the edges out of (and into) each node that the ticket can be used on
+                int[] outDegree = new int[n];
+                int[] starts = new int[n + 1];
+                for(int i = 0; i < n; i++){
+                    for(int e = graph.edgeStart(i); e < graph.edgeEnd(i); e++){
+                        if((graph.edgeTransports(e) & transports) == 0) continue;
+                        outDegree[i]++;
+                        starts[graph.edgeTarget(e) + 1]++;
+                    }
+                }
+                for(int j = 0; j < n; j++) starts[j + 1] += starts[j];
+                int[] sources = new int[starts[n]];
+                float[] weights = new float[starts[n]];
+                int[] fill = Arrays.copyOf(starts, n);
+                for(int i = 0; i < n; i++){
+                    for(int e = graph.edgeStart(i); e < graph.edgeEnd(i); e++){
+                        if((graph.edgeTransports(e) & transports) == 0) continue;
+                        int k = fill[graph.edgeTarget(e)]++;
+                        sources[k] = i;
+                        weights[k] = 1f / outDegree[i];
+                    }
+                }
+                rowStart[t] = starts;
+                source[t] = sources;
+                weight[t] = weights;
+            }
+        }
+
+        /**
+         * Gets the number of non-zero entries stored across all matrices
+         * @return The number of entries
+         */
+        public int entryCount(){
+            int count = 0;
+            for(int[] s : source) if(s != null) count += s.length;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,602 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Expectimax search for the detectives that works directly on their belief of where MrX could be.
+ * Instead of creating one game state per possible MrX location (as {@link MyGameState#getPossibleStates(Board)}
+ * does), each node stores the set of all possible locations once. Detective moves are min nodes (a detective
+ * landing on a possible location catches MrX with the probability of him being there) and MrX's hidden replies
+ * are chance nodes over the ticket he is seen to use (or the location he reveals). MrX is modelled as picking
+ * one of his usable tickets uniformly at random, and double moves aren't modelled.
+ * Chance nodes are pruned using Ballard's Star1 and Star2 bounds, which can be done as the evaluation
+ * is bounded by DETECTIVE_WINS and MRX_WINS. The cost of a node is proportional to the size of the belief
+ * rather than the belief size times the tree.
+ */
+public final class BeliefExpectimax implements DepthLimitedSearch {
+    private static final float LOWER = Heuristic.DETECTIVE_WINS;
+    private static final float UPPER = Heuristic.MRX_WINS;
+    private static final int NO_TICKETS = PlayoutState.NO_TICKETS;
+    private static final int[] DETECTIVE_TICKETS = {PlayoutState.TAXI, PlayoutState.BUS, PlayoutState.UNDERGROUND};
+    private static final int[] TICKET_TRANSPORTS = new int[NO_TICKETS];
+    static{
+        for(ScotlandYard.Ticket t : ScotlandYard.Ticket.values()){
+            TICKET_TRANSPORTS[t.ordinal()] = CompiledGraph.transportsForTicket(t);
+        }
+    }
+    private final CompiledGraph graph;
+    private final int[] distances; //Distances between dense indices, indexed [from * size + to]
+    private final int size;
+    private final boolean[] reveal; //Whether MrX reveals himself on a given round
+    private final Node root;
+    private final ImmutableList<Move> rootMoves;
+    private final int[] rootOrder; //Order in which root moves are searched (best first)
+    private final int[] rootEncoded; //Root moves encoded as detective moves of the root node
+    private final DistanceReduction reduction = DistanceReduction.create();
+    //Scratch columns used to evaluate every possible MrX location of a node at once
+    private int[] candidates = new int[0];
+    private float[][] candidateDistances = new float[0][0];
+    private float[] closest = new float[0];
+    private float[] total = new float[0];
+    private volatile boolean killSearch = false;
+    private long nodeCount = 0; //Nodes visited (only changed by the search thread)
+
+    /**
+     * Creates a new search from the detectives' point of view
+     * @param board The current board. It must be a detective's turn
+     * @param graph The compiled version of the board's graph
+     * @param distances Dense distance table for the graph, indexed [from * size + to] (see
+     *                  {@link PlayoutEngine#denseDistances(CompiledGraph, CachedDijkstra)})
+     */
+    public BeliefExpectimax(Board board, CompiledGraph graph, int[] distances){
+        this(board, graph, distances, MrXLocations.getPossibleMrXLocations(board, false));
+    }
+
+    /**
+     * Creates a new search from the detectives' point of view using already known MrX locations
+     * @param board The current board. It must be a detective's turn
+     * @param graph The compiled version of the board's graph
+     * @param distances Dense distance table for the graph, indexed [from * size + to]
+     * @param possibleLocations All of MrX's possible locations (e.g. from a {@link BeliefTracker})
+     */
+    public BeliefExpectimax(Board board, CompiledGraph graph, int[] distances, Collection<Integer> possibleLocations){
+        if(board.getAvailableMoves().isEmpty() ||
+                board.getAvailableMoves().asList().get(0).commencedBy().isMrX())
+            throw new IllegalArgumentException("Root state can't be terminal and must be a detective move");
+        this.graph = graph;
+        this.distances = distances;
+        this.size = graph.size();
+        this.reveal = new boolean[board.getSetup().moves.size()];
+        for(int i = 0; i < reveal.length; i++) reveal[i] = board.getSetup().moves.get(i);
+        //Creates root node
+        List<Piece.Detective> pieces = new ArrayList<>();
+        for(Piece.Detective p : Piece.Detective.values()){
+            if(board.getDetectiveLocation(p).isPresent()) pieces.add(p);
+        }
+        int[] detectives = new int[pieces.size()];
+        int[] detectiveTickets = new int[pieces.size() * NO_TICKETS];
+        int[] mrXTickets = new int[NO_TICKETS];
+        for(int d = 0; d < pieces.size(); d++){
+            detectives[d] = graph.index(board.getDetectiveLocation(pieces.get(d)).get());
+            for(ScotlandYard.Ticket t : ScotlandYard.Ticket.values()){
+                detectiveTickets[d * NO_TICKETS + t.ordinal()] = board.getPlayerTickets(pieces.get(d)).get().getCount(t);
+            }
+        }
+        for(ScotlandYard.Ticket t : ScotlandYard.Ticket.values()){
+            mrXTickets[t.ordinal()] = board.getPlayerTickets(Piece.MrX.MRX).get().getCount(t);
+        }
+        BitSet belief = new BitSet(size);
+        for(Integer location : possibleLocations) belief.set(graph.index(location));
+        //Root moves are mapped onto the detectives of the root node
+        rootMoves = board.getAvailableMoves().asList();
+        rootEncoded = new int[rootMoves.size()];
+        int remaining = 0;
+        for(int i = 0; i < rootMoves.size(); i++){
+            Move.SingleMove sm = (Move.SingleMove) rootMoves.get(i); //Cast is safe as detective moves are single
+            int d = pieces.indexOf(sm.commencedBy());
+            remaining |= 1 << d;
+            rootEncoded[i] = encode(d, graph.index(sm.destination), sm.ticket.ordinal());
+        }
+        root = new Node(detectives, detectiveTickets, mrXTickets, belief, board.getMrXTravelLog().size(), remaining);
+        rootOrder = new int[rootMoves.size()];
+        for(int i = 0; i < rootOrder.length; i++) rootOrder[i] = i;
+    }
+
+    @Override
+    public ImmutableList<Move> getRootMoves(){
+        return rootMoves;
+    }
+
+    @Override
+    public void killSearch(){
+        killSearch = true;
+    }
+
+    @Override
+    public long getNodeCount(){
+        return nodeCount;
+    }
+
+    @Override
+    public Move getBestMove(int maxDepth) throws Minimax.MinimaxSearchInterrupted{
+        //Searches the moves in the order of the previous iteration's values, as the best move is likely the same
+        float best = Float.POSITIVE_INFINITY;
+        int bestMove = rootOrder[0];
+        float[] values = new float[rootOrder.length];
+        for(int i : rootOrder){
+            int m = rootEncoded[i];
+            float value = detectiveMoveValue(root, decodeDetective(m), decodeDestination(m), decodeTicket(m),
+                    maxDepth, Float.NEGATIVE_INFINITY, best);
+            values[i] = value;
+            if(value < best){
+                best = value;
+                bestMove = i;
+            }
+        }
+        float[] keys = new float[rootOrder.length];
+        for(int i = 0; i < rootOrder.length; i++) keys[i] = values[rootOrder[i]];
+        sortByValue(rootOrder, keys, rootOrder.length);
+        return rootMoves.get(bestMove);
+    }
+
+    /**
+     * Gets the value of a node
+     * @param n The node
+     * @param depth The remaining depth
+     * @param alpha The lower bound of the search window
+     * @param beta The upper bound of the search window
+     * @return The (expected) value of the node, or a bound on it if it lies outside the window
+     * @throws Minimax.MinimaxSearchInterrupted If the search has been killed
+     */
+    private float value(Node n, int depth, float alpha, float beta) throws Minimax.MinimaxSearchInterrupted{
+        if(killSearch) throw new Minimax.MinimaxSearchInterrupted("Search Interrupted");
+        nodeCount++;
+        if(n.remaining == 0){
+            if(n.round >= reveal.length) return UPPER; //MrX has survived every round
+            if(depth == 0) return evaluate(n);
+            return mrXChanceNode(n, depth, alpha, beta);
+        }
+        if(depth == 0) return evaluate(n);
+        return detectiveNode(n, depth, alpha, beta, false);
+    }
+
+    /**
+     * Searches a node where detectives are to move (the detectives minimise the value)
+     * @param n The node
+     * @param depth The remaining depth
+     * @param alpha The lower bound of the search window
+     * @param beta The upper bound of the search window
+     * @param probeOnly If true, only the first ordered move is searched. This gives an upper bound on
+     *                  the value of the node and is used for Star2 probing.
+     * @return The value of the node (or a bound)
+     * @throws Minimax.MinimaxSearchInterrupted If the search has been killed
+     */
+    private float detectiveNode(Node n, int depth, float alpha, float beta, boolean probeOnly)
+            throws Minimax.MinimaxSearchInterrupted{
+        int[] moves = new int[maxDetectiveMoves(n)];
+        int noMoves = generateDetectiveMoves(n, moves);
+        if(noMoves == 0){
+            //If no detective has moved this round, MrX wins. Otherwise, the stuck detectives are skipped
+            if(n.remaining == (1 << n.detectives.length) - 1) return UPPER;
+            return value(n.withRemaining(0), depth, alpha, beta);
+        }
+        orderDetectiveMoves(n, moves, noMoves);
+        float best = Float.POSITIVE_INFINITY;
+        int limit = probeOnly ? 1 : noMoves;
+        for(int i = 0; i < limit; i++){
+            int m = moves[i];
+            float value = detectiveMoveValue(n, decodeDetective(m), decodeDestination(m), decodeTicket(m),
+                    depth, alpha, Math.min(beta, best));
+            best = Math.min(best, value);
+            if(best <= alpha) return best; //Cutoff, MrX can already force a higher value elsewhere
+        }
+        return best;
+    }
+
+    /**
+     * Gets the value of making a detective move. If the destination is a possible MrX location,
+     * MrX is caught with the probability of him being there.
+     * @param n The node the move is made from
+     * @param d The detective
+     * @param destination The destination
+     * @param ticket The ticket used
+     * @param depth The remaining depth of the node the move is made from
+     * @param alpha The lower bound of the search window
+     * @param beta The upper bound of the search window
+     * @return The value of the move (or a bound)
+     * @throws Minimax.MinimaxSearchInterrupted If the search has been killed
+     */
+    private float detectiveMoveValue(Node n, int d, int destination, int ticket, int depth, float alpha, float beta)
+            throws Minimax.MinimaxSearchInterrupted{
+        int beliefSize = n.belief.cardinality();
+        float pCatch = n.belief.get(destination) ? 1f / beliefSize : 0f;
+        if(beliefSize == 0 || pCatch == 1f) return LOWER;
+        Node child = n.afterDetectiveMove(d, destination, ticket);
+        //value = pCatch * LOWER + pEscape * childValue, so the window is transformed for the child
+        float pEscape = 1f - pCatch;
+        float childValue = value(child, depth - 1, (alpha - pCatch * LOWER) / pEscape,
+                (beta - pCatch * LOWER) / pEscape);
+        return pCatch * LOWER + pEscape * childValue;
+    }
+
+    /**
+     * Searches a chance node where MrX makes a hidden (or revealed) move. Star2 probing is used to get an
+     * upper bound on each outcome, then Star1 pruning is used while the outcomes are searched.
+     * @param n The node
+     * @param depth The remaining depth
+     * @param alpha The lower bound of the search window
+     * @param beta The upper bound of the search window
+     * @return The expected value of the node (or a bound)
+     * @throws Minimax.MinimaxSearchInterrupted If the search has been killed
+     */
+    private float mrXChanceNode(Node n, int depth, float alpha, float beta) throws Minimax.MinimaxSearchInterrupted{
+        List<Node> outcomes = new ArrayList<>();
+        List<Float> probabilities = new ArrayList<>();
+        //Probability mass of MrX being stranded (and so caught). This is an exact value
+        float exact = LOWER * mrXOutcomes(n, outcomes, probabilities);
+        int k = outcomes.size();
+        float[] p = new float[k];
+        float[] upper = new float[k];
+        for(int i = 0; i < k; i++){
+            p[i] = probabilities.get(i);
+            upper[i] = UPPER;
+        }
+        //Star2: probes the first move of each outcome to get an upper bound on each outcome (min nodes)
+        float upperSum = exact;
+        for(int i = 0; i < k; i++) upperSum += p[i] * UPPER;
+        if(depth > 1){
+            for(int i = 0; i < k; i++){
+                float others = upperSum - p[i] * upper[i];
+                upper[i] = Math.min(UPPER, probe(outcomes.get(i), depth - 1, (alpha - others) / p[i], UPPER));
+                upperSum = others + p[i] * upper[i];
+                if(upperSum <= alpha) return upperSum; //Fail low: can't get above alpha
+            }
+        }
+        //Star1: each outcome is searched with a window derived from the bounds of the unsearched outcomes
+        float sum = exact;
+        float remainingUpper = upperSum - exact;
+        float remainingLower = 0;
+        for(int i = 0; i < k; i++) remainingLower += p[i] * LOWER;
+        for(int i = 0; i < k; i++){
+            remainingUpper -= p[i] * upper[i];
+            remainingLower -= p[i] * LOWER;
+            float childAlpha = (alpha - sum - remainingUpper) / p[i];
+            float childBeta = (beta - sum - remainingLower) / p[i];
+            if(childAlpha >= upper[i]) return sum + p[i] * upper[i] + remainingUpper;
+            if(childBeta <= LOWER) return sum + p[i] * LOWER + remainingLower;
+            float v = value(outcomes.get(i), depth - 1, Math.max(childAlpha, LOWER), Math.min(childBeta, upper[i]));
+            sum += p[i] * v;
+            if(v <= childAlpha) return sum + remainingUpper; //Fail low
+            if(v >= childBeta) return sum + remainingLower; //Fail high
+        }
+        return sum;
+    }
+
+    /**
+     * Star2 probe of an outcome node
+     * @param n The node
+     * @param depth The remaining depth
+     * @param alpha The lower bound of the search window
+     * @param beta The upper bound of the search window
+     * @return An upper bound on the value of the node
+     * @throws Minimax.MinimaxSearchInterrupted If the search has been killed
+     */
+    private float probe(Node n, int depth, float alpha, float beta) throws Minimax.MinimaxSearchInterrupted{
+        if(killSearch) throw new Minimax.MinimaxSearchInterrupted("Search Interrupted");
+        if(depth == 0 || n.remaining == 0) return value(n, depth, alpha, beta);
+        return detectiveNode(n, depth, alpha, beta, true);
+    }
+
+    /**
+     * Calculates all outcomes of MrX's move as seen by the detectives, sorted most likely first.
+     * On hidden rounds the outcome is the ticket used. On reveal rounds it's the ticket and the location.
+     * @param n The node MrX moves from
+     * @param outcomes List to add the resulting nodes to
+     * @param probabilities List to add the probability of each outcome to
+     * @return The probability that MrX is stranded
+     */
+    private float mrXOutcomes(Node n, List<Node> outcomes, List<Float> probabilities){
+        int beliefSize = n.belief.cardinality();
+        if(beliefSize == 0) return 1f;
+        final boolean isReveal = reveal[n.round];
+        BitSet[] next = new BitSet[NO_TICKETS];
+        float[] ticketWeight = new float[NO_TICKETS];
+        float[] locationWeight = isReveal ? new float[size * NO_TICKETS] : null;
+        int[] neighbourCount = new int[NO_TICKETS];
+        int noStranded = 0;
+        for(int t = 0; t < NO_TICKETS; t++) next[t] = new BitSet(size);
+        for(int c = n.belief.nextSetBit(0); c >= 0; c = n.belief.nextSetBit(c + 1)){
+            //Works out which tickets MrX could use from this location (and how many destinations each has)
+            int usable = 0;
+            Arrays.fill(neighbourCount, 0);
+            for(int e = graph.edgeStart(c); e < graph.edgeEnd(c); e++){
+                int target = graph.edgeTarget(e);
+                if(n.isDetectiveSquare(target)) continue;
+                for(int t = 0; t < NO_TICKETS; t++){
+                    if(n.mrXTickets[t] > 0 && (graph.edgeTransports(e) & TICKET_TRANSPORTS[t]) != 0){
+                        usable |= 1 << t;
+                        neighbourCount[t]++;
+                        next[t].set(target);
+                    }
+                }
+            }
+            int noUsable = Integer.bitCount(usable);
+            if(noUsable == 0){
+                noStranded++;
+                continue;
+            }
+            for(int t = 0; t < NO_TICKETS; t++){
+                if((usable & (1 << t)) != 0) ticketWeight[t] += 1f / noUsable;
+            }
+            if(isReveal){
+                //Each destination of a ticket is assumed to be equally likely
+                for(int e = graph.edgeStart(c); e < graph.edgeEnd(c); e++){
+                    int target = graph.edgeTarget(e);
+                    if(n.isDetectiveSquare(target)) continue;
+                    for(int t = 0; t < NO_TICKETS; t++){
+                        if((usable & (1 << t)) != 0 && (graph.edgeTransports(e) & TICKET_TRANSPORTS[t]) != 0){
+                            locationWeight[target * NO_TICKETS + t] += 1f / (noUsable * neighbourCount[t]);
+                        }
+                    }
+                }
+            }
+        }
+        List<float[]> sortable = new ArrayList<>(); //(probability, ticket, location)
+        if(isReveal){
+            for(int i = 0; i < locationWeight.length; i++){
+                if(locationWeight[i] > 0) sortable.add(new float[]{locationWeight[i] / beliefSize, i % NO_TICKETS,
+                        i / NO_TICKETS});
+            }
+        }else{
+            for(int t = 0; t < NO_TICKETS; t++){
+                if(ticketWeight[t] > 0) sortable.add(new float[]{ticketWeight[t] / beliefSize, t, -1});
+            }
+        }
+        sortable.sort((x, y) -> Float.compare(y[0], x[0]));
+        for(float[] outcome : sortable){
+            int ticket = (int) outcome[1];
+            BitSet belief;
+            if(isReveal){
+                belief = new BitSet(size);
+                belief.set((int) outcome[2]);
+            }else{
+                belief = next[ticket];
+            }
+            outcomes.add(n.afterMrXMove(ticket, belief));
+            probabilities.add(outcome[0]);
+        }
+        return noStranded / (float) beliefSize;
+    }
+
+    /**
+     * Statically evaluates a node as the expected heuristic value over all of MrX's possible locations
+     * @param n The node
+     * @return The value
+     */
+    private float evaluate(Node n){
+        int beliefSize = n.belief.cardinality();
+        if(beliefSize == 0) return LOWER;
+        int noSecret = n.mrXTickets[PlayoutState.SECRET];
+        int noDetectives = n.detectives.length;
+        if(candidates.length < beliefSize || candidateDistances.length != noDetectives){
+            int capacity = Math.max(beliefSize, candidates.length);
+            candidates = new int[capacity];
+            candidateDistances = new float[noDetectives][capacity];
+            closest = new float[capacity];
+            total = new float[capacity];
+        }
+        int k = 0;
+        for(int c = n.belief.nextSetBit(0); c >= 0; c = n.belief.nextSetBit(c + 1)) candidates[k++] = c;
+        //Gathers each detective's row of distances, then reduces all the rows at once
+        for(int d = 0; d < noDetectives; d++){
+            int start = n.detectives[d] * size;
+            float[] row = candidateDistances[d];
+            for(int i = 0; i < beliefSize; i++) row[i] = distances[start + candidates[i]];
+        }
+        reduction.reduce(candidateDistances, beliefSize, closest, total);
+        float value = 0;
+        for(int i = 0; i < beliefSize; i++){
+            float mean = total[i] / noDetectives;
+            float score = ClosestDetectiveHeuristic.combineTerms(closest[i], mean, noSecret, beliefSize);
+            value += Heuristic.clipValue(score);
+        }
+        return value / beliefSize;
+    }
+
+    /**
+     * Gets an upper bound on the number of detective moves from a node
+     * @param n The node
+     * @return The bound
+     */
+    private int maxDetectiveMoves(Node n){
+        int max = 0;
+        for(int d = 0; d < n.detectives.length; d++){
+            if((n.remaining & (1 << d)) != 0){
+                max += (graph.edgeEnd(n.detectives[d]) - graph.edgeStart(n.detectives[d])) * DETECTIVE_TICKETS.length;
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Generates the moves of all detectives that haven't moved yet this round
+     * @param n The node
+     * @param moves Buffer to write the encoded moves to
+     * @return The number of moves
+     */
+    private int generateDetectiveMoves(Node n, int[] moves){
+        int noMoves = 0;
+        for(int d = 0; d < n.detectives.length; d++){
+            if((n.remaining & (1 << d)) == 0) continue;
+            for(int e = graph.edgeStart(n.detectives[d]); e < graph.edgeEnd(n.detectives[d]); e++){
+                int target = graph.edgeTarget(e);
+                if(n.isDetectiveSquare(target)) continue;
+                for(int t : DETECTIVE_TICKETS){
+                    if(n.detectiveTickets[d * NO_TICKETS + t] > 0 && (graph.edgeTransports(e) & TICKET_TRANSPORTS[t]) != 0){
+                        moves[noMoves++] = encode(d, target, t);
+                    }
+                }
+            }
+        }
+        return noMoves;
+    }
+
+    /**
+     * Orders detective moves so that moves ending closest to one of MrX's possible locations are first
+     * @param n The node
+     * @param moves The encoded moves
+     * @param noMoves The number of moves
+     */
+    private void orderDetectiveMoves(Node n, int[] moves, int noMoves){
+        float[] keys = new float[noMoves];
+        for(int i = 0; i < noMoves; i++){
+            int destination = decodeDestination(moves[i]);
+            int closest = Integer.MAX_VALUE;
+            for(int c = n.belief.nextSetBit(0); c >= 0; c = n.belief.nextSetBit(c + 1)){
+                closest = Math.min(closest, distances[destination * size + c]);
+            }
+            keys[i] = closest;
+        }
+        sortByValue(moves, keys, noMoves);
+    }
+
+    /**
+     * Sorts an array of ints by ascending key (insertion sort, which is fast for the short lists used here)
+     * @param items The items to sort
+     * @param keys The key of each item (sorted along with the items)
+     * @param n The number of items
+     */
+    private static void sortByValue(int[] items, float[] keys, int n){
+        for(int i = 1; i < n; i++){
+            int item = items[i];
+            float key = keys[i];
+            int j = i - 1;
+            while(j >= 0 && keys[j] > key){
+                items[j + 1] = items[j];
+                keys[j + 1] = keys[j];
+                j--;
+            }
+            items[j + 1] = item;
+            keys[j + 1] = key;
+        }
+    }
+
+    /**
+     * Encodes a detective move
+     * @param detective The detective index
+     * @param destination The destination index
+     * @param ticket The ticket ordinal
+     * @return The encoded move
+     */
+    private static int encode(int detective, int destination, int ticket){
+        return (detective << 20) | (destination << 4) | ticket;
+    }
+
+    /**
+     * Gets the detective of an encoded move
+     * @param move The move
+     * @return The detective index
+     */
+    private static int decodeDetective(int move){ return move >>> 20; }
+
+    /**
+     * Gets the destination of an encoded move
+     * @param move The move
+     * @return The destination index
+     */
+    private static int decodeDestination(int move){ return (move >>> 4) & 0xFFFF; }
+
+    /**
+     * Gets the ticket of an encoded move
+     * @param move The move
+     * @return The ticket ordinal
+     */
+    private static int decodeTicket(int move){ return move & 15; }
+
+    /**
+     * A node of the search. This contains everything the detectives know, including the set of
+     * possible MrX locations. Nodes are immutable.
+     */
+    private static final class Node {
+        final int[] detectives; //Location of each detective
+        final int[] detectiveTickets; //Tickets indexed by [detective * NO_TICKETS + ticket]
+        final int[] mrXTickets;
+        final BitSet belief; //Possible locations of MrX
+        final int round; //Number of entries in MrX's travel log
+        final int remaining; //Bit d is set if detective d is still to move this round
+
+        Node(int[] detectives, int[] detectiveTickets, int[] mrXTickets, BitSet belief, int round, int remaining){
+            this.detectives = detectives;
+            this.detectiveTickets = detectiveTickets;
+            this.mrXTickets = mrXTickets;
+            this.belief = belief;
+            this.round = round;
+            this.remaining = remaining;
+        }
+
+        /**
+         * Checks whether a detective is on a location
+         * @param location The location
+         * @return True if a detective is there
+         */
+        boolean isDetectiveSquare(int location){
+            for(int det : detectives) if(det == location) return true;
+            return false;
+        }
+
+        /**
+         * Creates the node that results from a detective move. MrX isn't at the destination in the new node.
+         * @param d The detective
+         * @param destination The destination
+         * @param ticket The ticket used (which is given to MrX)
+         * @return The new node
+         */
+        Node afterDetectiveMove(int d, int destination, int ticket){
+            int[] newDetectives = detectives.clone();
+            newDetectives[d] = destination;
+            int[] newDetectiveTickets = detectiveTickets.clone();
+            newDetectiveTickets[d * NO_TICKETS + ticket]--;
+            int[] newMrXTickets = mrXTickets.clone();
+            newMrXTickets[ticket]++;
+            BitSet newBelief = belief;
+            if(belief.get(destination)){
+                newBelief = (BitSet) belief.clone();
+                newBelief.clear(destination);
+            }
+            return new Node(newDetectives, newDetectiveTickets, newMrXTickets, newBelief, round,
+                    remaining & ~(1 << d));
+        }
+
+        /**
+         * Creates the node that results from a MrX move
+         * @param ticket The ticket MrX used
+         * @param newBelief The possible locations of MrX after the move
+         * @return The new node (where all detectives are to move)
+         */
+        Node afterMrXMove(int ticket, BitSet newBelief){
+            int[] newMrXTickets = mrXTickets.clone();
+            newMrXTickets[ticket]--;
+            return new Node(detectives, detectiveTickets, newMrXTickets, newBelief, round + 1,
+                    (1 << detectives.length) - 1);
+        }
+
+        /**
+         * Creates a copy of this node with a different set of detectives left to move
+         * @param newRemaining The detectives left to move
+         * @return The new node
+         */
+        Node withRemaining(int newRemaining){
+            return new Node(detectives, detectiveTickets, mrXTickets, belief, round, newRemaining);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * Reduces a large set of possible MrX locations to a small number of weighted representatives.
+ * Candidates are first clustered by their distance to each detective (their "signature"), as locations
+ * that are the same distance from every detective tend to get similar scores. If there are still
+ * more clusters than can be searched in the time available, clusters are importance sampled,
+ * favouring the most dangerous ones (those furthest from the detectives).
+ * The weights are chosen so that a weighted sum over the representatives estimates the sum over
+ * all of the original candidates.
+ * When a {@link BeliefDistribution} is available, candidates are weighted by how likely MrX is to be there
+ * (still summing to the number of candidates) and very unlikely candidates are dropped.
+ */
+public final class BeliefReducer {
+    //Distances greater than this are treated as equal in a signature
+    public static final int SIGNATURE_CAP = 6;
+    //Candidates less likely than this fraction of the average probability are dropped
+    public static final double PRUNE_FRACTION = 0.01;
+    //Smoothing factor used when updating the measured cost per representative
+    private static final double COST_SMOOTHING = 0.3;
+    private final CachedDijkstra distance;
+    private final Random rand;
+    private double nanosPerRepresentative = 0;
+    private BeliefTracker tracker = null; //Kept between turns so only new log entries are processed
+
+    /**
+     * Creates a new belief reducer
+     * @param distance Distance calculator for the graph being played on
+     * @param rand Source of randomness used for sampling
+     */
+    public BeliefReducer(CachedDijkstra distance, Random rand){
+        this.distance = distance;
+        this.rand = rand;
+    }
+
+    /**
+     * A representative MrX location, standing in for a number of candidate locations
+     */
+    public static final class Representative {
+        private final Integer location;
+        private final float weight;
+
+        /**
+         * Creates a representative
+         * @param location The location
+         * @param weight The number of candidates the location represents
+         */
+        public Representative(Integer location, float weight){
+            this.location = location;
+            this.weight = weight;
+        }
+
+        /**
+         * Gets the location
+         * @return The location
+         */
+        public Integer getLocation() { return location; }
+
+        /**
+         * Gets the weight
+         * @return The number of candidate locations this representative stands in for
+         */
+        public float getWeight() { return weight; }
+    }
+
+    /**
+     * Reduces all possible MrX locations for a board so that they can be searched within a time budget.
+     * The cost of searching each representative is taken from previous calls to
+     * {@link BeliefReducer#recordCost(long, int)}. Until a cost has been recorded, only clustering is used.
+     * @param board The board
+     * @param budgetNanos The time that may be spent searching the representatives
+     * @return The weighted representatives
+     */
+    public List<Representative> reduce(Board board, long budgetNanos){
+        if(nanosPerRepresentative <= 0) return reduce(board, Integer.MAX_VALUE);
+        return reduce(board, (int) Math.max(1, budgetNanos / nanosPerRepresentative));
+    }
+
+    /**
+     * Reduces all possible MrX locations for a board to at most a given number of representatives
+     * @param board The board
+     * @param maxRepresentatives The maximum number of representatives
+     * @return The weighted representatives
+     */
+    public List<Representative> reduce(Board board, int maxRepresentatives){
+        List<Integer> detectives = new ArrayList<>();
+        for(Piece.Detective p : Piece.Detective.values()){
+            Optional<Integer> location = board.getDetectiveLocation(p);
+            location.ifPresent(detectives::add);
+        }
+        BeliefTracker tracker = getTracker(board);
+        BeliefSet candidates = tracker.getPossibleLocations(board, true);
+        //A single candidate (e.g. on MrX's turn) needs no weighting
+        List<Representative> clusters = candidates.size() > 1
+                ? cluster(candidates, detectives, tracker.getDistribution(board))
+                : cluster(candidates, detectives);
+        return sample(clusters, detectives, maxRepresentatives);
+    }
+
+    /**
+     * Gets the belief tracker used for a board, creating a new one if the board is on a different graph
+     * @param board The board
+     * @return The tracker
+     */
+    public BeliefTracker getTracker(Board board){
+        BeliefSet.Transitions transitions = GraphRegistry.shared().beliefTransitions(board.getSetup().graph);
+        if(tracker == null || tracker.getTransitions() != transitions){
+            tracker = BeliefTracker.forGraph(board.getSetup().graph);
+        }
+        return tracker;
+    }
+
+    /**
+     * Records how long it took to search a number of representatives, so that future reductions
+     * fit in the time budget
+     * @param nanos The time taken
+     * @param noRepresentatives The number of representatives searched
+     */
+    public void recordCost(long nanos, int noRepresentatives){
+        if(noRepresentatives <= 0) return;
+        double cost = nanos / (double) noRepresentatives;
+        nanosPerRepresentative = nanosPerRepresentative <= 0 ? cost :
+                (1 - COST_SMOOTHING) * nanosPerRepresentative + COST_SMOOTHING * cost;
+    }
+
+    /**
+     * Clusters candidate locations by their distance to each detective.
+     * The representative of each cluster is its first candidate and the weight is the cluster size.
+     * @param candidates The possible MrX locations
+     * @param detectives The locations of the detectives
+     * @return One representative per cluster
+     */
+    public List<Representative> cluster(Collection<Integer> candidates, List<Integer> detectives){
+        Map<Long, Integer> representative = new LinkedHashMap<>();
+        Map<Long, Integer> clusterSize = new LinkedHashMap<>();
+        for(Integer candidate : candidates){
+            long signature = signature(candidate, detectives);
+            representative.putIfAbsent(signature, candidate);
+            clusterSize.merge(signature, 1, Integer::sum);
+        }
+        List<Representative> clusters = new ArrayList<>(representative.size());
+        for(Map.Entry<Long, Integer> entry : representative.entrySet()){
+            clusters.add(new Representative(entry.getValue(), clusterSize.get(entry.getKey())));
+        }
+        return clusters;
+    }
+
+    /**
+     * Clusters candidate locations by their distance to each detective, weighting each candidate by its probability.
+     * Candidates with a probability below {@link BeliefReducer#PRUNE_FRACTION} of the average are dropped
+     * (unless that would drop all of them). The representative of each cluster is its most likely candidate
+     * and the weights are scaled to sum to the number of candidates.
+     * @param candidates The possible MrX locations
+     * @param detectives The locations of the detectives
+     * @param distribution The probability of MrX being at each candidate
+     * @return One representative per cluster
+     */
+    public List<Representative> cluster(Collection<Integer> candidates, List<Integer> detectives,
+                                        BeliefDistribution distribution){
+        double threshold = PRUNE_FRACTION / candidates.size();
+        Map<Long, Integer> representative = new LinkedHashMap<>();
+        Map<Long, Double> clusterProbability = new LinkedHashMap<>();
+        double kept = 0;
+        for(Integer candidate : candidates){
+            double p = distribution.probability(candidate);
+            if(p < threshold) continue;
+            kept += p;
+            long signature = signature(candidate, detectives);
+            Integer current = representative.get(signature);
+            if(current == null || p > distribution.probability(current)) representative.put(signature, candidate);
+            clusterProbability.merge(signature, p, Double::sum);
+        }
+        if(kept <= 0) return cluster(candidates, detectives);
+        double scale = candidates.size() / kept;
+        List<Representative> clusters = new ArrayList<>(representative.size());
+        for(Map.Entry<Long, Integer> entry : representative.entrySet()){
+            float weight = (float) (clusterProbability.get(entry.getKey()) * scale);
+            clusters.add(new Representative(entry.getValue(), weight));
+        }
+        return clusters;
+    }
+
+    /**
+     * Importance samples representatives, favouring those far from the detectives.
+     * Each cluster is picked with probability proportional to its weight times its danger, and
+     * the weights of the samples are corrected so the total weight is unchanged on average.
+     * @param clusters The representatives to sample from
+     * @param detectives The locations of the detectives
+     * @param maxRepresentatives The maximum number of representatives to return
+     * @return The sampled representatives (or the clusters if there are few enough of them)
+     */
+    public List<Representative> sample(List<Representative> clusters, List<Integer> detectives,
+                                       int maxRepresentatives){
+        if(clusters.size() <= maxRepresentatives) return clusters;
+        //Proposal distribution q(i) is proportional to weight * danger
+        float[] cumulative = new float[clusters.size()];
+        float total = 0;
+        for(int i = 0; i < clusters.size(); i++){
+            total += clusters.get(i).getWeight() * danger(clusters.get(i).getLocation(), detectives);
+            cumulative[i] = total;
+        }
+        float[] sampledWeight = new float[clusters.size()];
+        for(int s = 0; s < maxRepresentatives; s++){
+            int i = search(cumulative, rand.nextFloat() * total);
+            float q = (cumulative[i] - (i == 0 ? 0 : cumulative[i - 1])) / total;
+            //Unbiased estimator weight: w / (q * n)
+            sampledWeight[i] += clusters.get(i).getWeight() / (q * maxRepresentatives);
+        }
+        List<Representative> samples = new ArrayList<>(maxRepresentatives);
+        for(int i = 0; i < clusters.size(); i++){
+            if(sampledWeight[i] > 0) samples.add(new Representative(clusters.get(i).getLocation(), sampledWeight[i]));
+        }
+        return samples;
+    }
+
+    /**
+     * Gets the signature of a location, which is the (capped) distance to each detective
+     * @param location The location
+     * @param detectives The locations of the detectives
+     * @return The signature
+     */
+    private long signature(Integer location, List<Integer> detectives){
+        long signature = 0;
+        for(Integer det : detectives){
+            signature = signature * (SIGNATURE_CAP + 1) + Math.min(SIGNATURE_CAP, distance.getDistance(det, location));
+        }
+        return signature;
+    }
+
+    /**
+     * Measures how dangerous a location is for the detectives. MrX is harder to catch the further he is
+     * from the closest detective.
+     * @param location The location
+     * @param detectives The locations of the detectives
+     * @return The danger (always positive)
+     */
+    private float danger(Integer location, List<Integer> detectives){
+        int closest = Integer.MAX_VALUE;
+        for(Integer det : detectives) closest = Math.min(closest, distance.getDistance(det, location));
+        return 1 + Math.min(closest, SIGNATURE_CAP);
+    }
+
+    /**
+     * Finds the first index whose cumulative value exceeds a value
+     * @param cumulative Cumulative weights (ascending)
+     * @param value The value
+     * @return The index
+     */
+    private static int search(float[] cumulative, float value){
+        int low = 0;
+        int high = cumulative.length - 1;
+        while(low < high){
+            int mid = (low + high) >>> 1;
+            if(cumulative[mid] > value) high = mid;
+            else low = mid + 1;
+        }
+        return low;
+    }
+}
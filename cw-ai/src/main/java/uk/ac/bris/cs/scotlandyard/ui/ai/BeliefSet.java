@@ -0,0 +1,288 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Set of possible MrX locations stored as a bitset indexed by node id.
+ * Every set knows the neighbour masks of its graph (see {@link Transitions}), so moving the set along a
+ * ticket is an OR of one precomputed mask per location, and removing detective squares is an AND-NOT.
+ * A read-only view (see {@link BeliefSet#readOnly()}) can be shared between game states without copying.
+ */
+public final class BeliefSet extends AbstractSet<Integer> {
+    private final Transitions transitions;
+    private final long[] words; //Bit i of word w is set if node (w * 64 + i) is in the set
+    private final boolean readOnly;
+
+    /**
+     * Creates a set
+     * @param transitions The neighbour masks of the graph
+     * @param words The bits of the set (not copied)
+     * @param readOnly Whether changing the set throws an exception
+     */
+    private BeliefSet(Transitions transitions, long[] words, boolean readOnly){
+        this.transitions = transitions;
+        this.words = words;
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Creates a set that can be changed
+     * @param transitions The neighbour masks of the graph
+     * @param words The bits of the set (not copied)
+     */
+    private BeliefSet(Transitions transitions, long[] words){
+        this(transitions, words, false);
+    }
+
+    /**
+     * Creates an empty set for the graph of a transition table
+     * @param transitions The neighbour masks of the graph
+     * @return The set
+     */
+    public static BeliefSet empty(Transitions transitions){
+        return new BeliefSet(transitions, new long[transitions.words]);
+    }
+
+    /**
+     * Creates a set from a collection of locations
+     * @param transitions The neighbour masks of the graph
+     * @param locations The locations (must be node ids of the graph)
+     * @return The set
+     */
+    public static BeliefSet of(Transitions transitions, Iterable<Integer> locations){
+        BeliefSet set = empty(transitions);
+        for(Integer location : locations) set.add(location);
+        return set;
+    }
+
+    /**
+     * Creates a copy of the set that can be changed independently
+     * @return The copy
+     */
+    public BeliefSet copy(){
+        return new BeliefSet(transitions, words.clone());
+    }
+
+    /**
+     * Gets a view of the set that throws UnsupportedOperationException when changed. The view shares the set's
+     * bits, so the set itself mustn't be changed afterwards if the view is shared.
+     * @return The view (this set if it is already read-only)
+     */
+    public BeliefSet readOnly(){
+        return readOnly ? this : new BeliefSet(transitions, words, true);
+    }
+
+    /**
+     * Throws an exception if the set is read-only
+     */
+    private void checkWritable(){
+        if(readOnly) throw new UnsupportedOperationException("The set is read-only");
+    }
+
+    /**
+     * Gets the locations MrX could be at after using a ticket from any location in this set
+     * @param ticket The ticket used (secret tickets allow every edge)
+     * @return The new set
+     */
+    public BeliefSet propagate(ScotlandYard.Ticket ticket){
+        long[] masks = transitions.masks[ticket.ordinal()];
+        if(masks == null) throw new IllegalArgumentException(ticket + " tickets can't be used to travel");
+        int n = transitions.words;
+        long[] next = new long[n];
+        for(int w = 0; w < n; w++){
+            long bits = words[w];
+            while(bits != 0){
+                int node = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                int start = node * n;
+                for(int i = 0; i < n; i++) next[i] |= masks[start + i];
+            }
+        }
+        return new BeliefSet(transitions, next);
+    }
+
+    /**
+     * Creates a copy of the set without a location
+     * @param location The location to remove
+     * @return The new set
+     */
+    public BeliefSet without(int location){
+        BeliefSet set = copy();
+        set.remove(location);
+        return set;
+    }
+
+    /**
+     * Removes every location in a mask from the set
+     * @param mask The locations to remove (indexed by node id, in the same layout as this set)
+     */
+    public void removeMask(long[] mask){
+        checkWritable();
+        for(int w = 0; w < words.length && w < mask.length; w++) words[w] &= ~mask[w];
+    }
+
+    /**
+     * Gets a 64-bit hash of the locations in the set (unlike hashCode, sets with the same sum have
+     * different hashes)
+     * @return The hash
+     */
+    public long fingerprint(){
+        long hash = words.length;
+        for(long word : words) hash = GraphFingerprint.mix(hash ^ word);
+        return hash;
+    }
+
+    @Override
+    public boolean contains(Object o){
+        if(!(o instanceof Integer)) return false;
+        int node = (Integer) o;
+        return node >= 0 && node < (words.length << 6) && (words[node >>> 6] & (1L << node)) != 0;
+    }
+
+    @Override
+    public boolean add(Integer location){
+        if(location < 0 || location > transitions.maxNode)
+            throw new IllegalArgumentException("Location " + location + " isn't on the graph");
+        checkWritable();
+        long before = words[location >>> 6];
+        words[location >>> 6] |= 1L << location;
+        return before != words[location >>> 6];
+    }
+
+    @Override
+    public boolean remove(Object o){
+        checkWritable();
+        if(!contains(o)) return false;
+        int node = (Integer) o;
+        words[node >>> 6] &= ~(1L << node);
+        return true;
+    }
+
+    @Override
+    public void clear(){
+        checkWritable();
+        Arrays.fill(words, 0);
+    }
+
+    @Override
+    public int size(){
+        int size = 0;
+        for(long word : words) size += Long.bitCount(word);
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty(){
+        for(long word : words) if(word != 0) return false;
+        return true;
+    }
+
+    @Override
+    public Iterator<Integer> iterator(){
+        return new Iterator<>(){
+            private int w = 0;
+            private long bits = words.length == 0 ? 0 : words[0];
+            private int last = -1;
+
+            @Override
+            public boolean hasNext(){
+                while(bits == 0 && w + 1 < words.length) bits = words[++w];
+                return bits != 0;
+            }
+
+            @Override
+            public Integer next(){
+                if(!hasNext()) throw new NoSuchElementException();
+                last = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                return last;
+            }
+
+            @Override
+            public void remove(){
+                checkWritable();
+                if(last == -1) throw new IllegalStateException();
+                words[last >>> 6] &= ~(1L << last);
+                last = -1;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o){
+        if(o instanceof BeliefSet && ((BeliefSet) o).words.length == words.length){
+            return Arrays.equals(words, ((BeliefSet) o).words);
+        }
+        return o instanceof Set && super.equals(o);
+    }
+
+    @Override
+    public int hashCode(){
+        int hash = 0; //Same as any other set of integers (the sum of the elements)
+        for(Integer location : this) hash += location;
+        return hash;
+    }
+
+    /**
+     * Precomputed neighbour masks of a graph: for every ticket and node, the bitset of nodes that can be
+     * reached from the node using the ticket.
+     */
+    public static final class Transitions {
+        private final int maxNode;
+        private final int words;
+        private final long[][] masks; //masks[ticket.ordinal()][node * words + w] (null for double tickets)
+
+        /**
+         * Creates the masks for a graph
+         * @param graph The graph
+         */
+        public Transitions(ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph){
+            int largest = 0;
+            for(Integer node : graph.nodes()){
+                if(node < 0) throw new IllegalArgumentException("Node ids must be non-negative");
+                largest = Math.max(largest, node);
+            }
+            maxNode = largest;
+            words = (maxNode >>> 6) + 1;
+            masks = new long[ScotlandYard.Ticket.values().length][];
+            for(ScotlandYard.Ticket ticket : ScotlandYard.Ticket.values()){
+                if(ticket != ScotlandYard.Ticket.DOUBLE) masks[ticket.ordinal()] = new long[(maxNode + 1) * words];
+            }
+            long[] secret = masks[ScotlandYard.Ticket.SECRET.ordinal()];
+            for(Integer node : graph.nodes()){
+                for(Integer neighbour : graph.adjacentNodes(node)){
+                    long bit = 1L << neighbour;
+                    int word = node * words + (neighbour >>> 6);
+                    for(ScotlandYard.Transport t : graph.edgeValueOrDefault(node, neighbour, ImmutableSet.of())){
+                        masks[t.requiredTicket().ordinal()][word] |= bit;
+                    }
+                    secret[word] |= bit;
+                }
+            }
+        }
+
+        /**
+         * Gets the largest node id on the graph
+         * @return The node id
+         */
+        public int maxNode(){
+            return maxNode;
+        }
+
+        /**
+         * Gets the number of longs in each set
+         * @return The number of words
+         */
+        public int words(){
+            return words;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.LogEntry;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Keeps track of MrX's possible locations across turns, giving the same result as
+ * {@link MrXLocations#getPossibleMrXLocations(Board, boolean)} without replaying the travel log each time.
+ * <br>
+ * The locations after each log entry only depend on the entries since the last reveal, so the tracker
+ * stores a tree of snapshots rooted at each reveal (and at the start of the game). Each snapshot is the set
+ * of locations after a sequence of hidden tickets. Moving on by one round is a single propagation and
+ * returning to an earlier or different log (e.g. when replaying a game) only needs map lookups.
+ * The current detective locations are removed from the snapshot when the locations are requested.
+ * Each snapshot can also hold the {@link BeliefDistribution} over its locations, which is only computed
+ * (from its parent's distribution) the first time it's requested.
+ * Trackers aren't thread safe.
+ */
+public final class BeliefTracker {
+    //Snapshots stored before the tree is cleared (bounds memory if many different logs are seen)
+    public static final int MAX_SNAPSHOTS = 4096;
+    private final BeliefSet.Transitions transitions;
+    private final BeliefDistribution.TransitionMatrices matrices;
+    private final Snapshot start; //Locations before MrX has revealed himself
+    private final Map<Integer, Snapshot> reveals = new HashMap<>(); //Snapshots of each reveal location
+    private int noSnapshots = 0;
+
+    /**
+     * Creates a tracker
+     * @param transitions The neighbour masks of the graph being played on
+     * @param matrices The transition matrices of the graph being played on
+     */
+    public BeliefTracker(BeliefSet.Transitions transitions, BeliefDistribution.TransitionMatrices matrices){
+        this.transitions = transitions;
+        this.matrices = matrices;
+        this.start = new Snapshot(null, null, BeliefSet.of(transitions, ScotlandYard.MRX_LOCATIONS));
+    }
+
+    /**
+     * Creates a tracker using the shared tables of a graph
+     * @param graph The graph being played on
+     * @return The tracker
+     */
+    public static BeliefTracker forGraph(ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph){
+        GraphRegistry registry = GraphRegistry.shared();
+        return new BeliefTracker(registry.beliefTransitions(graph), registry.beliefMatrices(graph));
+    }
+
+    /**
+     * Gets the neighbour masks used by the tracker
+     * @return The masks
+     */
+    public BeliefSet.Transitions getTransitions(){
+        return transitions;
+    }
+
+    /**
+     * Gets the number of snapshots currently stored
+     * @return The number of snapshots
+     */
+    public int getNoSnapshots(){
+        return noSnapshots;
+    }
+
+    /**
+     * Gets all possible MrX locations for a board
+     * @param board The board
+     * @param findMrX True if MrX's exact location should be used when it's his turn (by looking at legal moves)
+     * @return All possible locations for MrX (a new set that the caller may change)
+     */
+    public BeliefSet getPossibleLocations(Board board, boolean findMrX){
+        BeliefSet locations;
+        if(findMrX && !board.getAvailableMoves().isEmpty()){
+            Move move = board.getAvailableMoves().asList().get(0);
+            if(move.commencedBy().isMrX()){
+                locations = BeliefSet.empty(transitions);
+                locations.add(move.source());
+                return locations;
+            }
+        }
+        locations = snapshot(board.getMrXTravelLog()).locations.copy();
+        //MrX can't be on a detective's square
+        for(Piece.Detective det : Piece.Detective.values()){
+            Optional<Integer> location = board.getDetectiveLocation(det);
+            location.ifPresent(locations::remove);
+        }
+        return locations;
+    }
+
+    /**
+     * Gets the probability of MrX being at each location for a board (ignoring his legal moves).
+     * The distribution has the same non-zero locations as {@link BeliefTracker#getPossibleLocations(Board, boolean)}.
+     * @param board The board
+     * @return The distribution (a new distribution that the caller may change)
+     */
+    public BeliefDistribution getDistribution(Board board){
+        BeliefDistribution distribution = snapshot(board.getMrXTravelLog()).distribution().copy();
+        for(Piece.Detective det : Piece.Detective.values()){
+            Optional<Integer> location = board.getDetectiveLocation(det);
+            location.ifPresent(distribution::exclude);
+        }
+        distribution.normalise();
+        return distribution;
+    }
+
+    /**
+     * Gets the snapshot for a travel log, creating any snapshots that don't exist yet
+     * @param log The travel log
+     * @return The snapshot
+     */
+    private Snapshot snapshot(List<LogEntry> log){
+        if(noSnapshots > MAX_SNAPSHOTS){
+            start.children.clear();
+            reveals.clear();
+            noSnapshots = 0;
+        }
+        //Only entries after the last reveal affect the locations
+        int lastReveal = log.size() - 1;
+        while(lastReveal >= 0 && log.get(lastReveal).location().isEmpty()) lastReveal--;
+        Snapshot current = start;
+        if(lastReveal >= 0){
+            int location = log.get(lastReveal).location().get();
+            current = reveals.get(location);
+            if(current == null){
+                BeliefSet revealed = BeliefSet.empty(transitions);
+                revealed.add(location);
+                current = new Snapshot(null, null, revealed);
+                reveals.put(location, current);
+                noSnapshots++;
+            }
+        }
+        for(int i = lastReveal + 1; i < log.size(); i++){
+            ScotlandYard.Ticket ticket = log.get(i).ticket();
+            Snapshot next = current.children.get(ticket);
+            if(next == null){
+                next = new Snapshot(current, ticket, current.locations.propagate(ticket));
+                current.children.put(ticket, next);
+                noSnapshots++;
+            }
+            current = next;
+        }
+        return current;
+    }
+
+    /**
+     * The possible locations after a sequence of hidden moves, along with the snapshots that follow it
+     */
+    private final class Snapshot {
+        final Snapshot parent; //Null at a reveal or the start
+        final ScotlandYard.Ticket ticket; //Ticket used to get here from the parent
+        final BeliefSet locations;
+        final Map<ScotlandYard.Ticket, Snapshot> children = new EnumMap<>(ScotlandYard.Ticket.class);
+        BeliefDistribution distribution = null;
+
+        Snapshot(Snapshot parent, ScotlandYard.Ticket ticket, BeliefSet locations){
+            this.parent = parent;
+            this.ticket = ticket;
+            this.locations = locations;
+        }
+
+        /**
+         * Gets the distribution over the locations, computing it if needed
+         * @return The distribution (shared, so must not be changed)
+         */
+        BeliefDistribution distribution(){
+            if(distribution == null){
+                distribution = parent == null ? BeliefDistribution.uniform(matrices, locations)
+                        : parent.distribution().propagate(ticket);
+            }
+            return distribution;
+        }
+    }
+}
@@ -4,21 +4,20 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.graph.ImmutableValueGraph;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
 
-import java.util.HashMap;
-import java.util.PriorityQueue;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.stream.IntStream;
 
 /**
  * An object that is used to calculate distance between two points.
- * This class caches searches already made, to speed up access.
+ * All distances are precomputed when the object is created. The search used depends on the edge costs:
+ * breadth first search if every edge costs 1, Dial's algorithm (a bucket queue) if all costs are small
+ * integers and Dijkstra's algorithm with a binary heap otherwise. Sources are searched in parallel.
  */
 public final class CachedDijkstra{
-    private final int[][] distances; //Stores the distance between two nodes
-    //The graph used for the currently cached values
-    private ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graphForCache;
-    //Map that converts between node ID's and distances indices
-    private final HashMap<Integer, Integer> nodeToDistanceIndex;
-    private final EdgeValue val;
+    //Largest edge cost for which a bucket queue is used
+    static final int MAX_BUCKET_COST = 64;
+    private final DistanceMatrix distances; //Stores the distance between two nodes
+
     /**
      * Creates dijkstra object that precomputes all values for the given graph
      * @param graphForCache The graph to cache
@@ -26,19 +25,54 @@ public final class CachedDijkstra{
      */
     private CachedDijkstra(ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graphForCache,
                            EdgeValue val){
-        this.val = val;
-        //Initialises values
-        distances = new int[graphForCache.nodes().size()][graphForCache.nodes().size()];
-        int i = 0;
-        nodeToDistanceIndex = new HashMap<>(graphForCache.nodes().size());
-        for(Integer node : graphForCache.nodes()){
-            nodeToDistanceIndex.put(node, i);
-            i++;
+        //Initialises values (nodes are given indices in ascending order)
+        int[] indexToNode = graphForCache.nodes().stream().mapToInt(Integer::intValue).sorted().toArray();
+        int n = indexToNode.length;
+        distances = new DistanceMatrix(indexToNode, new short[n * n]);
+        //Calculates each edge cost once (edge values may not be thread safe, so this isn't done in parallel)
+        //The graph is stored in compressed sparse row form (edges of index i are edgeStart[i] to edgeStart[i + 1])
+        int[] edgeStart = new int[n + 1];
+        for(int i = 0; i < n; i++){
+            edgeStart[i + 1] = edgeStart[i] + graphForCache.adjacentNodes(indexToNode[i]).size();
         }
-        //Caches all nodes
-        for(Integer startNode : graphForCache.nodes()){
-            calculateAndCacheAllDistances(graphForCache, startNode);
+        int[] edgeTarget = new int[edgeStart[n]];
+        int[] edgeCost = new int[edgeStart[n]];
+        int maxCost = 0;
+        boolean unitCosts = true;
+        for(int i = 0; i < n; i++){
+            int e = edgeStart[i];
+            for(Integer neighbour : graphForCache.adjacentNodes(indexToNode[i])){
+                edgeTarget[e] = distances.index(neighbour);
+                edgeCost[e] = val.getEdgeCost(graphForCache.edgeValue(indexToNode[i], neighbour).get());
+                if(edgeCost[e] < 0) throw new IllegalArgumentException("Edge costs can't be negative");
+                maxCost = Math.max(maxCost, edgeCost[e]);
+                unitCosts = unitCosts && edgeCost[e] == 1;
+                e++;
+            }
         }
+        //Caches all nodes (each source writes to its own row of the matrix)
+        final boolean bfs = unitCosts;
+        final int bucketCost = maxCost;
+        IntStream.range(0, n).parallel().forEach(source -> {
+            int[] dist;
+            if(bfs) dist = breadthFirstSearch(source, edgeStart, edgeTarget);
+            else if(bucketCost <= MAX_BUCKET_COST){
+                dist = bucketSearch(source, bucketCost, edgeStart, edgeTarget, edgeCost);
+            }
+            else dist = heapSearch(source, edgeStart, edgeTarget, edgeCost);
+            for(int i = 0; i < n; i++){
+                //Unreachable nodes are left at 0
+                if(dist[i] != Integer.MAX_VALUE) distances.set(source, i, dist[i]);
+            }
+        });
+    }
+
+    /**
+     * Creates a dijkstra object from distances that have already been computed (e.g. loaded from disk)
+     * @param distances The distances
+     */
+    CachedDijkstra(DistanceMatrix distances){
+        this.distances = distances;
     }
 
     /**
@@ -59,52 +93,174 @@ public final class CachedDijkstra{
      * @param end The end node
      * @return The distance
      */
-    public int getDistance(Integer start, Integer end){
-        return distances[nodeToDistanceIndex.get(start)][nodeToDistanceIndex.get(end)];
+    public int getDistance(int start, int end){
+        return distances.distance(start, end);
     }
+
     /**
-     * Calculates the distances between all points from a given start node anc caches the values
-     * @param graph The graph to use
-     * @param startNode The node to start from
+     * Gets the underlying distance matrix, which allows distances to be looked up using dense indices
+     * @return The distance matrix
      */
-    private void calculateAndCacheAllDistances(ImmutableValueGraph<Integer,
-                                                        ImmutableSet<ScotlandYard.Transport>> graph,
-                                               Integer startNode){
-        //Creates and initialises needed datastructures
-        HashMap<Integer, DijkstraNode> settled = new HashMap<>(graph.nodes().size());
-        HashMap<Integer, DijkstraNode> allNodesNode = new HashMap<>(graph.nodes().size());
-        PriorityQueue<DijkstraNode> unsettled = new PriorityQueue<>(graph.nodes().size());
-        for(Integer keyVal : graph.nodes()){
-            allNodesNode.put(keyVal,
-                    new DijkstraNode(keyVal, keyVal == startNode?
-                            DijkstraNode.DIST_SOURCE : DijkstraNode.DIST_INFINITY));
+    public DistanceMatrix getDistanceMatrix(){
+        return distances;
+    }
+
+    /**
+     * Calculates the distances from a source when every edge costs 1
+     * @param source The source index
+     * @param edgeStart The start of the edges of each index
+     * @param edgeTarget The target of each edge
+     * @return The distance to each index (Integer.MAX_VALUE if unreachable)
+     */
+    private static int[] breadthFirstSearch(int source, int[] edgeStart, int[] edgeTarget){
+        int n = edgeStart.length - 1;
+        int[] dist = new int[n];
+        Arrays.fill(dist, Integer.MAX_VALUE);
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+        dist[source] = 0;
+        queue[tail++] = source;
+        while(head < tail){
+            int current = queue[head++];
+            for(int e = edgeStart[current]; e < edgeStart[current + 1]; e++){
+                int target = edgeTarget[e];
+                if(dist[target] == Integer.MAX_VALUE){
+                    dist[target] = dist[current] + 1;
+                    queue[tail++] = target;
+                }
+            }
         }
-        unsettled.add(allNodesNode.get(startNode));
-        final int startNodeIndex = nodeToDistanceIndex.get(allNodesNode.get(startNode).getValue());
-        //Main loop of Dijkstra's algorithm
-        while(!unsettled.isEmpty()){
-            DijkstraNode currNode = unsettled.remove();
-            Set<Integer> neighbours = graph.adjacentNodes(currNode.getValue());
-            //Loops through all adjacent nodes and updates cost if needed
-            for(Integer keyVal : neighbours){
-                DijkstraNode adjNode = allNodesNode.get(keyVal);
-                //Items in the settled set have the min distance already calculated
-                if(!settled.containsKey(adjNode.getValue())){
-                    Integer newDist = currNode.getTentDistance() +
-                            val.getEdgeCost(graph.edgeValue(currNode.getValue(), keyVal).get());
-                    if(adjNode.getTentDistance() == DijkstraNode.DIST_INFINITY ||
-                            adjNode.getTentDistance() > newDist){
-                        adjNode.setTentDistance(newDist);
+        return dist;
+    }
+
+    /**
+     * Calculates the distances from a source using Dial's algorithm. Nodes are stored in a circular
+     * array of buckets indexed by distance, so each queue operation is O(1).
+     * @param source The source index
+     * @param maxCost The largest edge cost
+     * @param edgeStart The start of the edges of each index
+     * @param edgeTarget The target of each edge
+     * @param edgeCost The cost of each edge
+     * @return The distance to each index (Integer.MAX_VALUE if unreachable)
+     */
+    private static int[] bucketSearch(int source, int maxCost, int[] edgeStart, int[] edgeTarget, int[] edgeCost){
+        int n = edgeStart.length - 1;
+        int noBuckets = maxCost + 1; //Every node in the queue is within maxCost of the current distance
+        int[] dist = new int[n];
+        Arrays.fill(dist, Integer.MAX_VALUE);
+        boolean[] settled = new boolean[n];
+        //Buckets are linked lists of entries. A node gets a new entry each time its distance improves
+        int[] bucketHead = new int[noBuckets];
+        Arrays.fill(bucketHead, -1);
+        int[] entryNode = new int[edgeTarget.length + 1];
+        int[] entryNext = new int[edgeTarget.length + 1];
+        int noEntries = 0;
+        int pending = 0;
+        dist[source] = 0;
+        entryNode[noEntries] = source;
+        entryNext[noEntries] = -1;
+        bucketHead[0] = noEntries++;
+        pending++;
+        for(int d = 0; pending > 0; d++){
+            int bucket = d % noBuckets;
+            while(bucketHead[bucket] != -1){
+                int entry = bucketHead[bucket];
+                bucketHead[bucket] = entryNext[entry];
+                pending--;
+                int current = entryNode[entry];
+                if(settled[current] || dist[current] != d) continue; //Stale entry
+                settled[current] = true;
+                for(int e = edgeStart[current]; e < edgeStart[current + 1]; e++){
+                    int target = edgeTarget[e];
+                    int newDist = d + edgeCost[e];
+                    if(!settled[target] && newDist < dist[target]){
+                        dist[target] = newDist;
+                        int b = newDist % noBuckets;
+                        entryNode[noEntries] = target;
+                        entryNext[noEntries] = bucketHead[b];
+                        bucketHead[b] = noEntries++;
+                        pending++;
                     }
-                    unsettled.remove(adjNode);
-                    unsettled.add(adjNode);//Adds neighbour to unsettled category
                 }
             }
-            //Adds current node to settled set
-            settled.put(currNode.getValue(), currNode);
-            //Caches searched node
-            distances[startNodeIndex][nodeToDistanceIndex.get(currNode.getValue())] =
-                    currNode.getTentDistance();
+        }
+        return dist;
+    }
+
+    /**
+     * Calculates the distances from a source using Dijkstra's algorithm with a binary heap.
+     * Heap entries pack the distance and node into a long, and stale entries are skipped when popped.
+     * @param source The source index
+     * @param edgeStart The start of the edges of each index
+     * @param edgeTarget The target of each edge
+     * @param edgeCost The cost of each edge
+     * @return The distance to each index (Integer.MAX_VALUE if unreachable)
+     */
+    private static int[] heapSearch(int source, int[] edgeStart, int[] edgeTarget, int[] edgeCost){
+        int n = edgeStart.length - 1;
+        int[] dist = new int[n];
+        Arrays.fill(dist, Integer.MAX_VALUE);
+        boolean[] settled = new boolean[n];
+        long[] heap = new long[edgeTarget.length + 1];
+        int heapSize = 0;
+        dist[source] = 0;
+        heap[heapSize++] = source;
+        while(heapSize > 0){
+            long top = heap[0];
+            heap[0] = heap[--heapSize];
+            siftDown(heap, heapSize);
+            int current = (int) top;
+            int d = (int) (top >>> 32);
+            if(settled[current] || dist[current] != d) continue; //Stale entry
+            settled[current] = true;
+            for(int e = edgeStart[current]; e < edgeStart[current + 1]; e++){
+                int target = edgeTarget[e];
+                long newDist = (long) d + edgeCost[e];
+                if(!settled[target] && newDist < dist[target]){
+                    dist[target] = (int) newDist;
+                    heap[heapSize] = (newDist << 32) | target;
+                    siftUp(heap, heapSize++);
+                }
+            }
+        }
+        return dist;
+    }
+
+    /**
+     * Moves the root of a binary min heap down until the heap property holds
+     * @param heap The heap
+     * @param heapSize The number of elements in the heap
+     */
+    private static void siftDown(long[] heap, int heapSize){
+        int i = 0;
+        while(true){
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if(left < heapSize && heap[left] < heap[smallest]) smallest = left;
+            if(right < heapSize && heap[right] < heap[smallest]) smallest = right;
+            if(smallest == i) return;
+            long temp = heap[i];
+            heap[i] = heap[smallest];
+            heap[smallest] = temp;
+            i = smallest;
+        }
+    }
+
+    /**
+     * Moves an element of a binary min heap up until the heap property holds
+     * @param heap The heap
+     * @param i The index of the element
+     */
+    private static void siftUp(long[] heap, int i){
+        while(i > 0){
+            int parent = (i - 1) / 2;
+            if(heap[parent] <= heap[i]) return;
+            long temp = heap[i];
+            heap[i] = heap[parent];
+            heap[parent] = temp;
+            i = parent;
         }
     }
-}
\ No newline at end of file
+}
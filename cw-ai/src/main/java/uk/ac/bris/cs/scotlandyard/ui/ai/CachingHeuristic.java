@@ -0,0 +1,78 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Heuristic that looks up scores in an {@link EvaluationCache} before asking another heuristic.
+ * During a search the same states are scored when ordering moves, as leaves, and again in each iteration of
+ * iterative deepening, so most of these become cache hits. The cache must only be used with one heuristic and
+ * one graph, as the position hash doesn't include either.
+ */
+public final class CachingHeuristic extends Heuristic {
+    private final Heuristic delegate;
+    private final EvaluationCache cache;
+
+    /**
+     * Creates a caching heuristic
+     * @param delegate The heuristic whose scores are cached
+     * @param cache The cache
+     */
+    public CachingHeuristic(Heuristic delegate, EvaluationCache cache){
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public float gameScore(MyGameState state){
+        long hash = state.positionHash();
+        float score = cache.get(hash);
+        if(!Float.isNaN(score)) return score;
+        score = delegate.gameScore(state);
+        cache.put(hash, score);
+        return score;
+    }
+
+    @Override
+    public void scoreAll(List<? extends MyGameState> states, float[] out){
+        if(out.length < states.size()) throw new IllegalArgumentException("Output array is too short");
+        //Only the states that aren't stored are passed on (as one batch)
+        List<MyGameState> missed = new ArrayList<>();
+        int[] missedIndices = new int[states.size()];
+        for(int i = 0; i < states.size(); i++){
+            out[i] = cache.get(states.get(i).positionHash());
+            if(Float.isNaN(out[i])){
+                missedIndices[missed.size()] = i;
+                missed.add(states.get(i));
+            }
+        }
+        if(missed.isEmpty()) return;
+        float[] scores = new float[missed.size()];
+        delegate.scoreAll(missed, scores);
+        for(int k = 0; k < scores.length; k++){
+            out[missedIndices[k]] = scores[k];
+            cache.put(missed.get(k).positionHash(), scores[k]);
+        }
+    }
+
+    @Override
+    public IncrementalEvaluator newIncrementalEvaluator(){
+        return delegate.newIncrementalEvaluator();
+    }
+
+    /**
+     * Gets the heuristic whose scores are cached
+     * @return The heuristic
+     */
+    public Heuristic getDelegate(){
+        return delegate;
+    }
+
+    /**
+     * Gets the cache (e.g. to check its hit rate)
+     * @return The cache
+     */
+    public EvaluationCache getCache(){
+        return cache;
+    }
+}
@@ -6,6 +6,8 @@ import uk.ac.bris.cs.scotlandyard.model.Board;
 import uk.ac.bris.cs.scotlandyard.model.Player;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
 
+import java.util.List;
+
 /**
  * Scoring function to be used in paranoid minimax search.
  * Scoring function heavily inspired by:
@@ -19,6 +21,8 @@ import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
  */
 public class ClosestDetectiveHeuristic extends Heuristic {
     private final CachedDijkstra d;
+    private final DistanceMatrix matrix; //Distances of d, looked up without boxing
+    private final DistanceReduction reduction = DistanceReduction.create();
     private final ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> cachedGraph;
 
     /**
@@ -27,7 +31,8 @@ public class ClosestDetectiveHeuristic extends Heuristic {
      */
     public ClosestDetectiveHeuristic(ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graphForCache){
         this.cachedGraph = graphForCache;
-        d = CachedDijkstra.preComputeAllDistances(graphForCache, new DistanceWeighting());
+        d = GraphRegistry.shared().distances(graphForCache, new DistanceWeighting());
+        matrix = d.getDistanceMatrix();
     }
 
     @Override
@@ -39,8 +44,9 @@ public class ClosestDetectiveHeuristic extends Heuristic {
         //Computes closest distance
         float closestDistance = Float.POSITIVE_INFINITY;
         float meanDistance = 0;
+        final int mrXLocation = state.getMrX().location();
         for(Player det : state.getDetectives()){
-            float dist = d.getDistance(det.location(), state.getMrX().location());
+            float dist = matrix.distance(det.location(), mrXLocation);
             closestDistance = Math.min(closestDistance, dist);
             meanDistance += dist;
         }
@@ -49,11 +55,91 @@ public class ClosestDetectiveHeuristic extends Heuristic {
         int noLocations = state.getMrXPossibleLocations().size();
         //Gets number of secret tickets MrX has
         int noSecret = state.getMrX().tickets().get(ScotlandYard.Ticket.SECRET);
+        //Clips score to sensible range
+       return Heuristic.clipValue(combineTerms(closestDistance, meanDistance, noSecret, noLocations));
+    }
+
+    @Override
+    public void scoreAll(List<? extends MyGameState> states, float[] out){
+        int n = states.size();
+        if(out.length < n) throw new IllegalArgumentException("Output array is too short");
+        if(n == 0) return;
+        int noDetectives = states.get(0).getDetectives().size();
+        //Gathers the terms of every state into columns (finished games are scored straight away)
+        int[] mrXIndices = new int[n];
+        int[][] detectiveIndices = new int[noDetectives][n];
+        int[] noSecret = new int[n];
+        int[] noLocations = new int[n];
+        boolean[] finished = new boolean[n];
+        for(int i = 0; i < n; i++){
+            MyGameState state = states.get(i);
+            Heuristic.State currentState = Heuristic.getGameState(state);
+            if(currentState != State.gameStillGoing){
+                out[i] = currentState == State.detWins ? Heuristic.DETECTIVE_WINS : Heuristic.MRX_WINS;
+                finished[i] = true;
+                continue;
+            }
+            List<Player> detectives = state.getDetectives();
+            if(detectives.size() != noDetectives){
+                super.scoreAll(states, out);
+                return;
+            }
+            mrXIndices[i] = matrix.index(state.getMrX().location());
+            for(int d = 0; d < noDetectives; d++) detectiveIndices[d][i] = matrix.index(detectives.get(d).location());
+            noSecret[i] = state.getMrX().tickets().get(ScotlandYard.Ticket.SECRET);
+            noLocations[i] = state.getMrXPossibleLocations().size();
+        }
+        float[] scores = new float[n];
+        scoreColumns(n, mrXIndices, detectiveIndices, noSecret, noLocations, scores);
+        for(int i = 0; i < n; i++) if(!finished[i]) out[i] = scores[i];
+    }
+
+    /**
+     * Scores a batch of positions given as columns of primitive values (indices are dense indices of the
+     * distance matrix). The positions are assumed to be unfinished games.
+     * Each detective's distances are gathered into a row, and the rows are reduced with a
+     * {@link DistanceReduction} (using SIMD instructions when the Vector API is available).
+     * @param n The number of positions
+     * @param mrXIndices The index of MrX in each position
+     * @param detectiveIndices detectiveIndices[d][i] is the index of detective d in position i
+     * @param noSecret The number of secret tickets MrX has in each position
+     * @param noLocations The number of possible MrX locations in each position
+     * @param out The array the (clipped) scores are written to
+     */
+    public void scoreColumns(int n, int[] mrXIndices, int[][] detectiveIndices, int[] noSecret, int[] noLocations,
+                             float[] out){
+        float[][] distances = new float[detectiveIndices.length][n];
+        for(int d = 0; d < detectiveIndices.length; d++){
+            for(int i = 0; i < n; i++) distances[d][i] = matrix.distanceByIndex(detectiveIndices[d][i], mrXIndices[i]);
+        }
+        float[] closest = new float[n];
+        float[] total = new float[n];
+        reduction.reduce(distances, n, closest, total);
+        float noDetectives = detectiveIndices.length;
+        for(int i = 0; i < n; i++){
+            float meanDistance = total[i] / noDetectives;
+            out[i] = Heuristic.clipValue(combineTerms(closest[i], meanDistance, noSecret[i], noLocations[i]));
+        }
+    }
+
+    /**
+     * Combines the terms of the heuristic into a (non-clipped) score.
+     * This allows searches that don't use concrete game states to score positions in the same way.
+     * @param closestDistance The distance between MrX and the closest detective
+     * @param meanDistance The mean distance between MrX and the detectives
+     * @param noSecret The number of secret tickets MrX has
+     * @param noLocations The number of possible locations for MrX
+     * @return The score
+     */
+    public static float combineTerms(float closestDistance, float meanDistance, int noSecret, int noLocations){
         //Score computing formula
-        float score = (90 * closestDistance) + (1 * noSecret) + (2 * noLocations)
+        return (90 * closestDistance) + (1 * noSecret) + (2 * noLocations)
                 + (10 * meanDistance);
-        //Clips score to sensible range
-       return Heuristic.clipValue(score);
+    }
+
+    @Override
+    public IncrementalEvaluator newIncrementalEvaluator(){
+        return new IncrementalEvaluator(matrix);
     }
 
     /**
@@ -71,6 +157,6 @@ public class ClosestDetectiveHeuristic extends Heuristic {
      * @return Whether the graph state matches
      */
     public boolean graphEqualsCachedGraph(Board state){
-        return cachedGraph.equals(state.getSetup().graph);
+        return GraphFingerprint.sameGraph(cachedGraph, state.getSetup().graph);
     }
 }
@@ -0,0 +1,178 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import java.util.Arrays;
+
+/**
+ * Primitive, array based copy of the game graph.
+ * Node IDs are mapped to dense indices (0 to size - 1) and the adjacency is stored in compressed sparse
+ * row form. This means that hot loops (such as playouts) never touch boxed integers or the guava graph.
+ */
+public final class CompiledGraph {
+    public static final int TAXI_BIT = transportBit(ScotlandYard.Transport.TAXI);
+    public static final int BUS_BIT = transportBit(ScotlandYard.Transport.BUS);
+    public static final int UNDERGROUND_BIT = transportBit(ScotlandYard.Transport.UNDERGROUND);
+    public static final int FERRY_BIT = transportBit(ScotlandYard.Transport.FERRY);
+    public static final int ALL_TRANSPORTS = TAXI_BIT | BUS_BIT | UNDERGROUND_BIT | FERRY_BIT;
+    public static final int NO_INDEX = -1;
+    private final int[] indexToNode; //Maps dense index to node ID
+    private final int[] nodeToIndex; //Maps node ID to dense index (NO_INDEX if node isn't on graph)
+    private final int[] edgeStart; //Edges of node i are stored in [edgeStart[i], edgeStart[i + 1])
+    private final int[] edgeTarget; //Dense index of the node at the end of each edge
+    private final byte[] edgeTransports; //Bitmask of the transports available along each edge
+
+    /**
+     * Creates a compiled graph from already built arrays
+     * @param indexToNode Maps dense index to node ID
+     * @param edgeStart Start of the edge range for each node (length is size + 1)
+     * @param edgeTarget The dense index of the target of each edge
+     * @param edgeTransports The transport bitmask of each edge
+     */
+    CompiledGraph(int[] indexToNode, int[] edgeStart, int[] edgeTarget, byte[] edgeTransports){
+        this.indexToNode = indexToNode;
+        this.edgeStart = edgeStart;
+        this.edgeTarget = edgeTarget;
+        this.edgeTransports = edgeTransports;
+        int maxNode = 0;
+        for(int node : indexToNode) maxNode = Math.max(maxNode, node);
+        nodeToIndex = new int[maxNode + 1];
+        Arrays.fill(nodeToIndex, NO_INDEX);
+        for(int i = 0; i < indexToNode.length; i++) nodeToIndex[indexToNode[i]] = i;
+    }
+
+    /**
+     * Compiles a graph into its primitive form. Nodes are indexed in ascending order of their ID.
+     * @param graph The graph to compile
+     * @return The compiled graph
+     */
+    public static CompiledGraph compile(ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph){
+        int[] indexToNode = graph.nodes().stream().mapToInt(Integer::intValue).sorted().toArray();
+        int[] edgeStart = new int[indexToNode.length + 1];
+        int noEdges = 0;
+        for(int i = 0; i < indexToNode.length; i++){
+            edgeStart[i] = noEdges;
+            noEdges += graph.adjacentNodes(indexToNode[i]).size();
+        }
+        edgeStart[indexToNode.length] = noEdges;
+        int[] edgeTarget = new int[noEdges];
+        byte[] edgeTransports = new byte[noEdges];
+        //Index lookup used while building. Node IDs are small so a plain array is used
+        int maxNode = indexToNode.length == 0 ? 0 : indexToNode[indexToNode.length - 1];
+        int[] lookup = new int[maxNode + 1];
+        for(int i = 0; i < indexToNode.length; i++) lookup[indexToNode[i]] = i;
+        for(int i = 0; i < indexToNode.length; i++){
+            int e = edgeStart[i];
+            //Neighbours are sorted so that the compiled graph doesn't depend on guava's iteration order
+            int[] neighbours = graph.adjacentNodes(indexToNode[i]).stream().mapToInt(Integer::intValue)
+                    .sorted().toArray();
+            for(int neighbour : neighbours){
+                int mask = 0;
+                for(ScotlandYard.Transport t : graph.edgeValueOrDefault(indexToNode[i], neighbour, ImmutableSet.of())){
+                    mask |= transportBit(t);
+                }
+                edgeTarget[e] = lookup[neighbour];
+                edgeTransports[e] = (byte) mask;
+                e++;
+            }
+        }
+        return new CompiledGraph(indexToNode, edgeStart, edgeTarget, edgeTransports);
+    }
+
+    /**
+     * Gets the bit used to represent a mode of transport in edge masks
+     * @param t The transport
+     * @return The bit
+     */
+    public static int transportBit(ScotlandYard.Transport t){
+        return 1 << t.ordinal();
+    }
+
+    /**
+     * Gets the mask of all transports that can be used with a given ticket
+     * @param ticket The ticket
+     * @return The transport mask (0 for double tickets as they aren't used to travel along an edge)
+     */
+    public static int transportsForTicket(ScotlandYard.Ticket ticket){
+        return switch(ticket){
+            case TAXI -> TAXI_BIT;
+            case BUS -> BUS_BIT;
+            case UNDERGROUND -> UNDERGROUND_BIT;
+            case SECRET -> ALL_TRANSPORTS;
+            case DOUBLE -> 0;
+        };
+    }
+
+    /**
+     * Gets the number of nodes on the graph
+     * @return The number of nodes
+     */
+    public int size(){
+        return indexToNode.length;
+    }
+
+    /**
+     * Gets the node ID stored at a dense index
+     * @param index The index
+     * @return The node ID
+     */
+    public int nodeId(int index){
+        return indexToNode[index];
+    }
+
+    /**
+     * Gets the dense index of a node
+     * @param nodeId The node ID
+     * @return The index, or NO_INDEX if the node isn't on the graph
+     */
+    public int index(int nodeId){
+        if(nodeId < 0 || nodeId >= nodeToIndex.length) return NO_INDEX;
+        return nodeToIndex[nodeId];
+    }
+
+    /**
+     * Gets the first edge of a node
+     * @param index The dense index of the node
+     * @return The edge index
+     */
+    public int edgeStart(int index){
+        return edgeStart[index];
+    }
+
+    /**
+     * Gets the end (exclusive) of the edges of a node
+     * @param index The dense index of the node
+     * @return The edge index
+     */
+    public int edgeEnd(int index){
+        return edgeStart[index + 1];
+    }
+
+    /**
+     * Gets the dense index of the node at the end of an edge
+     * @param edge The edge index
+     * @return The target index
+     */
+    public int edgeTarget(int edge){
+        return edgeTarget[edge];
+    }
+
+    /**
+     * Gets the bitmask of transports that can be used along an edge
+     * @param edge The edge index
+     * @return The transport mask
+     */
+    public int edgeTransports(int edge){
+        return edgeTransports[edge];
+    }
+
+    /**
+     * Gets the total number of (directed) edges stored
+     * @return The number of edges
+     */
+    public int edgeCount(){
+        return edgeTarget.length;
+    }
+}
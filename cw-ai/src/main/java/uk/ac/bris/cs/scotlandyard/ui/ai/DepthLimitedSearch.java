@@ -0,0 +1,37 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+
+/**
+ * A game tree search that can be run to a fixed depth and stopped from another thread.
+ * This allows any search to be driven by {@link IterativeDeepening}.
+ */
+public interface DepthLimitedSearch {
+    /**
+     * Gets the best move by searching to the given depth
+     * @param maxDepth The maximum search depth allowed
+     * @return The best move
+     * @throws Minimax.MinimaxSearchInterrupted If the search is killed before it finishes
+     */
+    Move getBestMove(int maxDepth) throws Minimax.MinimaxSearchInterrupted;
+
+    /**
+     * Sets a flag that indicates the ongoing search should be killed
+     */
+    void killSearch();
+
+    /**
+     * Gets the moves that can be made from the root of the search
+     * @return The root moves
+     */
+    ImmutableList<Move> getRootMoves();
+
+    /**
+     * Gets the number of nodes visited by the search so far
+     * @return The number of nodes (0 if the search doesn't count them)
+     */
+    default long getNodeCount(){
+        return 0;
+    }
+}
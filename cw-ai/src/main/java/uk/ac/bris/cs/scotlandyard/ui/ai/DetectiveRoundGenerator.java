@@ -0,0 +1,243 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Generates "detective rounds": joint moves in which every detective still to move this round moves once.
+ * Searching one detective at a time means that the same outcome is reached through every ordering of the
+ * detectives (up to 5! for five detectives). Instead, this generates each set of destinations once.
+ * Joint moves are produced best first by the summed distance of the detectives to MrX.
+ * <br>
+ * By default every legal joint move is generated, so searching the rounds gives the same value as searching the
+ * detectives one at a time. A maximum number of joint moves can be given instead, which makes this a beam search:
+ * only the joint moves with the smallest summed distances are returned. That is forward pruning, so the searched
+ * value is no longer an exact minimax value and good joint moves (even ones that capture MrX) can be missed.
+ * A detective may move onto a node another detective is leaving, in which case the joint move is ordered
+ * so that the other detective moves first. Joint moves where two detectives end on the same node, or
+ * where detectives would have to swap nodes, are discarded.
+ */
+public final class DetectiveRoundGenerator {
+    //Number of joint moves generated when there is no beam
+    public static final int ALL_JOINT_MOVES = Integer.MAX_VALUE;
+    //Beam width used by ParanoidSearchDetective
+    public static final int DEFAULT_MAX_JOINT_MOVES = 12;
+    //Maximum number of tuples examined per joint move returned by a beam (as some tuples are invalid)
+    private static final int EXAMINED_PER_JOINT_MOVE = 8;
+    private final CachedDijkstra distance;
+    private final int maxJointMoves;
+
+    /**
+     * Creates a new detective round generator that generates every legal joint move
+     * @param distance The distance calculator used to order joint moves
+     */
+    public DetectiveRoundGenerator(CachedDijkstra distance){
+        this(distance, ALL_JOINT_MOVES);
+    }
+
+    /**
+     * Creates a new detective round generator that only generates the best joint moves (a beam)
+     * @param distance The distance calculator used to order joint moves
+     * @param maxJointMoves The maximum number of joint moves generated for a round (ALL_JOINT_MOVES for no beam)
+     */
+    public DetectiveRoundGenerator(CachedDijkstra distance, int maxJointMoves){
+        if(maxJointMoves < 1) throw new IllegalArgumentException("At least one joint move must be generated");
+        this.distance = distance;
+        this.maxJointMoves = maxJointMoves;
+    }
+
+    /**
+     * A joint move of all detectives left to move in a round
+     */
+    public static final class JointMove {
+        private final ImmutableList<Move.SingleMove> moves;
+        private final MyGameState endState;
+
+        /**
+         * Creates a new joint move
+         * @param moves The moves in an order in which they can be legally played
+         * @param endState The state after all moves have been made
+         */
+        JointMove(ImmutableList<Move.SingleMove> moves, MyGameState endState){
+            this.moves = moves;
+            this.endState = endState;
+        }
+
+        /**
+         * Gets the moves that make up the joint move
+         * @return The moves in an order in which they can be legally played
+         */
+        public ImmutableList<Move.SingleMove> getMoves() { return moves; }
+
+        /**
+         * Gets the first move of the joint move
+         * @return The first move
+         */
+        public Move.SingleMove getFirstMove() { return moves.get(0); }
+
+        /**
+         * Gets the state after the joint move has been made
+         * @return The state
+         */
+        public MyGameState getEndState() { return endState; }
+    }
+
+    /**
+     * A tuple of candidate moves (one index per detective) used for best first enumeration
+     */
+    private static final class Tuple {
+        final int[] index;
+        final int score;
+        final int lastIncremented;
+
+        Tuple(int[] index, int score, int lastIncremented){
+            this.index = index;
+            this.score = score;
+            this.lastIncremented = lastIncremented;
+        }
+    }
+
+    /**
+     * Generates the joint moves (or the best joint moves, if there is a beam) for a state where detectives are
+     * to move. Each returned joint move leads to a distinct state.
+     * @param state The state (MrX's location must be known, e.g. a paranoid search state)
+     * @return The joint moves, best first. This is empty if no valid joint move could be found, in which
+     * case detectives should be searched one at a time.
+     */
+    public List<JointMove> generate(MyGameState state){
+        //Finds the detectives still to move this round
+        Set<Piece> remaining = new HashSet<>();
+        for(Move m : state.getAvailableMoves()){
+            if(m.commencedBy().isMrX()) return List.of();
+            remaining.add(m.commencedBy());
+        }
+        List<Player> movers = new ArrayList<>();
+        Set<Integer> blocked = new HashSet<>(); //Locations of detectives that won't move this round
+        for(Player det : state.getDetectives()){
+            if(remaining.contains(det.piece())) movers.add(det);
+            else blocked.add(det.location());
+        }
+        //Candidate moves of each detective, best first. Nodes being left by other detectives are allowed
+        int mrXLocation = state.getMrX().location();
+        List<List<Move.SingleMove>> candidates = new ArrayList<>(movers.size());
+        List<int[]> costs = new ArrayList<>(movers.size());
+        for(Player det : movers){
+            List<Move.SingleMove> moves = candidateMoves(state, det, blocked);
+            if(moves.isEmpty()) return List.of();
+            moves.sort(Comparator.comparingInt(m -> distance.getDistance(m.destination, mrXLocation)));
+            int[] cost = new int[moves.size()];
+            for(int i = 0; i < cost.length; i++) cost[i] = distance.getDistance(moves.get(i).destination, mrXLocation);
+            candidates.add(moves);
+            costs.add(cost);
+        }
+        //Enumerates tuples in order of summed distance. Each tuple is only generated once as tuples are only
+        //incremented at or after the position last incremented
+        PriorityQueue<Tuple> queue = new PriorityQueue<>(Comparator.comparingInt(t -> t.score));
+        int startScore = 0;
+        for(int[] cost : costs) startScore += cost[0];
+        queue.add(new Tuple(new int[movers.size()], startScore, 0));
+        List<JointMove> jointMoves = new ArrayList<>();
+        Set<MyGameState> endStates = new HashSet<>();
+        long maxExamined = maxJointMoves == ALL_JOINT_MOVES ? Long.MAX_VALUE
+                : (long) maxJointMoves * EXAMINED_PER_JOINT_MOVE;
+        long examined = 0;
+        while(!queue.isEmpty() && jointMoves.size() < maxJointMoves && examined < maxExamined){
+            Tuple t = queue.poll();
+            examined++;
+            for(int d = t.lastIncremented; d < movers.size(); d++){
+                if(t.index[d] + 1 < candidates.get(d).size()){
+                    int[] next = t.index.clone();
+                    next[d]++;
+                    int score = t.score - costs.get(d)[t.index[d]] + costs.get(d)[next[d]];
+                    queue.add(new Tuple(next, score, d));
+                }
+            }
+            JointMove jointMove = createJointMove(state, movers, candidates, t.index);
+            //Removes duplicate outcomes (e.g. different moves made after MrX has been caught)
+            if(jointMove != null && endStates.add(jointMove.getEndState())) jointMoves.add(jointMove);
+        }
+        return jointMoves;
+    }
+
+    /**
+     * Gets all moves a detective could make this round, including onto nodes that other detectives will leave
+     * @param state The state
+     * @param det The detective
+     * @param blocked Nodes occupied by detectives that won't move this round
+     * @return The moves
+     */
+    private static List<Move.SingleMove> candidateMoves(MyGameState state, Player det, Set<Integer> blocked){
+        List<Move.SingleMove> moves = new ArrayList<>();
+        for(Integer destination : state.getSetup().graph.adjacentNodes(det.location())){
+            if(blocked.contains(destination)) continue;
+            for(ScotlandYard.Transport t : state.getSetup().graph.edgeValueOrDefault(det.location(), destination,
+                    ImmutableSet.of())){
+                Move.SingleMove m = new Move.SingleMove(det.piece(), det.location(), t.requiredTicket(), destination);
+                if(det.has(t.requiredTicket()) && !moves.contains(m)) moves.add(m);
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Creates a joint move from a tuple of candidate moves, if the tuple is valid
+     * @param state The state
+     * @param movers The detectives moving this round
+     * @param candidates The candidate moves of each detective
+     * @param index The index of the candidate move chosen for each detective
+     * @return The joint move, or null if the tuple can't be played
+     */
+    private static JointMove createJointMove(MyGameState state, List<Player> movers,
+                                             List<List<Move.SingleMove>> candidates, int[] index){
+        int n = movers.size();
+        Move.SingleMove[] chosen = new Move.SingleMove[n];
+        for(int d = 0; d < n; d++){
+            chosen[d] = candidates.get(d).get(index[d]);
+            for(int other = 0; other < d; other++){
+                if(chosen[other].destination == chosen[d].destination) return null; //Occupancy conflict
+            }
+        }
+        //Detectives moving onto a node being left must move after the detective leaving it
+        ImmutableList.Builder<Move.SingleMove> ordered = ImmutableList.builder();
+        boolean[] placed = new boolean[n];
+        for(int noPlaced = 0; noPlaced < n; ){
+            boolean progress = false;
+            for(int d = 0; d < n; d++){
+                if(placed[d]) continue;
+                boolean waiting = false;
+                for(int other = 0; other < n; other++){
+                    if(!placed[other] && other != d && movers.get(other).location() == chosen[d].destination){
+                        waiting = true;
+                    }
+                }
+                if(!waiting){
+                    placed[d] = true;
+                    ordered.add(chosen[d]);
+                    noPlaced++;
+                    progress = true;
+                }
+            }
+            if(!progress) return null; //Detectives would need to swap nodes, which isn't possible
+        }
+        //Plays the moves (stopping early if the game ends, e.g. MrX is caught)
+        ImmutableList<Move.SingleMove> moves = ordered.build();
+        MyGameState endState = state;
+        for(Move.SingleMove m : moves){
+            if(!endState.getWinner().isEmpty()) break;
+            if(!endState.getAvailableMoves().contains(m)) return null;
+            endState = endState.advance(m);
+        }
+        return new JointMove(moves, endState);
+    }
+}
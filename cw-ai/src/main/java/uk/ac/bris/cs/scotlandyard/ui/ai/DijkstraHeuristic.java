@@ -6,13 +6,18 @@ import uk.ac.bris.cs.scotlandyard.model.Board;
 import uk.ac.bris.cs.scotlandyard.model.Player;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
 
+import java.util.List;
+
 
 /**
  * Class that uses Dijkstra's algorithm as a heuristic to score a board state.
  * This structure uses the sum of the distance between the detectives and MrX as a score.
+ * Detective distances take the tickets each detective holds into account (see {@link TicketDistanceOracle}).
  */
 public class DijkstraHeuristic extends Heuristic{
     private final CachedDijkstra graphDist;
+    private final TicketDistanceOracle oracle;
+    private final DistanceReduction reduction = DistanceReduction.create();
     private final ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> cachedGraph;
 
     /**
@@ -22,7 +27,8 @@ public class DijkstraHeuristic extends Heuristic{
     public DijkstraHeuristic(ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graphForCache){
         if(graphForCache == null) throw new IllegalArgumentException("Null graph not allowed");
         this.cachedGraph = graphForCache;
-        graphDist = CachedDijkstra.preComputeAllDistances(graphForCache, new OneCostPerEdge());
+        graphDist = GraphRegistry.shared().distances(graphForCache, new OneCostPerEdge());
+        oracle = GraphRegistry.shared().ticketOracle(graphForCache);
     }
 
     @Override
@@ -42,29 +48,61 @@ public class DijkstraHeuristic extends Heuristic{
         int totalDistance = 0;
         //Loops through all detectives and find their distance from MrX
         for(Player det : state.getDetectives()){
-            totalDistance += getDistance(state.getMrX().location(), det.location());
+            int moves = oracle.minMoves(det, state.getMrX().location());
+            //A detective that can't reach MrX with its tickets is treated as being as far away as possible
+            totalDistance += moves == TicketDistanceOracle.UNREACHABLE ? oracle.getDiameter() + 1 : moves;
         }
         //Keeps total distance within a reasonable range
         return Heuristic.clipValue(totalDistance);
     }
 
+    @Override
+    public void scoreAll(List<? extends MyGameState> states, float[] out){
+        int n = states.size();
+        if(out.length < n) throw new IllegalArgumentException("Output array is too short");
+        if(n == 0) return;
+        int noDetectives = states.get(0).getDetectives().size();
+        float[][] moves = new float[noDetectives][n];
+        boolean[] finished = new boolean[n];
+        for(int i = 0; i < n; i++){
+            MyGameState state = states.get(i);
+            Heuristic.State currentState = Heuristic.getGameState(state);
+            if(currentState != State.gameStillGoing){
+                out[i] = currentState == State.detWins ? Heuristic.DETECTIVE_WINS : Heuristic.MRX_WINS;
+                finished[i] = true;
+                continue;
+            }
+            List<Player> detectives = state.getDetectives();
+            if(detectives.size() != noDetectives){
+                super.scoreAll(states, out);
+                return;
+            }
+            for(int d = 0; d < noDetectives; d++){
+                int m = oracle.minMoves(detectives.get(d), state.getMrX().location());
+                moves[d][i] = m == TicketDistanceOracle.UNREACHABLE ? oracle.getDiameter() + 1 : m;
+            }
+        }
+        //Only the totals are used
+        float[] closest = new float[n];
+        float[] total = new float[n];
+        reduction.reduce(moves, n, closest, total);
+        for(int i = 0; i < n; i++) if(!finished[i]) out[i] = Heuristic.clipValue(total[i]);
+    }
+
     /**
      * Checks that the graph stored in the board has the same graph as the one used for the heuristic
      * @param state The board state
      * @return Whether the graph state matches
      */
     public boolean graphEqualsCachedGraph(Board state){
-        return cachedGraph.equals(state.getSetup().graph);
+        return GraphFingerprint.sameGraph(cachedGraph, state.getSetup().graph);
     }
 
     /**
-     * Gets the distance between two points on the graph.
-     * @param start The start node
-     * @param dest The end node
-     * @return The distance between the two points
+     * Gets object used to calculate distance between two points on graph
+     * @return The distance calculating object
      */
-    private int getDistance(Integer start, Integer dest){
-        return graphDist.getDistance(start, dest);
+    public CachedDijkstra getDistanceCalculator() {
+        return graphDist;
     }
-
 }
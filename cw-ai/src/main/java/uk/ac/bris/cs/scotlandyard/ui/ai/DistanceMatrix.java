@@ -0,0 +1,106 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Table of distances between every pair of nodes on a graph.
+ * Node ids are mapped to dense indices using an array (rather than a HashMap of boxed integers),
+ * and the distances are stored in a single row-major short array. For the standard graph this is
+ * under 80KB, so it fits in the L2 cache.
+ * Indices are assigned in ascending order of node id, so they match the indices of a {@link CompiledGraph}
+ * built from the same graph.
+ */
+public final class DistanceMatrix {
+    public static final int NO_INDEX = -1;
+    private final int size;
+    private final int[] indexToNode;
+    private final int[] nodeToIndex; //Indexed by node id (NO_INDEX for ids not on the graph)
+    private final short[] distances; //Indexed by [from * size + to]
+
+    /**
+     * Creates a distance matrix
+     * @param indexToNode The node id of each index (in ascending order)
+     * @param distances The distances between indices, indexed [from * size + to]
+     */
+    DistanceMatrix(int[] indexToNode, short[] distances){
+        this.size = indexToNode.length;
+        if(distances.length != size * size) throw new IllegalArgumentException("Distance table is the wrong size");
+        this.indexToNode = indexToNode;
+        this.distances = distances;
+        int maxId = 0;
+        for(int node : indexToNode){
+            if(node < 0) throw new IllegalArgumentException("Node ids must be non-negative");
+            maxId = Math.max(maxId, node);
+        }
+        nodeToIndex = new int[maxId + 1];
+        Arrays.fill(nodeToIndex, NO_INDEX);
+        for(int i = 0; i < size; i++) nodeToIndex[indexToNode[i]] = i;
+    }
+
+    /**
+     * Gets the distance between two nodes
+     * @param a The start node id
+     * @param b The end node id
+     * @return The distance
+     */
+    public int distance(int a, int b){
+        return distances[nodeToIndex[a] * size + nodeToIndex[b]];
+    }
+
+    /**
+     * Gets the distance between two dense indices
+     * @param i The start index
+     * @param j The end index
+     * @return The distance
+     */
+    public int distanceByIndex(int i, int j){
+        return distances[i * size + j];
+    }
+
+    /**
+     * Gets the dense index of a node
+     * @param node The node id
+     * @return The index, or NO_INDEX if the node isn't on the graph
+     */
+    public int index(int node){
+        return node >= 0 && node < nodeToIndex.length ? nodeToIndex[node] : NO_INDEX;
+    }
+
+    /**
+     * Gets the node id of a dense index
+     * @param i The index
+     * @return The node id
+     */
+    public int nodeId(int i){
+        return indexToNode[i];
+    }
+
+    /**
+     * Gets the number of nodes
+     * @return The number of nodes
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Sets the distance between two indices. Only used while the matrix is being built.
+     * @param i The start index
+     * @param j The end index
+     * @param distance The distance
+     */
+    void set(int i, int j, int distance){
+        if(distance < 0 || distance > Short.MAX_VALUE)
+            throw new IllegalArgumentException("Distance " + distance + " can't be stored in the matrix");
+        distances[i * size + j] = (short) distance;
+    }
+
+    /**
+     * Copies all distances into a buffer (in row-major order)
+     * @param out The buffer to write to (written from its current position)
+     */
+    void copyTo(ShortBuffer out){
+        out.put(distances);
+    }
+}
@@ -0,0 +1,47 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+/**
+ * Reduces columns of detective distances to the closest and total distance of each position.
+ * The distances are stored detective by detective (distances[d][i] is the distance between detective d and
+ * MrX in position i), so each reduction is a lane-wise min and add over whole rows.
+ * <br>
+ * {@link DistanceReduction#create()} picks a SIMD implementation using the incubating Vector API when it has
+ * been compiled in (the "vector" Maven profile) and the module is available at runtime, and the scalar
+ * implementation otherwise.
+ */
+public interface DistanceReduction {
+    //Set to true to always use the scalar implementation
+    String SCALAR_PROPERTY = "scotlandyard.scalar";
+    String VECTOR_MODULE = "jdk.incubator.vector";
+    String VECTOR_IMPLEMENTATION = "uk.ac.bris.cs.scotlandyard.ui.ai.VectorDistanceReduction";
+
+    /**
+     * Computes the closest and total distance of each position
+     * @param distances distances[d][i] is the distance between detective d and MrX in position i
+     * @param n The number of positions
+     * @param closest The array the smallest distance of each position is written to
+     * @param total The array the sum of the distances of each position is written to
+     */
+    void reduce(float[][] distances, int n, float[] closest, float[] total);
+
+    /**
+     * Gets the name of the implementation
+     * @return The name
+     */
+    String name();
+
+    /**
+     * Creates the fastest implementation available
+     * @return The implementation
+     */
+    static DistanceReduction create(){
+        if(!Boolean.getBoolean(SCALAR_PROPERTY) && ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()){
+            try{
+                return (DistanceReduction) Class.forName(VECTOR_IMPLEMENTATION).getDeclaredConstructor().newInstance();
+            }catch(ReflectiveOperationException | LinkageError e){
+                //Not compiled in, so falls back to the scalar implementation
+            }
+        }
+        return new ScalarDistanceReduction();
+    }
+}
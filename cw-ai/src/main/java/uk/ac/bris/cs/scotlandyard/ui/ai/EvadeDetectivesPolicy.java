@@ -0,0 +1,48 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+/**
+ * MrX playout policy that moves to the location furthest away from the closest detective.
+ * Single moves are preferred over double moves that reach an equally safe location, and with a small
+ * probability a random move is made instead so that playouts don't become deterministic.
+ */
+public final class EvadeDetectivesPolicy implements PlayoutPolicy {
+    private final int[] distances; //Distances between dense indices, indexed [from * size + to]
+    private final int size;
+    private final float randomness;
+
+    /**
+     * Creates a new policy
+     * @param graph The compiled graph playouts are made on
+     * @param distance The distance calculator for the same graph
+     * @param randomness The probability of making a random move instead of the greedy one [0, 1]
+     */
+    public EvadeDetectivesPolicy(CompiledGraph graph, CachedDijkstra distance, float randomness){
+        this.size = graph.size();
+        this.distances = PlayoutEngine.denseDistances(graph, distance);
+        this.randomness = randomness;
+    }
+
+    @Override
+    public int chooseMove(PlayoutState state, int[] moves, int noMoves, XorShiftRandom rng) {
+        if(rng.nextFloat() < randomness) return rng.nextInt(noMoves);
+        int best = 0;
+        int bestScore = Integer.MIN_VALUE;
+        int noTies = 0;
+        for(int i = 0; i < noMoves; i++){
+            int destination = PlayoutState.finalDestination(moves[i]);
+            int closest = Integer.MAX_VALUE;
+            for(int d = 0; d < state.noDetectives(); d++){
+                closest = Math.min(closest, distances[destination * size + state.getDetective(d)]);
+            }
+            int score = closest * 2 - (PlayoutState.isDoubleMove(moves[i]) ? 1 : 0);
+            if(score > bestScore){
+                bestScore = score;
+                best = i;
+                noTies = 1;
+            }else if(score == bestScore && rng.nextInt(++noTies) == 0){
+                best = i;
+            }
+        }
+        return best;
+    }
+}
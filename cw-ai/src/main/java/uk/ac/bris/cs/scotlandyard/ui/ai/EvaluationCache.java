@@ -0,0 +1,109 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed size cache of heuristic scores keyed by a 64-bit position hash (see {@link MyGameState#positionHash()}).
+ * Each entry is a single long: the top 32 bits of the hash (used to check the entry is for the right position)
+ * and the bits of the score. The bottom bits of the hash pick the slot, and a new entry always replaces the old
+ * one. As an entry is read and written in one access, the cache is safe to share between threads without
+ * locks (a racing write can only replace an entry, never corrupt it).
+ */
+public final class EvaluationCache {
+    public static final int DEFAULT_ENTRIES = 1 << 16;
+    private static final VarHandle ENTRIES = MethodHandles.arrayElementVarHandle(long[].class);
+    private final long[] entries;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a cache
+     * @param minEntries The minimum number of entries (rounded up to a power of two)
+     */
+    public EvaluationCache(int minEntries){
+        if(minEntries < 1 || minEntries > 1 << 30) throw new IllegalArgumentException("Invalid number of entries");
+        int size = Integer.highestOneBit(minEntries);
+        if(size < minEntries) size <<= 1;
+        entries = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Creates a cache with the default number of entries
+     */
+    public EvaluationCache(){
+        this(DEFAULT_ENTRIES);
+    }
+
+    /**
+     * Gets the score of a position
+     * @param hash The position hash
+     * @return The score, or NaN if the position isn't stored
+     */
+    public float get(long hash){
+        long entry = (long) ENTRIES.getOpaque(entries, (int) hash & mask);
+        if(entry != 0 && (int) (entry >>> 32) == (int) (hash >>> 32)){
+            hits.increment();
+            return Float.intBitsToFloat((int) entry);
+        }
+        misses.increment();
+        return Float.NaN;
+    }
+
+    /**
+     * Stores the score of a position
+     * @param hash The position hash
+     * @param score The score (not NaN)
+     */
+    public void put(long hash, float score){
+        long entry = (hash & 0xFFFFFFFF00000000L) | (Float.floatToRawIntBits(score) & 0xFFFFFFFFL);
+        ENTRIES.setOpaque(entries, (int) hash & mask, entry);
+    }
+
+    /**
+     * Gets the number of lookups that found a score
+     * @return The number of hits
+     */
+    public long getHits(){
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of lookups that didn't find a score
+     * @return The number of misses
+     */
+    public long getMisses(){
+        return misses.sum();
+    }
+
+    /**
+     * Gets the fraction of lookups that found a score
+     * @return The hit rate (0 if there have been no lookups)
+     */
+    public double getHitRate(){
+        long h = getHits();
+        long total = h + getMisses();
+        return total == 0 ? 0 : h / (double) total;
+    }
+
+    /**
+     * Gets the number of entries
+     * @return The number of entries
+     */
+    public int capacity(){
+        return entries.length;
+    }
+
+    /**
+     * Removes every entry and resets the counters. Shouldn't be called while the cache is in use.
+     */
+    public void clear(){
+        Arrays.fill(entries, 0);
+        hits.reset();
+        misses.reset();
+    }
+}
@@ -0,0 +1,75 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detective AI that uses a belief based expectimax search (see {@link BeliefExpectimax}).
+ * Rather than evaluating every move against every possible MrX location to depth 1, this keeps
+ * all of MrX's possible locations in a single node and searches deeper using iterative deepening.
+ */
+public class ExpectimaxDetectiveAi implements AiCustom {
+    private ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> cachedGraph = null;
+    private CompiledGraph compiledGraph = null;
+    private int[] distances = null;
+    private BeliefTracker tracker = null; //Kept between turns so only new log entries are processed
+
+    @Nonnull
+    @Override
+    public String name() { return "Belief Expectimax Detectives"; }
+
+    @Override
+    public void onStart() {
+        try{
+            //Precomputes the graph and the distances used by the heuristic
+            cacheGraph(GraphRegistry.shared().standardGraph());
+        }catch(IOException e){
+            System.err.println("Error when retrieving standard graph for expectimax search. " + e);
+        }
+    }
+
+    /**
+     * Compiles a graph and calculates the distances used by the search
+     * @param graph The graph
+     */
+    private void cacheGraph(ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph){
+        cachedGraph = graph;
+        compiledGraph = GraphRegistry.shared().compiledGraph(graph);
+        //Uses the same distances as ClosestDetectiveHeuristic so the leaf values match
+        distances = PlayoutEngine.denseDistances(compiledGraph,
+                GraphRegistry.shared().distances(graph, new DistanceWeighting()));
+        tracker = BeliefTracker.forGraph(graph);
+    }
+
+    @Nonnull
+    @Override
+    public Move pickMove(@Nonnull Board board, Pair<Long, TimeUnit> timeoutPair) {
+        long startTime = System.currentTimeMillis();
+        //This is an AI only for detectives
+        if(board.getAvailableMoves().asList().get(0).commencedBy().isMrX())
+            throw new IllegalArgumentException("Expectimax search can only be applied for detective moves");
+        //Checks to see if failure occurred when precomputing or the graph is different
+        if(!GraphFingerprint.sameGraph(cachedGraph, board.getSetup().graph)){
+            cacheGraph(board.getSetup().graph);
+            System.err.println("Pre computation was unsuccessful");
+        }
+        BeliefExpectimax search = new BeliefExpectimax(board, compiledGraph, distances,
+                tracker.getPossibleLocations(board, false));
+        //Runs iterative deepening until the time allowed for the move has run out
+        IterativeDeepening iterativeDeep = new IterativeDeepening(search);
+        Move bestMove = iterativeDeep.searchFor(IterativeDeepening.computeTime(startTime, timeoutPair));
+        if(bestMove == null || !board.getAvailableMoves().contains(bestMove)){//Failsafe
+            bestMove = board.getAvailableMoves().asList().get(0);
+            System.err.println("Error in expectimax search");
+        }
+        return bestMove;
+    }
+}
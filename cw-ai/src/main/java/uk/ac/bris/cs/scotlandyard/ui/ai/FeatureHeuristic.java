@@ -0,0 +1,207 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Heuristic that scores a state as the dot product of a fixed length feature vector and a weight vector.
+ * The default weights are those of {@link ClosestDetectiveHeuristic}, and tuned weights can be
+ * loaded from a file (see FeatureTuner in the tests) named by the {@link FeatureHeuristic#WEIGHTS_PROPERTY}
+ * system property. Features are written into a per-thread array, so scoring a state doesn't allocate.
+ * <br>
+ * Weight files have one "name=weight" line per feature (names are in {@link FeatureHeuristic#FEATURE_NAMES}).
+ * Missing features have a weight of 0, and lines starting with # are ignored.
+ */
+public class FeatureHeuristic extends Heuristic {
+    //System property holding the path of the weight file
+    public static final String WEIGHTS_PROPERTY = "scotlandyard.weights";
+    //Indices of the features
+    public static final int BIAS = 0;
+    public static final int CLOSEST_DISTANCE = 1;
+    public static final int MEAN_DISTANCE = 2;
+    public static final int SECRET_TICKETS = 3;
+    public static final int POSSIBLE_LOCATIONS = 4;
+    public static final int DOUBLE_TICKETS = 5;
+    public static final int MOBILITY = 6; //Neighbours MrX can move to with his tickets
+    public static final int FAN_OUT = 7; //Nodes MrX can reach within two moves
+    public static final int STATION_DISTANCE = 8;
+    public static final int ADJACENT_DETECTIVES = 9; //Detectives one move away from MrX
+    public static final int NO_FEATURES = 10;
+    public static final List<String> FEATURE_NAMES = List.of("bias", "closestDistance", "meanDistance",
+            "secretTickets", "possibleLocations", "doubleTickets", "mobility", "fanOut", "stationDistance",
+            "adjacentDetectives");
+    //Station distances are capped so that an unreachable station doesn't dominate the score
+    private static final int MAX_STATION_DISTANCE = 5;
+    private final DistanceMatrix matrix;
+    private final NodeFeatures features;
+    private final ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> cachedGraph;
+    private final float[] weights;
+    private final ThreadLocal<float[]> scratch = ThreadLocal.withInitial(() -> new float[NO_FEATURES]);
+
+    /**
+     * Creates a heuristic using given weights
+     * @param graphForCache The graph to be used
+     * @param weights The weight of each feature (copied)
+     */
+    public FeatureHeuristic(ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graphForCache,
+                            float[] weights){
+        if(weights.length != NO_FEATURES) throw new IllegalArgumentException("There must be a weight per feature");
+        this.cachedGraph = graphForCache;
+        this.matrix = GraphRegistry.shared().distances(graphForCache, new DistanceWeighting()).getDistanceMatrix();
+        this.features = GraphRegistry.shared().nodeFeatures(graphForCache);
+        this.weights = weights.clone();
+    }
+
+    /**
+     * Creates a heuristic using the weights named by the system property (or the default weights)
+     * @param graphForCache The graph to be used
+     * @throws UncheckedIOException If the weight file can't be read or is invalid
+     */
+    public FeatureHeuristic(ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graphForCache){
+        this(graphForCache, configuredWeights().orElse(defaultWeights()));
+    }
+
+    /**
+     * Gets the weights that reproduce {@link ClosestDetectiveHeuristic#combineTerms(float, float, int, int)}
+     * @return The weights
+     */
+    public static float[] defaultWeights(){
+        float[] weights = new float[NO_FEATURES];
+        weights[CLOSEST_DISTANCE] = 90;
+        weights[MEAN_DISTANCE] = 10;
+        weights[SECRET_TICKETS] = 1;
+        weights[POSSIBLE_LOCATIONS] = 2;
+        return weights;
+    }
+
+    /**
+     * Loads the weights named by the {@link FeatureHeuristic#WEIGHTS_PROPERTY} system property
+     * @return The weights, or empty if the property isn't set
+     * @throws UncheckedIOException If the file can't be read or is invalid (naming the file)
+     */
+    public static Optional<float[]> configuredWeights(){
+        String path = System.getProperty(WEIGHTS_PROPERTY);
+        if(path == null || path.isEmpty()) return Optional.empty();
+        try{
+            return Optional.of(loadWeights(Paths.get(path)));
+        }catch(IOException e){
+            throw new UncheckedIOException("Could not load the weights in " + path + " (set by -D"
+                    + WEIGHTS_PROPERTY + ")", e);
+        }
+    }
+
+    /**
+     * Loads weights from a file
+     * @param file The file
+     * @return The weights
+     * @throws IOException If the file can't be read or has an unknown feature or invalid weight
+     */
+    public static float[] loadWeights(Path file) throws IOException{
+        float[] weights = new float[NO_FEATURES];
+        for(String line : Files.readAllLines(file, StandardCharsets.UTF_8)){
+            line = line.trim();
+            if(line.isEmpty() || line.startsWith("#")) continue;
+            int split = line.indexOf('=');
+            int feature = split < 0 ? -1 : FEATURE_NAMES.indexOf(line.substring(0, split).trim());
+            if(feature < 0) throw new IOException("Unknown feature in weight file: " + line);
+            try{
+                weights[feature] = Float.parseFloat(line.substring(split + 1).trim());
+            }catch(NumberFormatException e){
+                throw new IOException("Invalid weight in weight file: " + line, e);
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Saves weights to a file that can be loaded with {@link FeatureHeuristic#loadWeights(Path)}
+     * @param file The file
+     * @param weights The weights
+     * @param comment A comment written at the top of the file (e.g. how the weights were found)
+     * @throws IOException If the file can't be written
+     */
+    public static void saveWeights(Path file, float[] weights, String comment) throws IOException{
+        try(BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)){
+            writer.write("# " + comment);
+            writer.newLine();
+            for(int i = 0; i < NO_FEATURES; i++){
+                writer.write(FEATURE_NAMES.get(i) + "=" + weights[i]);
+                writer.newLine();
+            }
+        }
+    }
+
+    @Override
+    public float gameScore(MyGameState state){
+        Heuristic.State currentState = Heuristic.getGameState(state);
+        //Game is over
+        if(currentState == State.detWins) return Heuristic.DETECTIVE_WINS;
+        if(currentState == State.xWins) return Heuristic.MRX_WINS;
+        float[] x = scratch.get();
+        features(state, x);
+        float score = 0;
+        for(int i = 0; i < NO_FEATURES; i++) score += weights[i] * x[i];
+        return Heuristic.clipValue(score);
+    }
+
+    /**
+     * Computes the feature vector of a (non-terminal) state
+     * @param state The state
+     * @param out The array the features are written to (of length NO_FEATURES)
+     */
+    public void features(MyGameState state, float[] out){
+        Player mrX = state.getMrX();
+        int mrXIndex = matrix.index(mrX.location());
+        float closest = Float.POSITIVE_INFINITY;
+        float total = 0;
+        int adjacent = 0;
+        for(Player det : state.getDetectives()){
+            float dist = matrix.distanceByIndex(matrix.index(det.location()), mrXIndex);
+            closest = Math.min(closest, dist);
+            total += dist;
+            if(dist <= 1) adjacent++;
+        }
+        int node = features.getGraph().index(mrX.location());
+        int transports = ReachabilityTable.transportMask(mrX.tickets());
+        out[BIAS] = 1;
+        out[CLOSEST_DISTANCE] = closest;
+        out[MEAN_DISTANCE] = total / (float) state.getDetectives().size();
+        out[SECRET_TICKETS] = mrX.tickets().get(ScotlandYard.Ticket.SECRET);
+        out[POSSIBLE_LOCATIONS] = state.getMrXPossibleLocations().size();
+        out[DOUBLE_TICKETS] = mrX.tickets().get(ScotlandYard.Ticket.DOUBLE);
+        out[MOBILITY] = features.mobility(node, transports);
+        out[FAN_OUT] = features.twoMoveFanOut(node, transports);
+        out[STATION_DISTANCE] = Math.min(MAX_STATION_DISTANCE, features.stationDistance(node));
+        out[ADJACENT_DETECTIVES] = adjacent;
+    }
+
+    /**
+     * Gets a copy of the weights
+     * @return The weights
+     */
+    public float[] getWeights(){
+        return weights.clone();
+    }
+
+    /**
+     * Checks that the graph stored in the board is the same as the one used by the heuristic
+     * @param state The board state
+     * @return Whether the graphs match
+     */
+    public boolean graphEqualsCachedGraph(Board state){
+        return GraphFingerprint.sameGraph(cachedGraph, state.getSetup().graph);
+    }
+}
@@ -0,0 +1,107 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.MapMaker;
+import com.google.common.graph.EndpointPair;
+import com.google.common.graph.ImmutableValueGraph;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Calculates 64-bit fingerprints of graphs, so that graphs can be used as keys without
+ * comparing every node and edge.
+ * Two equal graphs always have the same fingerprint, whatever order their nodes were added in.
+ * Fingerprints are remembered for each graph instance (graphs are immutable), so checking whether a board
+ * uses the graph an AI precomputed for is a lookup rather than a walk over every node and edge.
+ */
+public final class GraphFingerprint {
+    //Keys are weak and compared by identity, so graphs that are no longer used can still be collected
+    private static final ConcurrentMap<ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>>, Long>
+            fingerprints = new MapMaker().weakKeys().makeMap();
+
+    private GraphFingerprint(){}
+
+    /**
+     * Gets the fingerprint of a graph. It is only calculated the first time it is needed for each graph instance.
+     * @param graph The graph
+     * @return The fingerprint
+     */
+    public static long of(ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph){
+        return fingerprints.computeIfAbsent(graph, GraphFingerprint::compute);
+    }
+
+    /**
+     * Checks whether two graphs are the same, by identity or by fingerprint
+     * @param a The first graph (may be null)
+     * @param b The second graph (may be null)
+     * @return Whether the graphs are the same (false if either is null)
+     */
+    public static boolean sameGraph(ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> a,
+                                    ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> b){
+        if(a == null || b == null) return false;
+        return a == b || of(a) == of(b);
+    }
+
+    /**
+     * Calculates the fingerprint of a graph
+     * @param graph The graph
+     * @return The fingerprint
+     */
+    private static long compute(ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph){
+        int[] nodes = graph.nodes().stream().mapToInt(Integer::intValue).sorted().toArray();
+        long hash = mix(nodes.length);
+        for(int node : nodes){
+            hash = mix(hash ^ node);
+            int[] neighbours = graph.adjacentNodes(node).stream().mapToInt(Integer::intValue).sorted().toArray();
+            for(int neighbour : neighbours){
+                int transports = 0;
+                for(ScotlandYard.Transport t : graph.edgeValueOrDefault(node, neighbour, ImmutableSet.of())){
+                    transports |= CompiledGraph.transportBit(t);
+                }
+                hash = mix(hash ^ (((long) neighbour << 8) | transports));
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Calculates a signature of the costs an edge value gives to a graph. Edge values that give every edge
+     * of the graph the same cost have the same signature (e.g. two instances of the same edge value class).
+     * @param graph The graph
+     * @param val The method used to calculate edge costs
+     * @return The signature
+     */
+    public static long edgeCostSignature(ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph,
+                                         EdgeValue val){
+        //Costs only depend on the set of transports, so each distinct set only needs to be costed once
+        int noSets = 1 << ScotlandYard.Transport.values().length;
+        long[] costs = new long[noSets];
+        boolean[] seen = new boolean[noSets];
+        for(EndpointPair<Integer> edge : graph.edges()){
+            ImmutableSet<ScotlandYard.Transport> transports = graph.edgeValue(edge).get();
+            int mask = 0;
+            for(ScotlandYard.Transport t : transports) mask |= CompiledGraph.transportBit(t);
+            if(!seen[mask]){
+                seen[mask] = true;
+                costs[mask] = val.getEdgeCost(transports);
+            }
+        }
+        long hash = mix(noSets);
+        for(int mask = 0; mask < noSets; mask++){
+            hash = mix(hash ^ (seen[mask] ? costs[mask] + 1 : 0));
+        }
+        return hash;
+    }
+
+    /**
+     * Mixes the bits of a value (the splitmix64 finaliser)
+     * @param z The value
+     * @return The mixed value
+     */
+    static long mix(long z){
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
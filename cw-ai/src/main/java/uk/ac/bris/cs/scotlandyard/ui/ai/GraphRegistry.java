@@ -0,0 +1,370 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.util.concurrent.Uninterruptibles;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Process wide store of precomputed graph data (compiled graphs and distance tables).
+ * Every AI instance (and every concurrent game) in the JVM shares one copy of each table, rather than
+ * each AI parsing the standard graph and running its own all-pairs search.
+ * Entries are keyed by the fingerprint of the graph and, for distances, the costs the edge value gives.
+ * The least recently used entries are evicted once the estimated memory use goes above a cap.
+ * Tables that aren't in memory are loaded from an on disk cache if possible (see {@link GraphTableCache}),
+ * and written to it when they have to be computed.
+ * All methods are thread safe. Tables are computed (or loaded) outside the registry's lock, so threads that
+ * want other tables aren't held up, and threads that want the same table wait for the one computing it.
+ */
+public final class GraphRegistry {
+    //System property that can be used to set the memory cap (in bytes) of the shared registry
+    public static final String MAX_BYTES_PROPERTY = "scotlandyard.registry.maxBytes";
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    private static final GraphRegistry SHARED =
+            new GraphRegistry(Long.getLong(MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES), GraphTableCache.shared());
+    private final long maxBytes;
+    private final GraphTableCache diskCache; //Null if tables aren't stored on disk
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); //Access ordered
+    //Tables being computed, so that each one is only computed once
+    private final ConcurrentHashMap<Key, FutureTask<Object>> pending = new ConcurrentHashMap<>();
+    private long totalBytes = 0;
+    private final Object standardGraphLock = new Object();
+    private volatile ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> standardGraph = null;
+
+    /**
+     * Creates a new registry
+     * @param maxBytes The estimated memory the registry may use before entries are evicted
+     */
+    public GraphRegistry(long maxBytes){
+        this(maxBytes, null);
+    }
+
+    /**
+     * Creates a new registry backed by an on disk cache
+     * @param maxBytes The estimated memory the registry may use before entries are evicted
+     * @param diskCache The cache used to load and store tables (null to only store tables in memory)
+     */
+    public GraphRegistry(long maxBytes, GraphTableCache diskCache){
+        this.maxBytes = maxBytes;
+        this.diskCache = diskCache;
+    }
+
+    /**
+     * Gets the registry shared by the whole process
+     * @return The registry
+     */
+    public static GraphRegistry shared(){
+        return SHARED;
+    }
+
+    /**
+     * Gets the standard game graph. The graph file is only parsed once.
+     * @return The standard graph
+     * @throws IOException If the graph can't be loaded
+     */
+    public ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> standardGraph()
+            throws IOException{
+        ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph = standardGraph;
+        if(graph != null) return graph;
+        //Uses its own lock so that parsing the graph doesn't hold up lookups of other tables
+        synchronized(standardGraphLock){
+            if(standardGraph == null) standardGraph = ScotlandYard.standardGraph();
+            return standardGraph;
+        }
+    }
+
+    /**
+     * Gets the precomputed distances for a graph, loading or calculating them if they aren't stored
+     * @param graph The graph
+     * @param val The method used to calculate edge costs
+     * @return The distances
+     */
+    public CachedDijkstra distances(ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph,
+                                    EdgeValue val){
+        long fingerprint = GraphFingerprint.of(graph);
+        long signature = GraphFingerprint.edgeCostSignature(graph, val);
+        return (CachedDijkstra) get(new Key(Kind.DISTANCES, fingerprint, signature), () -> {
+            CachedDijkstra loaded = diskCache == null ? null : diskCache.loadDistances(fingerprint, signature);
+            if(loaded != null && loaded.getDistanceMatrix().size() == graph.nodes().size()) return loaded;
+            CachedDijkstra computed = CachedDijkstra.preComputeAllDistances(graph, val);
+            if(diskCache != null){
+                try{
+                    diskCache.storeDistances(fingerprint, signature, computed);
+                }catch(IOException e){
+                    System.err.println("Unable to store distances in the graph table cache. " + e);
+                }
+            }
+            return computed;
+        });
+    }
+
+    /**
+     * Gets the compiled version of a graph, loading or compiling it if it isn't stored
+     * @param graph The graph
+     * @return The compiled graph
+     */
+    public CompiledGraph compiledGraph(ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph){
+        long fingerprint = GraphFingerprint.of(graph);
+        return (CompiledGraph) get(new Key(Kind.COMPILED_GRAPH, fingerprint, 0), () -> {
+            CompiledGraph loaded = diskCache == null ? null : diskCache.loadCompiledGraph(fingerprint);
+            if(loaded != null && loaded.size() == graph.nodes().size()) return loaded;
+            CompiledGraph compiled = CompiledGraph.compile(graph);
+            if(diskCache != null){
+                try{
+                    diskCache.storeCompiledGraph(fingerprint, compiled);
+                }catch(IOException e){
+                    System.err.println("Unable to store compiled graph in the graph table cache. " + e);
+                }
+            }
+            return compiled;
+        });
+    }
+
+    /**
+     * Gets the ticket aware distance oracle of a graph, creating it if it isn't stored
+     * @param graph The graph
+     * @return The oracle
+     */
+    public TicketDistanceOracle ticketOracle(ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph){
+        CompiledGraph compiled = compiledGraph(graph);
+        Key key = new Key(Kind.TICKET_ORACLE, GraphFingerprint.of(graph), 0);
+        return (TicketDistanceOracle) get(key, () -> new TicketDistanceOracle(compiled));
+    }
+
+    /**
+     * Gets the k-move reachability table of a graph, creating it if it isn't stored
+     * @param graph The graph
+     * @return The table
+     */
+    public ReachabilityTable reachability(ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph){
+        CompiledGraph compiled = compiledGraph(graph);
+        Key key = new Key(Kind.REACHABILITY, GraphFingerprint.of(graph), 0);
+        return (ReachabilityTable) get(key, () -> new ReachabilityTable(compiled));
+    }
+
+    /**
+     * Gets the neighbour masks used to move sets of possible MrX locations, creating them if they aren't stored
+     * @param graph The graph
+     * @return The masks
+     */
+    public BeliefSet.Transitions beliefTransitions(
+            ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph){
+        Key key = new Key(Kind.BELIEF_TRANSITIONS, GraphFingerprint.of(graph), 0);
+        return (BeliefSet.Transitions) get(key, () -> new BeliefSet.Transitions(graph));
+    }
+
+    /**
+     * Gets the transition matrices used to move MrX location distributions, creating them if they aren't stored
+     * @param graph The graph
+     * @return The matrices
+     */
+    public BeliefDistribution.TransitionMatrices beliefMatrices(
+            ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph){
+        CompiledGraph compiled = compiledGraph(graph);
+        Key key = new Key(Kind.BELIEF_MATRICES, GraphFingerprint.of(graph), 0);
+        return (BeliefDistribution.TransitionMatrices) get(key,
+                () -> new BeliefDistribution.TransitionMatrices(compiled));
+    }
+
+    /**
+     * Gets the static node features of a graph, creating them if they aren't stored
+     * @param graph The graph
+     * @return The features
+     */
+    public NodeFeatures nodeFeatures(ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph){
+        CompiledGraph compiled = compiledGraph(graph);
+        Key key = new Key(Kind.NODE_FEATURES, GraphFingerprint.of(graph), 0);
+        return (NodeFeatures) get(key, () -> new NodeFeatures(compiled));
+    }
+
+    /**
+     * Gets the estimated memory used by all entries
+     * @return The number of bytes
+     */
+    public synchronized long estimatedBytes(){
+        return totalBytes;
+    }
+
+    /**
+     * Removes all entries
+     */
+    public synchronized void clear(){
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    /**
+     * Gets an entry, creating it if needed. Only the LRU bookkeeping is done while holding the lock. A missing
+     * table is computed (or loaded) without the lock by the first thread that wants it, through a future that
+     * other threads wanting the same table wait on, so a table is never computed twice at once.
+     * Graphs are identified by their fingerprint alone (a collision between two 64-bit fingerprints is
+     * negligibly unlikely), so a lookup never compares graphs node by node.
+     * @param key The key
+     * @param compute Creates the value
+     * @return The value
+     */
+    private Object get(Key key, Compute compute){
+        Entry entry = lookup(key);
+        if(entry != null) return entry.value;
+        FutureTask<Object> task = new FutureTask<>(compute::compute);
+        FutureTask<Object> running = pending.putIfAbsent(key, task);
+        if(running != null) return await(running);
+        try{
+            //Another thread may have stored the table between the lookup and claiming it
+            entry = lookup(key);
+            if(entry != null) return entry.value;
+            task.run();
+            Object value = await(task);
+            store(key, value);
+            return value;
+        }finally{
+            pending.remove(key, task);
+        }
+    }
+
+    /**
+     * Gets a stored entry, marking it as recently used
+     * @param key The key
+     * @return The entry, or null if it isn't stored
+     */
+    private synchronized Entry lookup(Key key){
+        return entries.get(key);
+    }
+
+    /**
+     * Stores an entry, evicting the least recently used entries if the memory cap is exceeded
+     * @param key The key
+     * @param value The value
+     */
+    private synchronized void store(Key key, Object value){
+        long bytes = estimateBytes(value);
+        Entry old = entries.put(key, new Entry(value, bytes));
+        if(old != null) totalBytes -= old.bytes;
+        totalBytes += bytes;
+        //Evicts least recently used entries (apart from the one just added)
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while(totalBytes > maxBytes && entries.size() > 1){
+            Map.Entry<Key, Entry> eldest = it.next();
+            if(eldest.getKey().equals(key)) continue;
+            totalBytes -= eldest.getValue().bytes;
+            it.remove();
+        }
+    }
+
+    /**
+     * Waits for a table to be computed. Interrupts (e.g. from a search being stopped) don't cut the wait short,
+     * but are kept for the caller to see.
+     * @param task The computation
+     * @return The table
+     */
+    private static Object await(FutureTask<Object> task){
+        try{
+            return Uninterruptibles.getUninterruptibly(task);
+        }catch(ExecutionException e){
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException("Unable to compute a graph table", e.getCause());
+        }
+    }
+
+    /**
+     * Estimates the memory used by a stored value
+     * @param value The value
+     * @return The estimated number of bytes
+     */
+    private static long estimateBytes(Object value){
+        if(value instanceof CachedDijkstra){
+            long n = ((CachedDijkstra) value).getDistanceMatrix().size();
+            return n * n * Short.BYTES + n * 64L;
+        }
+        if(value instanceof CompiledGraph){
+            CompiledGraph g = (CompiledGraph) value;
+            return (long) g.size() * 3 * Integer.BYTES + (long) g.edgeCount() * (Integer.BYTES + 1);
+        }
+        if(value instanceof TicketDistanceOracle){
+            long n = ((TicketDistanceOracle) value).size();
+            return 7 * n * n * Short.BYTES + 4 * n * n;
+        }
+        if(value instanceof ReachabilityTable){
+            ReachabilityTable r = (ReachabilityTable) value;
+            return (long) (CompiledGraph.ALL_TRANSPORTS + 1) * (r.getMaxMoves() + 1) * r.size() * r.words()
+                    * Long.BYTES;
+        }
+        if(value instanceof BeliefSet.Transitions){
+            BeliefSet.Transitions t = (BeliefSet.Transitions) value;
+            return (long) ScotlandYard.Ticket.values().length * (t.maxNode() + 1) * t.words() * Long.BYTES;
+        }
+        if(value instanceof NodeFeatures){
+            return (2L * (CompiledGraph.ALL_TRANSPORTS + 1) + 1) * ((NodeFeatures) value).size() * Integer.BYTES;
+        }
+        if(value instanceof BeliefDistribution.TransitionMatrices){
+            BeliefDistribution.TransitionMatrices m = (BeliefDistribution.TransitionMatrices) value;
+            return (long) m.entryCount() * (Integer.BYTES + Float.BYTES);
+        }
+        return 0;
+    }
+
+    /**
+     * Creates a value to be stored
+     */
+    @FunctionalInterface
+    private interface Compute {
+        Object compute();
+    }
+
+    /**
+     * The types of value that can be stored
+     */
+    private enum Kind {
+        DISTANCES, COMPILED_GRAPH, TICKET_ORACLE, REACHABILITY, BELIEF_TRANSITIONS, BELIEF_MATRICES, NODE_FEATURES
+    }
+
+    /**
+     * A stored value, along with its estimated size
+     */
+    private static final class Entry {
+        final Object value;
+        final long bytes;
+
+        Entry(Object value, long bytes){
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Key of a stored value
+     */
+    private static final class Key {
+        final Kind kind;
+        final long fingerprint;
+        final long costSignature;
+
+        Key(Kind kind, long fingerprint, long costSignature){
+            this.kind = kind;
+            this.fingerprint = fingerprint;
+            this.costSignature = costSignature;
+        }
+
+        @Override
+        public boolean equals(Object o){
+            if(!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return kind == k.kind && fingerprint == k.fingerprint && costSignature == k.costSignature;
+        }
+
+        @Override
+        public int hashCode(){
+            return Objects.hash(kind, fingerprint, costSignature);
+        }
+    }
+}
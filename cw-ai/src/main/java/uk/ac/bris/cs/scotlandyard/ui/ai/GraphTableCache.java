@@ -0,0 +1,292 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * On disk cache of precomputed graph tables (distance matrices and compiled graphs).
+ * Each table is stored in its own versioned binary file named after the fingerprint of the graph
+ * (see {@link GraphFingerprint}). Files are memory mapped when loaded and their tables copied into arrays,
+ * so a new JVM doesn't have to recompute them.
+ * Files are written to a temporary file and then moved into place, so a partly written file is never read.
+ * The header holds a checksum of the rest of the file. Any file that is missing, from a different format
+ * version, the wrong size or doesn't match its checksum is treated as a cache miss.
+ * <br>
+ * The shared cache is only used when the {@link GraphTableCache#DIRECTORY_PROPERTY} system property names a
+ * directory, which should only be writable by the user running the game.
+ */
+public final class GraphTableCache {
+    //System property used to set the cache directory of the shared cache (the cache is disabled if it isn't set)
+    public static final String DIRECTORY_PROPERTY = "scotlandyard.cache.dir";
+    //Increased whenever the layout of the files changes
+    static final int FORMAT_VERSION = 2;
+    private static final int MAGIC = 0x53594754; //"SYGT"
+    private static final int DISTANCES = 1;
+    private static final int COMPILED_GRAPH = 2;
+    //magic, version, kind, fingerprint, signature, number of nodes, number of edges, checksum of the payload
+    private static final int HEADER_BYTES = 3 * Integer.BYTES + 2 * Long.BYTES + 3 * Integer.BYTES;
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+    private static final GraphTableCache SHARED = createShared();
+    private final Path directory;
+
+    /**
+     * Creates a cache that stores its files in a directory
+     * @param directory The directory (created when the first table is written)
+     */
+    public GraphTableCache(Path directory){
+        this.directory = directory;
+    }
+
+    /**
+     * Gets the cache used by the shared graph registry
+     * @return The cache, or null if the disk cache has been disabled
+     */
+    public static GraphTableCache shared(){
+        return SHARED;
+    }
+
+    /**
+     * Creates the shared cache from the system properties
+     * @return The cache, or null if it is disabled
+     */
+    private static GraphTableCache createShared(){
+        String dir = System.getProperty(DIRECTORY_PROPERTY);
+        return dir == null || dir.isEmpty() ? null : new GraphTableCache(Paths.get(dir));
+    }
+
+    /**
+     * Gets the directory the files are stored in
+     * @return The directory
+     */
+    public Path getDirectory(){
+        return directory;
+    }
+
+    /**
+     * Loads a distance matrix. The distances are copied out of the mapped file, so lookups read a plain array.
+     * @param fingerprint The fingerprint of the graph
+     * @param costSignature The edge cost signature the distances were calculated with
+     * @return The distances, or null if they aren't stored
+     */
+    public CachedDijkstra loadDistances(long fingerprint, long costSignature){
+        ByteBuffer buffer = map(distancesFile(fingerprint, costSignature));
+        if(buffer == null) return null;
+        int n = readHeader(buffer, DISTANCES, fingerprint, costSignature);
+        if(n < 0 || buffer.capacity() != HEADER_BYTES + (long) n * Integer.BYTES + (long) n * n * Short.BYTES)
+            return null;
+        int[] indexToNode = readNodes(buffer, n);
+        if(indexToNode == null) return null;
+        short[] distances = new short[n * n];
+        buffer.slice().order(ORDER).asShortBuffer().get(distances);
+        for(short d : distances) if(d < 0) return null;
+        return new CachedDijkstra(new DistanceMatrix(indexToNode, distances));
+    }
+
+    /**
+     * Stores a distance matrix
+     * @param fingerprint The fingerprint of the graph
+     * @param costSignature The edge cost signature the distances were calculated with
+     * @param dijkstra The distances
+     * @throws IOException If the file can't be written
+     */
+    public void storeDistances(long fingerprint, long costSignature, CachedDijkstra dijkstra) throws IOException{
+        DistanceMatrix m = dijkstra.getDistanceMatrix();
+        int n = m.size();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + n * Integer.BYTES + n * n * Short.BYTES).order(ORDER);
+        writeHeader(buffer, DISTANCES, fingerprint, costSignature, n, 0);
+        for(int i = 0; i < n; i++) buffer.putInt(m.nodeId(i));
+        ShortBuffer distances = buffer.slice().order(ORDER).asShortBuffer();
+        m.copyTo(distances);
+        write(distancesFile(fingerprint, costSignature), sign(buffer));
+    }
+
+    /**
+     * Loads a compiled graph. The arrays are copied out of the mapped file as they are small.
+     * @param fingerprint The fingerprint of the graph
+     * @return The compiled graph, or null if it isn't stored
+     */
+    public CompiledGraph loadCompiledGraph(long fingerprint){
+        ByteBuffer buffer = map(compiledGraphFile(fingerprint));
+        if(buffer == null) return null;
+        int n = readHeader(buffer, COMPILED_GRAPH, fingerprint, 0);
+        if(n < 0) return null;
+        int m = buffer.getInt(HEADER_BYTES - 2 * Integer.BYTES);
+        if(m < 0 || buffer.capacity() != HEADER_BYTES + (long) (2 * n + 1 + m) * Integer.BYTES + m) return null;
+        int[] indexToNode = readNodes(buffer, n);
+        if(indexToNode == null) return null;
+        int[] edgeStart = new int[n + 1];
+        buffer.asIntBuffer().get(edgeStart);
+        buffer.position(buffer.position() + edgeStart.length * Integer.BYTES);
+        int[] edgeTarget = new int[m];
+        buffer.asIntBuffer().get(edgeTarget);
+        buffer.position(buffer.position() + m * Integer.BYTES);
+        byte[] edgeTransports = new byte[m];
+        buffer.get(edgeTransports);
+        //Checks the adjacency is well formed so a bad file can't cause out of bounds accesses later
+        if(edgeStart[0] != 0 || edgeStart[n] != m) return null;
+        for(int i = 0; i < n; i++) if(edgeStart[i] > edgeStart[i + 1]) return null;
+        for(int target : edgeTarget) if(target < 0 || target >= n) return null;
+        return new CompiledGraph(indexToNode, edgeStart, edgeTarget, edgeTransports);
+    }
+
+    /**
+     * Stores a compiled graph
+     * @param fingerprint The fingerprint of the graph
+     * @param graph The compiled graph
+     * @throws IOException If the file can't be written
+     */
+    public void storeCompiledGraph(long fingerprint, CompiledGraph graph) throws IOException{
+        int n = graph.size();
+        int m = graph.edgeCount();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + (2 * n + 1 + m) * Integer.BYTES + m).order(ORDER);
+        writeHeader(buffer, COMPILED_GRAPH, fingerprint, 0, n, m);
+        for(int i = 0; i < n; i++) buffer.putInt(graph.nodeId(i));
+        for(int i = 0; i < n; i++) buffer.putInt(graph.edgeStart(i));
+        buffer.putInt(m);
+        for(int e = 0; e < m; e++) buffer.putInt(graph.edgeTarget(e));
+        for(int e = 0; e < m; e++) buffer.put((byte) graph.edgeTransports(e));
+        write(compiledGraphFile(fingerprint), sign(buffer));
+    }
+
+    /**
+     * Gets the file used to store a distance matrix
+     * @param fingerprint The fingerprint of the graph
+     * @param costSignature The edge cost signature
+     * @return The file
+     */
+    Path distancesFile(long fingerprint, long costSignature){
+        return directory.resolve(String.format("distances-v%d-%016x-%016x.bin",
+                FORMAT_VERSION, fingerprint, costSignature));
+    }
+
+    /**
+     * Gets the file used to store a compiled graph
+     * @param fingerprint The fingerprint of the graph
+     * @return The file
+     */
+    Path compiledGraphFile(long fingerprint){
+        return directory.resolve(String.format("graph-v%d-%016x.bin", FORMAT_VERSION, fingerprint));
+    }
+
+    /**
+     * Maps a file into memory (read only). The mapping stays valid after the channel is closed.
+     * @param file The file
+     * @return The buffer (positioned at 0), or null if the file doesn't exist or can't be read
+     */
+    private static ByteBuffer map(Path file){
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            if(channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) return null;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return buffer.order(ORDER);
+        }catch(NoSuchFileException e){
+            return null;
+        }catch(IOException e){
+            System.err.println("Unable to read cached graph table " + file + ". " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes a file by writing a temporary file and moving it into place
+     * @param file The file
+     * @param contents The contents of the file
+     * @throws IOException If the file can't be written
+     */
+    private void write(Path file, ByteBuffer contents) throws IOException{
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try{
+            try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)){
+                while(contents.hasRemaining()) channel.write(contents);
+            }
+            try{
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }catch(AtomicMoveNotSupportedException e){
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }finally{
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Writes the header of a file
+     * @param buffer The buffer to write to
+     * @param kind The type of table
+     * @param fingerprint The fingerprint of the graph
+     * @param signature The edge cost signature (0 if not used)
+     * @param n The number of nodes
+     * @param m The number of edges (0 if not used)
+     */
+    private static void writeHeader(ByteBuffer buffer, int kind, long fingerprint, long signature, int n, int m){
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(kind)
+                .putLong(fingerprint).putLong(signature).putInt(n).putInt(m).putInt(0);
+    }
+
+    /**
+     * Writes the checksum of the payload into the header of a complete file
+     * @param buffer The file contents
+     * @return The buffer, ready to be written
+     */
+    private static ByteBuffer sign(ByteBuffer buffer){
+        buffer.clear();
+        buffer.putInt(HEADER_BYTES - Integer.BYTES, checksum(buffer));
+        return buffer;
+    }
+
+    /**
+     * Calculates the checksum of everything after the header
+     * @param buffer The file contents
+     * @return The checksum
+     */
+    private static int checksum(ByteBuffer buffer){
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate().position(HEADER_BYTES));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Reads and checks the header of a file, and checks the payload against the checksum.
+     * The buffer is left positioned after the header.
+     * @param buffer The buffer
+     * @param kind The expected type of table
+     * @param fingerprint The expected fingerprint
+     * @param signature The expected edge cost signature
+     * @return The number of nodes, or -1 if the header or checksum doesn't match
+     */
+    private static int readHeader(ByteBuffer buffer, int kind, long fingerprint, long signature){
+        if(buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION || buffer.getInt() != kind) return -1;
+        if(buffer.getLong() != fingerprint || buffer.getLong() != signature) return -1;
+        int n = buffer.getInt();
+        buffer.getInt(); //Number of edges
+        if(buffer.getInt() != checksum(buffer)) return -1;
+        return n;
+    }
+
+    /**
+     * Reads the node ids of each index. The buffer is left positioned after the ids.
+     * @param buffer The buffer
+     * @param n The number of nodes
+     * @return The node ids, or null if they aren't valid (ids must be non-negative and ascending)
+     */
+    private static int[] readNodes(ByteBuffer buffer, int n){
+        int[] indexToNode = new int[n];
+        for(int i = 0; i < n; i++){
+            indexToNode[i] = buffer.getInt();
+            if(indexToNode[i] < 0 || (i > 0 && indexToNode[i] <= indexToNode[i - 1])) return null;
+        }
+        return indexToNode;
+    }
+}
@@ -3,6 +3,8 @@ package uk.ac.bris.cs.scotlandyard.ui.ai;
 import uk.ac.bris.cs.scotlandyard.model.Board;
 import uk.ac.bris.cs.scotlandyard.model.Piece;
 
+import java.util.List;
+
 /**
  * A heuristic interface (/abstract class) that allows for static evaluation of a given game state
  */
@@ -21,6 +23,26 @@ public abstract class Heuristic {
      */
     public abstract float gameScore(MyGameState state);
 
+    /**
+     * Scores a batch of game states (e.g. all the children of a node) in one call.
+     * By default each state is scored with {@link Heuristic#gameScore(MyGameState)}, but heuristics can
+     * override this to score the whole batch with tight loops over primitive arrays.
+     * @param states The game states
+     * @param out The array the scores are written to (out[i] is the score of states.get(i))
+     */
+    public void scoreAll(List<? extends MyGameState> states, float[] out){
+        if(out.length < states.size()) throw new IllegalArgumentException("Output array is too short");
+        for(int i = 0; i < states.size(); i++) out[i] = gameScore(states.get(i));
+    }
+
+    /**
+     * Creates an evaluator that keeps this heuristic's terms up to date as moves are made during a search
+     * @return The evaluator, or null if the heuristic can't be evaluated incrementally
+     */
+    public IncrementalEvaluator newIncrementalEvaluator(){
+        return null;
+    }
+
     /**
      * Returns the state of the game currently
      * @param state The current board state
@@ -0,0 +1,195 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the terms of {@link ClosestDetectiveHeuristic} up to date as moves are made and unmade along a
+ * search path, so that scoring a state doesn't need to look at every detective again.
+ * <br>
+ * The distance of each detective to MrX is stored along with a count of the detectives at each distance,
+ * so the closest distance is found without a loop over the detectives. A detective move only changes that
+ * detective's distance, a MrX move changes every distance, and either can be undone in the same time.
+ * The belief size is passed in with each move as the game states already know it.
+ * Evaluators aren't thread safe.
+ */
+public final class IncrementalEvaluator {
+    //Kinds of undo frame
+    private static final int DETECTIVE_FRAME = 0;
+    private static final int MRX_FRAME = 1;
+    private final DistanceMatrix matrix;
+    private Piece[] pieces = new Piece[0]; //Piece of each detective
+    private int[] locations = new int[0]; //Dense index of each detective
+    private int[] distances = new int[0]; //Distance of each detective to MrX
+    private int[] counts; //Number of detectives at each distance
+    private int closest;
+    private int total;
+    private int mrXLocation;
+    private int noSecret;
+    private int beliefSize;
+    //Frames stored one after another, each ending with its kind so they can be read from the top
+    private int[] undo = new int[64];
+    private int undoTop = 0;
+
+    /**
+     * Creates an evaluator
+     * @param matrix The distances used by the heuristic
+     */
+    public IncrementalEvaluator(DistanceMatrix matrix){
+        this.matrix = matrix;
+        int max = 0;
+        for(int i = 0; i < matrix.size(); i++){
+            for(int j = 0; j < matrix.size(); j++) max = Math.max(max, matrix.distanceByIndex(i, j));
+        }
+        counts = new int[max + 1];
+    }
+
+    /**
+     * Sets the evaluator to the terms of a state, forgetting any moves made so far
+     * @param state The state
+     */
+    public void reset(MyGameState state){
+        List<Player> detectives = state.getDetectives();
+        int n = detectives.size();
+        if(pieces.length != n){
+            pieces = new Piece[n];
+            locations = new int[n];
+            distances = new int[n];
+        }
+        mrXLocation = matrix.index(state.getMrX().location());
+        for(int d = 0; d < n; d++){
+            pieces[d] = detectives.get(d).piece();
+            locations[d] = matrix.index(detectives.get(d).location());
+        }
+        setAllDistances();
+        noSecret = state.getMrX().tickets().get(ScotlandYard.Ticket.SECRET);
+        beliefSize = state.getMrXPossibleLocations().size();
+        undoTop = 0;
+    }
+
+    /**
+     * Updates the terms after a move
+     * @param move The move
+     * @param beliefSize The number of possible MrX locations after the move
+     */
+    public void onMove(Move move, int beliefSize){
+        if(move.commencedBy().isMrX()){
+            ensureUndoCapacity(distances.length + 4);
+            for(int d = 0; d < distances.length; d++) undo[undoTop++] = distances[d];
+            undo[undoTop++] = mrXLocation;
+            undo[undoTop++] = noSecret;
+            undo[undoTop++] = this.beliefSize;
+            undo[undoTop++] = MRX_FRAME;
+            for(ScotlandYard.Ticket t : move.tickets()) if(t == ScotlandYard.Ticket.SECRET) noSecret--;
+            mrXLocation = matrix.index(move.accept(new Move.FunctionalVisitor<>(m -> m.destination,
+                    m -> m.destination2)));
+            setAllDistances();
+        }else{
+            int d = detectiveIndex(move.commencedBy());
+            ensureUndoCapacity(5);
+            undo[undoTop++] = d;
+            undo[undoTop++] = locations[d];
+            undo[undoTop++] = distances[d];
+            undo[undoTop++] = this.beliefSize;
+            undo[undoTop++] = DETECTIVE_FRAME;
+            locations[d] = matrix.index(((Move.SingleMove) move).destination);
+            setDistance(d, matrix.distanceByIndex(locations[d], mrXLocation));
+        }
+        this.beliefSize = beliefSize;
+    }
+
+    /**
+     * Undoes the last move passed to {@link IncrementalEvaluator#onMove(Move, int)}
+     */
+    public void onUnmove(){
+        if(undoTop == 0) throw new IllegalStateException("No moves to undo");
+        int kind = undo[--undoTop];
+        beliefSize = undo[--undoTop];
+        if(kind == DETECTIVE_FRAME){
+            int oldDistance = undo[--undoTop];
+            int oldLocation = undo[--undoTop];
+            int d = undo[--undoTop];
+            locations[d] = oldLocation;
+            setDistance(d, oldDistance);
+        }else{
+            noSecret = undo[--undoTop];
+            mrXLocation = undo[--undoTop];
+            for(int d = distances.length - 1; d >= 0; d--) distances[d] = undo[--undoTop];
+            countDistances();
+        }
+    }
+
+    /**
+     * Gets the score of the current state. The state must not be terminal.
+     * This is the same as {@link ClosestDetectiveHeuristic#gameScore(MyGameState)}.
+     * @return The score
+     */
+    public float score(){
+        float meanDistance = total / (float) distances.length;
+        float closestDistance = distances.length == 0 ? Float.POSITIVE_INFINITY : closest;
+        return Heuristic.clipValue(ClosestDetectiveHeuristic.combineTerms(closestDistance, meanDistance, noSecret,
+                beliefSize));
+    }
+
+    /**
+     * Recomputes every detective's distance to MrX
+     */
+    private void setAllDistances(){
+        for(int d = 0; d < distances.length; d++) distances[d] = matrix.distanceByIndex(locations[d], mrXLocation);
+        countDistances();
+    }
+
+    /**
+     * Recomputes the distance counts, closest distance and total from the distances
+     */
+    private void countDistances(){
+        Arrays.fill(counts, 0);
+        total = 0;
+        closest = Integer.MAX_VALUE;
+        for(int dist : distances){
+            counts[dist]++;
+            total += dist;
+            closest = Math.min(closest, dist);
+        }
+    }
+
+    /**
+     * Changes one detective's distance, updating the counts, closest distance and total
+     * @param d The detective
+     * @param distance The new distance
+     */
+    private void setDistance(int d, int distance){
+        int old = distances[d];
+        distances[d] = distance;
+        total += distance - old;
+        counts[old]--;
+        counts[distance]++;
+        if(distance < closest) closest = distance;
+        else if(old == closest && counts[old] == 0){
+            while(counts[closest] == 0) closest++;
+        }
+    }
+
+    /**
+     * Finds the index of a detective
+     * @param piece The detective's piece
+     * @return The index
+     */
+    private int detectiveIndex(Piece piece){
+        for(int d = 0; d < pieces.length; d++) if(pieces[d] == piece) return d;
+        throw new IllegalArgumentException(piece + " isn't in the game");
+    }
+
+    /**
+     * Grows the undo stack if needed
+     * @param extra The number of values about to be pushed
+     */
+    private void ensureUndoCapacity(int extra){
+        if(undoTop + extra > undo.length) undo = Arrays.copyOf(undo, Math.max(undo.length * 2, undoTop + extra));
+    }
+}
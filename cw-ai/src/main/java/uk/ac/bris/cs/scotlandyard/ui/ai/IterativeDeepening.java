@@ -1,27 +1,36 @@
 package uk.ac.bris.cs.scotlandyard.ui.ai;
 
+import io.atlassian.fugue.Pair;
 import uk.ac.bris.cs.scotlandyard.model.Move;
 
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Performs iterative deepening. This allows AI to dynamically search by time instead of using
  * a fixed depth.
  */
 public class IterativeDeepening implements Runnable{
-    private Move bestMove; //Stores best move
-    private final Minimax minimax;
+    //Allows program specified ms to return value after ID search finishes
+    //This parameter can normally be safely set to 10 ms or less. However, I have chosen a very high value
+    //to ensure that the AI just never times out.
+    private static final long TIME_NEEDED_AFTER_THREAD_TERMINATION = 200;
+    //Nodes visited by every search run in this process, added when each search thread finishes
+    private static final LongAdder NODES_SEARCHED = new LongAdder();
+    private volatile Move bestMove; //Stores best move
+    private final DepthLimitedSearch search;
     private int depth;
 
     /**
      * Creates object used to implement iterative deepening
-     * @param minimax The minimax object
+     * @param search The search to deepen (e.g. a minimax object)
      */
-    public IterativeDeepening(Minimax minimax){
-        this.minimax = minimax;
+    public IterativeDeepening(DepthLimitedSearch search){
+        this.search = search;
         //Initialises a default root state to ensure that some value is always selected
-        List<Move> moves = minimax.getRootState().getAvailableMoves().asList();
+        List<Move> moves = search.getRootMoves();
         bestMove = moves.get(new Random().nextInt(moves.size()));
     }
 
@@ -31,18 +40,21 @@ public class IterativeDeepening implements Runnable{
         depth = 0;
         try {
             while (!Thread.interrupted()) {
-                bestMove = minimax.getBestMove(depth + 1);
+                bestMove = search.getBestMove(depth + 1);
                 depth++;
             }
         }
         catch(Minimax.MinimaxSearchInterrupted e){}
+        finally{
+            NODES_SEARCHED.add(search.getNodeCount());
+        }
     }
 
     /**
      * Attempts to kill minimax search
      */
     public void killSearch(){
-        minimax.killSearch();
+        search.killSearch();
     }
 
     /**
@@ -50,4 +62,56 @@ public class IterativeDeepening implements Runnable{
      * @return The best available move
      */
     public Move getBestMove() { return bestMove; }
+
+    /**
+     * Gets the deepest search depth that has been completed
+     * @return The depth
+     */
+    public int getCompletedDepth() { return depth; }
+
+    /**
+     * Gets the number of nodes visited by all finished searches in this process (e.g. to measure nodes/sec)
+     * @return The number of nodes
+     */
+    public static long getNodesSearched() { return NODES_SEARCHED.sum(); }
+
+    /**
+     * Runs the search on a separate thread for the given amount of time and then kills it, waiting for it to stop
+     * @param computeTime The time the search is allowed to run for (ms)
+     * @return The best move found
+     */
+    public Move searchFor(long computeTime){
+        //Starts thread and allows it to run for certain amount of time
+        Thread t = new Thread(this);
+        t.start();
+        try {
+            Thread.sleep(computeTime);
+        } catch (InterruptedException e) {
+            System.err.println("Sleeping thread failed " + e);
+        }
+        t.interrupt();
+        killSearch();
+        //Waits for the search to stop so its nodes are counted (and its depth is read) before the move is returned
+        try {
+            t.join(TIME_NEEDED_AFTER_THREAD_TERMINATION / 2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if(t.isAlive()) System.err.println("Search thread didn't stop in time");
+        return getBestMove();
+    }
+
+    /**
+     * Calculates how long a search may run for, leaving enough time to return the move afterwards
+     * @param startTime The time (ms) at which the AI started picking its move
+     * @param timeoutPair The time allowed to pick the move
+     * @return The time (ms) the search can run for
+     */
+    public static long computeTime(long startTime, Pair<Long, TimeUnit> timeoutPair){
+        long timeBeforeSearch = System.currentTimeMillis() - startTime;
+        long computeTime =
+                TimeUnit.MILLISECONDS.convert(timeoutPair.left(), timeoutPair.right()) - timeBeforeSearch
+                        - TIME_NEEDED_AFTER_THREAD_TERMINATION;
+        return Math.max(computeTime, 0);
+    }
 }
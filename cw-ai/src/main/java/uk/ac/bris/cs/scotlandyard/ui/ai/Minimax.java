@@ -1,5 +1,6 @@
 package uk.ac.bris.cs.scotlandyard.ui.ai;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import uk.ac.bris.cs.scotlandyard.model.Move;
 import uk.ac.bris.cs.scotlandyard.model.Piece;
@@ -12,11 +13,19 @@ import java.util.List;
 /**
  * Tree that searches through GameState using minimax and alpha-beta pruning
  */
-public class Minimax{
+public class Minimax implements DepthLimitedSearch{
     private final Heuristic eval; //Heuristic used to evaluate board states
+    //Keeps the heuristic's terms up to date along the search path (null if the heuristic doesn't support it)
+    private final IncrementalEvaluator incremental;
     private final MyGameState rootState;
-    private boolean killSearch = false; //Stores whether search should terminate
+    //Possible root states and their weights (more than one state is only used for detective roots)
+    private final List<MyGameState> rootStates;
+    private final float[] rootWeights;
+    private final int[] rootOrder; //Order in which root moves are searched for detective roots (best first)
+    private volatile boolean killSearch = false; //Stores whether search should terminate
+    private long nodeCount = 0; //Nodes visited (only changed by the search thread)
     private final CachedDijkstra distance;
+    private final ReachabilityTable reachability; //Used to check whether detectives can capture MrX
     private PVLine previousDepthPv;//Stores the PV from the previous depth
     private int maxSearchDepth;
     private KillerHeuristic currentKiller; //Stores killer heuristic for current search depth
@@ -25,6 +34,8 @@ public class Minimax{
     private final HistoryHeuristic history;//Stores history heuristic table
     //Stores whether history heuristic should be used instead for move ordering
     private final boolean useHistoryHeuristic;
+    //Generates joint detective moves (if null, detectives are searched one at a time)
+    private DetectiveRoundGenerator roundGenerator = null;
 
     /**
      * Gets root state
@@ -34,23 +45,67 @@ public class Minimax{
         return this.rootState;
     }
 
+    /**
+     * Makes the search treat each round of detective moves (below the root) as a single joint move.
+     * This stops the same positions being searched once for every order the detectives can move in.
+     * @param generator The joint move generator
+     */
+    public void useDetectiveRounds(DetectiveRoundGenerator generator){
+        this.roundGenerator = generator;
+    }
+
+    @Override
+    public ImmutableList<Move> getRootMoves(){
+        return rootState.getAvailableMoves().asList();
+    }
+
     /**
      * Creates a new minimax object that can be used to search through concrete game state objects
      * @param eval The evaluation function
      * @param rootState The concrete root state (the state at which to start the search from). This
-     *                  must be non-terminal.
+     *                  must be non-terminal. It may be either player's move.
      * @param distance The object to use when calculating distance between two nodes on graph
      * @param h An initialized history heuristic. This is passed to save time creating a new large table.
      * @param useHistoryHeuristic Whether the history heuristic should be used for move ordering.
      */
     public Minimax(Heuristic eval, MyGameState rootState, CachedDijkstra distance, HistoryHeuristic h,
                    boolean useHistoryHeuristic){
-        if(rootState.getAvailableMoves().size() == 0 ||
-                rootState.getAvailableMoves().asList().get(0).commencedBy().isDetective())
-            throw new IllegalArgumentException("Root state can't be terminal and must be a MrX move");
+        this(eval, List.of(rootState), new float[]{1f}, distance, h, useHistoryHeuristic);
+    }
+
+    /**
+     * Creates a new minimax object that searches from either player's point of view.
+     * For a detective root, the detectives don't know where MrX is, so the root is a weighted set of
+     * states (one per possible MrX location). The value of a root move is the weighted mean of its value
+     * in each of these states, and the move with the lowest mean is chosen. Below the root each state is
+     * searched as normal.
+     * @param eval The evaluation function
+     * @param rootStates The possible root states. These must be non-terminal and only differ by MrX's location.
+     *                   For a MrX root there must be exactly one state.
+     * @param weights The weight of each root state (e.g. the number of MrX locations it represents)
+     * @param distance The object to use when calculating distance between two nodes on graph
+     * @param h An initialized history heuristic. This is passed to save time creating a new large table.
+     * @param useHistoryHeuristic Whether the history heuristic should be used for move ordering.
+     */
+    public Minimax(Heuristic eval, List<MyGameState> rootStates, float[] weights, CachedDijkstra distance,
+                   HistoryHeuristic h, boolean useHistoryHeuristic){
+        if(rootStates.isEmpty() || rootStates.size() != weights.length)
+            throw new IllegalArgumentException("There must be one weight for each root state");
+        for(MyGameState state : rootStates){
+            if(state.getAvailableMoves().size() == 0)
+                throw new IllegalArgumentException("Root states can't be terminal");
+        }
+        if(rootStates.size() > 1 && rootStates.get(0).getAvailableMoves().asList().get(0).commencedBy().isMrX())
+            throw new IllegalArgumentException("MrX always knows his location so can only have one root state");
         this.eval = eval;
-        this.rootState = rootState;
+        this.incremental = eval.newIncrementalEvaluator();
+        this.rootState = rootStates.get(0);
+        this.rootStates = rootStates;
+        this.rootWeights = weights;
+        this.rootOrder = new int[rootState.getAvailableMoves().size()];
+        for(int i = 0; i < rootOrder.length; i++) rootOrder[i] = i;
         this.distance = distance;
+        this.reachability = GraphRegistry.shared().reachability(rootState.getSetup().graph);
         this.previousDepthPv = new PVLine();
         this.previousDepthPv.setNoMoves();
         this.history = h;
@@ -69,10 +124,14 @@ public class Minimax{
         //Creates data structure that stores evaluation of each state
         List<Pair<Pair<MyGameState, Move>, Pair<Float, Float>>> scoreAndIndex =
                 new ArrayList<>(moveAndFutureState.size());
-        //Evaluates state score
+        //Evaluates all sibling states in one batch
+        List<MyGameState> siblings = new ArrayList<>(moveAndFutureState.size());
+        for(Pair<MyGameState, Move> stateMovePair : moveAndFutureState) siblings.add(stateMovePair.getLeft());
+        float[] evalScores = new float[siblings.size()];
+        eval.scoreAll(siblings, evalScores);
         for(int i = 0; i < moveAndFutureState.size(); i++){
             Pair<MyGameState, Move> stateMovePair = moveAndFutureState.get(i);
-            float evalScore = eval.gameScore(stateMovePair.getLeft());//Gets state evaluation
+            float evalScore = evalScores[i];//Gets state evaluation
             if(stateMovePair.getRight().commencedBy().isMrX()) evalScore *= -1;
             float priorityScore; //Stores priority based on whether PV, killer, history etc.
             if(isPvNode && previousDepthPv.getPvLine()[ply].equals(stateMovePair.getRight())){//Checks for PV move
@@ -112,19 +171,89 @@ public class Minimax{
      * @throws MinimaxSearchInterrupted If the search is interrupted an exception is thrown. This is done
      * to effectively kill threads using minimax search
      */
+    @Override
     public Move getBestMove(int maxDepth) throws MinimaxSearchInterrupted{
         this.maxSearchDepth = maxDepth;
         history.clearHistory();//Resets table
         currentKiller = new KillerHeuristic(maxDepth); //Creates killer heuristic for current round
         PVLine result = new PVLine();
         boolean isPv = previousDepthPv.getPvLine().length >= 1;//If previous depth not cached, no PV used
-        minimaxSearch(new Pair<>(null, rootState), maxDepth,
-                Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, result, isPv);
+        if(getRootMoves().get(0).commencedBy().isDetective()){
+            searchBeliefRoot(maxDepth, result);
+        }else{
+            if(incremental != null) incremental.reset(rootState);
+            minimaxSearch(new Pair<>(null, rootState), maxDepth,
+                    Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, result, isPv);
+        }
         previousDepthPv = result;
         previousKiller = currentKiller;
         return result.getPvLine()[0];
     }
 
+    /**
+     * Searches a detective root, where each root move is scored by its weighted mean value over
+     * all root states. A move is abandoned as soon as it can no longer beat the best move found so far,
+     * which is used to set the window of each state's search.
+     * @param maxDepth The maximum search depth
+     * @param pline The principal variation (the best move followed by the PV of the first root state)
+     * @throws MinimaxSearchInterrupted If the minimax search should be interrupted this is thrown
+     */
+    private void searchBeliefRoot(int maxDepth, PVLine pline) throws MinimaxSearchInterrupted{
+        List<Move> moves = getRootMoves();
+        float totalWeight = 0;
+        for(float w : rootWeights) totalWeight += w;
+        float best = Float.POSITIVE_INFINITY; //Best (lowest) weighted sum found so far
+        int bestIndex = rootOrder[0];
+        PVLine bestLine = null;
+        float[] values = new float[moves.size()];
+        final Move[] previousPv = previousDepthPv.getPvLine();
+        for(int i : rootOrder){
+            Move move = moves.get(i);
+            float sum = 0;
+            float remainingWeight = totalWeight;
+            boolean cutoff = false;
+            PVLine firstLine = null;
+            for(int k = 0; k < rootStates.size(); k++){
+                remainingWeight -= rootWeights[k];
+                if(rootWeights[k] <= 0) continue;
+                //Value this state must stay below for the move to still beat the best move
+                float stateBeta = (best - sum - remainingWeight * Heuristic.DETECTIVE_WINS) / rootWeights[k];
+                PVLine line = new PVLine();
+                line.setNoMoves();
+                final boolean isPvNextMove = k == 0 && previousPv.length > 1 && previousPv[0].equals(move);
+                MyGameState child = rootStates.get(k).advance(move);
+                if(incremental != null) incremental.reset(rootStates.get(k));
+                trackMove(move, child);
+                float value = minimaxSearch(new Pair<>(move, child), maxDepth - 1,
+                        Float.NEGATIVE_INFINITY, stateBeta, line, isPvNextMove);
+                untrackMoves(1);
+                if(firstLine == null) firstLine = line;
+                sum += rootWeights[k] * value;
+                if(value >= stateBeta){//Cutoff, this move can't be better than the best move
+                    cutoff = true;
+                    sum += remainingWeight * Heuristic.DETECTIVE_WINS;
+                    break;
+                }
+            }
+            values[i] = sum;
+            if(!cutoff && sum < best){
+                best = sum;
+                bestIndex = i;
+                bestLine = firstLine;
+            }
+        }
+        if(bestLine == null){
+            bestLine = new PVLine();
+            bestLine.setNoMoves();
+        }
+        pline.setLine(moves.get(bestIndex), bestLine);
+        //Orders moves for the next iteration so that the best moves are searched first
+        List<Integer> order = new ArrayList<>(rootOrder.length);
+        for(int i : rootOrder) order.add(i);
+        order.sort((x, y) -> Float.compare(values[x], values[y]));
+        for(int i = 0; i < rootOrder.length; i++) rootOrder[i] = order.get(i);
+    }
+
     /**
      * Performs an alpha-beta pruned search from the current state to determine the best move
      * @param moveAndState The root state and the move taken to get there
@@ -140,14 +269,23 @@ public class Minimax{
                                             PVLine pline, boolean isPv)
             throws MinimaxSearchInterrupted{
         if(killSearch) throw new MinimaxSearchInterrupted("Search Interrupted");
+        nodeCount++;
         PVLine line = new PVLine();
         //Checks to see if a terminal state or max depth has been reached
         MyGameState state = moveAndState.getRight();
-        if(Heuristic.isTerminalState(state) || depth == 0){//Evaluates leaf node
+        if(Heuristic.isTerminalState(state)){
             pline.setNoMoves();
             return eval.gameScore(state);
         }
+        if(depth == 0){//Evaluates leaf node
+            pline.setNoMoves();
+            return incremental != null ? incremental.score() : eval.gameScore(state);
+        }
         final int ply = maxSearchDepth - depth;
+        if(roundGenerator != null && state.getAvailableMoves().asList().get(0).commencedBy().isDetective()){
+            List<DetectiveRoundGenerator.JointMove> rounds = roundGenerator.generate(state);
+            if(!rounds.isEmpty()) return detectiveRoundSearch(rounds, depth, alpha, beta, pline, isPv, ply);
+        }
         //Order moves to maximise pruning
         List<Move> moves = state.getAvailableMoves().asList();
         List<Pair<MyGameState, Move>> futureStateAndMove = new ArrayList<>(moves.size());
@@ -162,8 +300,10 @@ public class Minimax{
             Move move = futureStateAndMove.get(i).getRight();
             MyGameState stateNew = futureStateAndMove.get(i).getLeft();
             if(isMaximiser){//MrX move, hence maximising player
+                trackMove(move, stateNew);
                 float moveValue = minimaxSearch(new Pair<>(move, stateNew), depth - 1, alpha, beta, line,
                         isPvNextMove);
+                untrackMoves(1);
                 bestValue = Math.max(bestValue, moveValue);
                 if(bestValue >= beta){//beta cutoff
                     currentKiller.addKillerMove(move, ply);//Updates killer heuristic
@@ -175,8 +315,10 @@ public class Minimax{
                     pline.setLine(move, line);//Updates principal variation
                 }
             }else{//Detective move, hence minimising
+                trackMove(move, stateNew);
                 float moveValue = minimaxSearch(new Pair<>(move, stateNew), depth - 1,
                         alpha, beta, line, isPvNextMove);
+                untrackMoves(1);
                 bestValue = Math.min(bestValue, moveValue);
                 if(bestValue <= alpha) {//alpha cutoff
                     currentKiller.addKillerMove(move, ply);//Updates killer heuristic
@@ -192,13 +334,73 @@ public class Minimax{
         return bestValue;
     }
 
+    /**
+     * Searches a node where all detectives left to move this round make a joint move.
+     * Joint moves are already ordered by the generator, and killer and history tables aren't updated
+     * as they store single moves. The first move of each joint move is stored in the PV.
+     * @param rounds The joint moves
+     * @param depth The maximum search depth
+     * @param alpha The value of alpha
+     * @param beta The value of beta
+     * @param pline The principal variation
+     * @param isPv Determines whether this state is part of the principal variation
+     * @param ply The ply of the current search
+     * @return The calculated value of the state
+     * @throws MinimaxSearchInterrupted If the minimax search should be interrupted this is thrown
+     */
+    private float detectiveRoundSearch(List<DetectiveRoundGenerator.JointMove> rounds, int depth, float alpha,
+                                       float beta, PVLine pline, boolean isPv, int ply)
+            throws MinimaxSearchInterrupted{
+        PVLine line = new PVLine();
+        float bestValue = Float.POSITIVE_INFINITY;
+        for(int i = 0; i < rounds.size(); i++){
+            final boolean isPvNextMove = isPv && i == 0 && (ply + 1 < previousDepthPv.getPvLine().length);
+            Move move = rounds.get(i).getFirstMove();
+            MyGameState endState = rounds.get(i).getEndState();
+            for(Move m : rounds.get(i).getMoves()) trackMove(m, endState);
+            float moveValue = minimaxSearch(new Pair<>(move, endState), depth - 1,
+                    alpha, beta, line, isPvNextMove);
+            untrackMoves(rounds.get(i).getMoves().size());
+            bestValue = Math.min(bestValue, moveValue);
+            if(bestValue <= alpha) return alpha;//alpha cutoff
+            if(bestValue < beta){//Beta update
+                beta = bestValue;
+                pline.setLine(move, line);//Updates principal variation
+            }
+        }
+        return bestValue;
+    }
+
+    /**
+     * Tells the incremental evaluator (if any) about a move on the search path
+     * @param move The move
+     * @param state The state after the move
+     */
+    private void trackMove(Move move, MyGameState state){
+        if(incremental != null) incremental.onMove(move, state.getMrXPossibleLocations().size());
+    }
+
+    /**
+     * Tells the incremental evaluator (if any) that moves have been taken back off the search path
+     * @param noMoves The number of moves
+     */
+    private void untrackMoves(int noMoves){
+        if(incremental != null) for(int i = 0; i < noMoves; i++) incremental.onUnmove();
+    }
+
     /**
      * Sets a flag that indicates ongoing search should be killed.
      */
+    @Override
     public void killSearch(){
         killSearch = true;
     }
 
+    @Override
+    public long getNodeCount(){
+        return nodeCount;
+    }
+
     /**
      * A helper function for filtering MrX moves. Filters all double moves if MrX has any safe moves to make
      * (i.e. double moves should only be used if MrX has no safe single moves to make)
@@ -222,15 +424,10 @@ public class Minimax{
             boolean isSingleMove = noTickets == 1;
             if(isSingleMove){
                 //If there are no available moves, state is terminal and MrX may be captured
-                boolean canXBeCaptured = !stateMovePair.getLeft().getWinner().isEmpty() &&
-                        !stateMovePair.getLeft().getWinner().contains(Piece.MrX.MRX);
-                for(Move m : stateMovePair.getLeft().getAvailableMoves()){
-                    Move.SingleMove detMove = (Move.SingleMove) m; //Cast is safe as detective moves are always single
-                    if(detMove.destination == stateMovePair.getLeft().getMrX().location()){
-                        canXBeCaptured = true;
-                        break;
-                    }
-                }
+                MyGameState state = stateMovePair.getLeft();
+                boolean canXBeCaptured = !state.getWinner().isEmpty() && !state.getWinner().contains(Piece.MrX.MRX);
+                //Uses the precomputed one move reachability of each detective rather than generating moves
+                canXBeCaptured = canXBeCaptured || reachability.canAnyDetectiveReach(state, state.getMrX().location());
                 allowDouble = allowDouble && canXBeCaptured; //Updates double move allowance
             }else{
                 isDoubleMovePresent = true;
@@ -413,7 +610,7 @@ public class Minimax{
     /**
      * Class used to indicate that the minimax search has been abandoned
      */
-    public final class MinimaxSearchInterrupted extends Exception{
+    public static final class MinimaxSearchInterrupted extends Exception{
         //As exception implements/extends serializable, a serial ID must be produced
         private static final long serialVersionUID = 5772711486014408980L;
         /**
@@ -1,16 +1,14 @@
 package uk.ac.bris.cs.scotlandyard.ui.ai;
 
-import com.google.common.collect.ImmutableSet;
-import com.google.common.graph.ImmutableValueGraph;
 import uk.ac.bris.cs.scotlandyard.model.*;
 
-import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 
 /**
- * Class used to find location of MrX
+ * Class used to find location of MrX.
+ * Sets of locations are stored as bitsets (see {@link BeliefSet}), so each step of propagation is an OR
+ * of precomputed neighbour masks.
  */
 public final class MrXLocations {
     /**
@@ -36,13 +34,10 @@ public final class MrXLocations {
      * @param m The move
      * @return The old list but simply now with the move destination square removed
      */
-    public static Set<Integer> getPossibleMrXLocations(
-            Set<Integer> currentPossibleLocations,
+    public static BeliefSet getPossibleMrXLocations(
+            BeliefSet currentPossibleLocations,
             Move.SingleMove m){
-        Set<Integer> newLocs = new HashSet<>(currentPossibleLocations.size());
-        newLocs.addAll(currentPossibleLocations);
-        newLocs.remove(m.destination); //MrX can't be on same square as detectives
-        return newLocs;
+        return currentPossibleLocations.without(m.destination); //MrX can't be on same square as detectives
     }
 
     /**
@@ -50,33 +45,20 @@ public final class MrXLocations {
      * @param currentXLocations The current set of locations
      * @param entry The new log entry
      * @param detectives The list of detectives on the board. These locations are filtered from final output
-     * @param graph The graph of the board
      * @return The set of possible locations
      */
-    public static Set<Integer> getPossibleMrXLocations(
-            Set<Integer> currentXLocations,
+    public static BeliefSet getPossibleMrXLocations(
+            BeliefSet currentXLocations,
             LogEntry entry,
-            List<Player> detectives,
-            ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph){
-        final boolean isRevealMove = entry.location().isPresent();
-        Set<Integer> xLocationsNext = new HashSet<>(isRevealMove? 1 : graph.nodes().size());
-        if(!isRevealMove){
-            for(Integer start : currentXLocations){
-                //Loops through all neighbours for current node set
-                for(Integer neighbour : graph.adjacentNodes(start)){
-                    //Loops through modes of transport to see if it matches one used
-                    for(ScotlandYard.Transport t :
-                            graph.edgeValueOrDefault(start, neighbour, ImmutableSet.of())){
-                        if((t.requiredTicket() == entry.ticket())){
-                            xLocationsNext.add(neighbour);
-                        }
-                    }
-                    //Handles secret move
-                    if(entry.ticket() == ScotlandYard.Ticket.SECRET) xLocationsNext.add(neighbour);
-                }
-            }
-        }else{
+            List<Player> detectives){
+        BeliefSet xLocationsNext;
+        if(entry.location().isPresent()){
+            xLocationsNext = currentXLocations.copy();
+            xLocationsNext.clear();
             xLocationsNext.add(entry.location().get());
+        }else{
+            //Moves every location along the edges the ticket can be used on
+            xLocationsNext = currentXLocations.propagate(entry.ticket());
         }
         //Removes detectives from set
         for(Player det : detectives){
@@ -92,12 +74,16 @@ public final class MrXLocations {
      * @param findMrX True if function should attempt to locate MrX exactly (by looking at legal moves)
      * @return All possible locations for MrX
      */
-    public static Set<Integer> getPossibleMrXLocations(Board state, boolean findMrX){
+    public static BeliefSet getPossibleMrXLocations(Board state, boolean findMrX){
+        BeliefSet.Transitions transitions = GraphRegistry.shared().beliefTransitions(state.getSetup().graph);
+        //Stores all possible nodes for the current turn
+        BeliefSet xLocationsCurrent = BeliefSet.empty(transitions);
         //If it's MrX turn, we know his location if we are allowed to access it
         Optional<Integer> xLocation = getMrXLocation(state);
-        if(findMrX && xLocation.isPresent()) return ImmutableSet.of(xLocation.get());
-        //Stores all possible nodes for the current turn
-        Set<Integer> xLocationsCurrent = new HashSet<>(state.getSetup().graph.nodes().size());
+        if(findMrX && xLocation.isPresent()){
+            xLocationsCurrent.add(xLocation.get());
+            return xLocationsCurrent;
+        }
         //Loads all possible staring nodes. If mrX has revealed himself, this is the start.
         //Otherwise, it's all start locations
         int lastKnownLogEntryIndex = -1;
@@ -114,22 +100,7 @@ public final class MrXLocations {
         }
         //Loops through all moves after known entry and updates values
         for(int i = lastKnownLogEntryIndex + 1; i < entries.size(); i++){
-            Set<Integer> xLocationsNext = new HashSet<>(state.getSetup().graph.nodes().size());
-            for(Integer start : xLocationsCurrent){
-                //Loops through all neighbours for current node set
-                for(Integer neighbour : state.getSetup().graph.adjacentNodes(start)){
-                    //Loops through modes of transport to see if it matches one used
-                    for(ScotlandYard.Transport t :
-                            state.getSetup().graph.edgeValueOrDefault(start, neighbour, ImmutableSet.of())){
-                        if((t.requiredTicket() == entries.get(i).ticket())){
-                            xLocationsNext.add(neighbour);
-                        }
-                    }
-                    //Handles secret move
-                    if(entries.get(i).ticket() == ScotlandYard.Ticket.SECRET) xLocationsNext.add(neighbour);
-                }
-            }
-            xLocationsCurrent = xLocationsNext;
+            xLocationsCurrent = xLocationsCurrent.propagate(entries.get(i).ticket());
         }
         //Removes all detective locations from map as MrX can't be on detective square
         for(Piece.Detective det : Piece.Detective.values()){
@@ -22,7 +22,8 @@ public final class MyGameState implements Board.GameState {
     private final ImmutableSet<Move> moves;
     private final ImmutableSet<Piece> winner;
     //Stores the set of possible mrX locations. Note that this set should always be from the detectives point of view.
-    private final Set<Integer> mrXPossibleLocations;
+    private final BeliefSet mrXPossibleLocations;
+    private long positionHash = 0; //Computed the first time it's needed (0 if not computed yet)
 
     /**
      * Creates a new GameState using a board object and a known MrX location.
@@ -30,41 +31,122 @@ public final class MyGameState implements Board.GameState {
      * @param mrXLocation MrX's location
      */
     private MyGameState(Board state, Integer mrXLocation){
-        setup = state.getSetup();
-        log = state.getMrXTravelLog();
-        moves = state.getAvailableMoves();
-        winner = state.getWinner();
-        mrX = createPlayer(Piece.MrX.MRX, mrXLocation, state);
-        detectives = new ArrayList<>(state.getPlayers().size());
-        for(Piece.Detective p : Piece.Detective.values()){//Creates list of detectives
-            Optional<Integer> location = state.getDetectiveLocation(p);
-            if(location.isPresent()) detectives.add(createPlayer(p, location.get(), state));
-        }
-        //Looks at all available moves to find which pieces make moves
-        ImmutableSet.Builder<Piece> remainBuild = ImmutableSet.builder();
-        for(Move m : state.getAvailableMoves()){
-            remainBuild.add(m.commencedBy());
-        }
-        remaining = remainBuild.build();
-        //Calculates all possible mrX locations
-        mrXPossibleLocations = MrXLocations.getPossibleMrXLocations(state, false);
+        this(state, mrXLocation, MrXLocations.getPossibleMrXLocations(state, false));
+    }
+
+    /**
+     * Creates a new GameState using a board object, a known MrX location and the locations MrX could be at
+     * from the detectives' point of view.
+     * @param state The board object
+     * @param mrXLocation MrX's location
+     * @param mrXPossibleLocations All possible MrX locations (not copied, so mustn't be changed afterwards)
+     */
+    private MyGameState(Board state, Integer mrXLocation, BeliefSet mrXPossibleLocations){
+        this(new BoardTemplate(state, mrXPossibleLocations), mrXLocation);
+    }
+
+    /**
+     * Creates a new GameState from the parts of a board shared by every possible MrX location.
+     * Only MrX's player object is created, everything else is referenced from the template.
+     * @param template The shared parts of the board
+     * @param mrXLocation MrX's location
+     */
+    private MyGameState(BoardTemplate template, Integer mrXLocation){
+        setup = template.setup;
+        log = template.log;
+        moves = template.moves;
+        winner = template.winner;
+        remaining = template.remaining;
+        detectives = template.detectives;
+        mrXPossibleLocations = template.mrXPossibleLocations;
+        mrX = new Player(Piece.MrX.MRX, template.mrXTickets, mrXLocation);
     }
 
     /**
      * Gets all possible GameStates given the current board (i.e. by looking at all possible locations
-     * for MrX in the current position).
+     * for MrX in the current position). The states share everything apart from MrX's location.
      * @param b The current board
      * @return All possible states
      */
     public static List<MyGameState> getPossibleStates(Board b){
-        Set<Integer> locations = MrXLocations.getPossibleMrXLocations(b, true);
+        BeliefSet possibleLocations = MrXLocations.getPossibleMrXLocations(b, false);
+        BoardTemplate template = new BoardTemplate(b, possibleLocations);
+        //On MrX's turn his location is known from his moves
+        Collection<Integer> locations = possibleLocations;
+        if(template.remaining.contains(Piece.MrX.MRX)){
+            locations = List.of(b.getAvailableMoves().asList().get(0).source());
+        }
         List<MyGameState> states = new ArrayList<>(locations.size());
         for(Integer xPlace : locations){
-            states.add(new MyGameState(b, xPlace));
+            states.add(new MyGameState(template, xPlace));
         }
         return states;
     }
 
+    /**
+     * Creates the game state for a board assuming MrX is at a given location. The location
+     * is assumed to be one of MrX's possible locations.
+     * @param b The current board
+     * @param mrXLocation The location of MrX
+     * @return The state
+     */
+    public static MyGameState withMrXLocation(Board b, Integer mrXLocation){
+        return new MyGameState(b, mrXLocation);
+    }
+
+    /**
+     * Creates the game state for a board assuming MrX is at a given location, using a tracker to find
+     * MrX's possible locations rather than replaying the travel log.
+     * @param b The current board
+     * @param mrXLocation The location of MrX
+     * @param tracker The belief tracker kept by the AI
+     * @return The state
+     */
+    public static MyGameState withMrXLocation(Board b, Integer mrXLocation, BeliefTracker tracker){
+        return new MyGameState(b, mrXLocation, tracker.getPossibleLocations(b, false));
+    }
+
+    /**
+     * The parts of a board that don't depend on MrX's location
+     */
+    private static final class BoardTemplate {
+        final GameSetup setup;
+        final ImmutableList<LogEntry> log;
+        final ImmutableSet<Move> moves;
+        final ImmutableSet<Piece> winner;
+        final ImmutableSet<Piece> remaining;
+        final List<Player> detectives;
+        final ImmutableMap<ScotlandYard.Ticket, Integer> mrXTickets;
+        final BeliefSet mrXPossibleLocations;
+
+        /**
+         * Creates the template for a board
+         * @param state The board object
+         * @param mrXPossibleLocations All possible MrX locations (not copied, so mustn't be changed afterwards)
+         */
+        BoardTemplate(Board state, BeliefSet mrXPossibleLocations){
+            setup = state.getSetup();
+            log = state.getMrXTravelLog();
+            moves = state.getAvailableMoves();
+            winner = state.getWinner();
+            ImmutableList.Builder<Player> detBuild = ImmutableList.builder();
+            for(Piece.Detective p : Piece.Detective.values()){//Creates list of detectives
+                Optional<Integer> location = state.getDetectiveLocation(p);
+                if(location.isPresent()) detBuild.add(createPlayer(p, location.get(), state));
+            }
+            detectives = detBuild.build();
+            //Looks at all available moves to find which pieces make moves
+            ImmutableSet.Builder<Piece> remainBuild = ImmutableSet.builder();
+            for(Move m : moves){
+                remainBuild.add(m.commencedBy());
+            }
+            remaining = remainBuild.build();
+            mrXTickets = ticketMap(state.getPlayerTickets(Piece.MrX.MRX).get());
+            //Every state made from the template shares the set, so it's only given out as a read-only view
+            this.mrXPossibleLocations = mrXPossibleLocations.readOnly();
+        }
+    }
+
     /**
      * Creates a new player object as specified
      * @param p The piece
@@ -73,13 +155,20 @@ public final class MyGameState implements Board.GameState {
      * @return The player object
      */
     private static Player createPlayer(Piece p, Integer location, Board state){
-        //Handles creation of ticket map
-        TicketBoard tickets = state.getPlayerTickets(p).get();
+        return new Player(p, ticketMap(state.getPlayerTickets(p).get()), location);
+    }
+
+    /**
+     * Copies the counts of a ticket board into a map
+     * @param tickets The ticket board
+     * @return The number of each ticket
+     */
+    private static ImmutableMap<ScotlandYard.Ticket, Integer> ticketMap(TicketBoard tickets){
         ImmutableMap.Builder<ScotlandYard.Ticket, Integer> ticketCount = ImmutableMap.builder();
         for(ScotlandYard.Ticket t : ScotlandYard.Ticket.values()){
             ticketCount.put(t, tickets.getCount(t));
         }
-        return new Player(p, ticketCount.build(), location);
+        return ticketCount.build();
     }
 
     /**
@@ -96,9 +185,9 @@ public final class MyGameState implements Board.GameState {
                         final ImmutableList<LogEntry> log,
                         final Player mrX,
                         final List<Player> detectives,
-                        final Set<Integer> mrXPossibleLocations){
+                        final BeliefSet mrXPossibleLocations){
         //Sets object attributes
-        this.mrXPossibleLocations = mrXPossibleLocations;
+        this.mrXPossibleLocations = mrXPossibleLocations.readOnly();
         this.setup = setup;
         this.remaining = remaining;
         this.log = log;
@@ -418,8 +507,8 @@ public final class MyGameState implements Board.GameState {
         ImmutableSet<Piece> newRemaining = ImmutableSet.copyOf(gameState.detectives.stream()
                 .map(x -> x.piece()).iterator());
         //Updates MrX possible locations
-        Set<Integer> mrxLocationsNew = MrXLocations.getPossibleMrXLocations(gameState.mrXPossibleLocations, newEntry,
-                gameState.detectives, gameState.setup.graph);
+        BeliefSet mrxLocationsNew = MrXLocations.getPossibleMrXLocations(gameState.mrXPossibleLocations, newEntry,
+                gameState.detectives);
         //Returns new game state
         return new MyGameState(gameState.setup, newRemaining,
                 newImmLog, newMrX, gameState.detectives, mrxLocationsNew);
@@ -433,7 +522,7 @@ public final class MyGameState implements Board.GameState {
      */
     private MyGameState performDetectiveSingleMove(MyGameState gameState, Move.SingleMove sm){
         //Updates set of possible MrX locations
-        Set<Integer> mrXLocsNew = MrXLocations.getPossibleMrXLocations(gameState.mrXPossibleLocations, sm);
+        BeliefSet mrXLocsNew = MrXLocations.getPossibleMrXLocations(gameState.mrXPossibleLocations, sm);
         //match piece to player, consume ticket and update location
         Player currentPlayer = getPlayerFromPiece(sm.commencedBy()
                 , gameState.detectives, gameState.getMrX()).use(sm.ticket).at(sm.destination);
@@ -557,12 +646,45 @@ public final class MyGameState implements Board.GameState {
 
     /**
      * Returns set of all possible MrX locations
-     * @return All possible mrx locations
+     * @return All possible mrx locations (read-only, as the set can be shared with other states)
      */
-    public Set<Integer> getMrXPossibleLocations(){
+    public BeliefSet getMrXPossibleLocations(){
         return mrXPossibleLocations;
     }
 
+    /**
+     * Gets a 64-bit hash of everything that affects the value of the state: the location and tickets of every
+     * player, the pieces still to move, the round and MrX's possible locations. The setup isn't included, so
+     * hashes should only be compared between states of the same game.
+     * @return The hash (never 0)
+     */
+    public long positionHash(){
+        long hash = positionHash;
+        if(hash == 0){
+            hash = GraphFingerprint.mix(log.size());
+            hash = GraphFingerprint.mix(hash ^ playerHash(mrX));
+            for(Player det : detectives) hash = GraphFingerprint.mix(hash ^ playerHash(det));
+            long remainingMask = 0;
+            for(Piece p : remaining) remainingMask |= p.isMrX() ? 1 : 2L << ((Piece.Detective) p).ordinal();
+            hash = GraphFingerprint.mix(hash ^ remainingMask);
+            hash = GraphFingerprint.mix(hash ^ mrXPossibleLocations.fingerprint());
+            if(hash == 0) hash = 1;
+            positionHash = hash;
+        }
+        return hash;
+    }
+
+    /**
+     * Hashes a player's location and tickets (players are told apart by the order they're hashed in)
+     * @param player The player
+     * @return The hash
+     */
+    private static long playerHash(Player player){
+        long hash = player.location();
+        for(ScotlandYard.Ticket t : ScotlandYard.Ticket.values()) hash = hash * 31 + player.tickets().get(t);
+        return GraphFingerprint.mix(hash);
+    }
+
     @Override
     public boolean equals(Object o){
         if(this == o) return true; //Reference equality check
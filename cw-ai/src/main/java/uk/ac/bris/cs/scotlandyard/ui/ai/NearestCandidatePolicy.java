@@ -0,0 +1,45 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+/**
+ * Detective playout policy that moves towards MrX's nearest candidate location, which is the location
+ * he was last revealed at. Before MrX has been revealed (or with a small probability) a random move is made
+ * instead so that playouts don't become deterministic.
+ */
+public final class NearestCandidatePolicy implements PlayoutPolicy {
+    private final int[] distances; //Distances between dense indices, indexed [from * size + to]
+    private final int size;
+    private final float randomness;
+
+    /**
+     * Creates a new policy
+     * @param graph The compiled graph playouts are made on
+     * @param distance The distance calculator for the same graph
+     * @param randomness The probability of making a random move instead of the greedy one [0, 1]
+     */
+    public NearestCandidatePolicy(CompiledGraph graph, CachedDijkstra distance, float randomness){
+        this.size = graph.size();
+        this.distances = PlayoutEngine.denseDistances(graph, distance);
+        this.randomness = randomness;
+    }
+
+    @Override
+    public int chooseMove(PlayoutState state, int[] moves, int noMoves, XorShiftRandom rng) {
+        int target = state.getLastKnownMrX();
+        if(target == CompiledGraph.NO_INDEX || rng.nextFloat() < randomness) return rng.nextInt(noMoves);
+        //Picks the move that gets closest to the target. Ties are broken uniformly at random
+        int best = 0;
+        int bestDistance = Integer.MAX_VALUE;
+        int noTies = 0;
+        for(int i = 0; i < noMoves; i++){
+            int dist = distances[PlayoutState.moveDestination(moves[i]) * size + target];
+            if(dist < bestDistance){
+                bestDistance = dist;
+                best = i;
+                noTies = 1;
+            }else if(dist == bestDistance && rng.nextInt(++noTies) == 0){
+                best = i;
+            }
+        }
+        return best;
+    }
+}
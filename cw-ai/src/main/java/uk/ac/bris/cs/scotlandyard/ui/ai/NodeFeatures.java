@@ -0,0 +1,161 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import java.util.Arrays;
+
+/**
+ * Static features of every node on a graph, computed once and stored in primitive arrays indexed by the dense
+ * indices of a {@link CompiledGraph}. Heuristics can use them at the cost of an array load rather than a
+ * graph traversal per evaluation.
+ * <br>
+ * Features that depend on which transports a player can use are stored for every transport mask (see
+ * {@link ReachabilityTable#transportMask(com.google.common.collect.ImmutableMap)}).
+ */
+public final class NodeFeatures {
+    //Distance stored for nodes that can't reach an underground station
+    public static final int NO_STATION = Integer.MAX_VALUE;
+    private static final int NO_MASKS = CompiledGraph.ALL_TRANSPORTS + 1;
+    private final CompiledGraph graph;
+    private final int[][] mobility; //[mask][index] Number of neighbours reachable with the transports
+    private final int[][] twoMoveFanOut; //[mask][index] Number of other nodes reachable within two moves
+    private final int[] stationDistance; //Moves (using any transport) to the closest underground station
+
+    /**
+     * Computes the features of a graph
+     * @param graph The graph
+     */
+    public NodeFeatures(CompiledGraph graph){
+        this.graph = graph;
+        int n = graph.size();
+        int words = (n + 63) >>> 6;
+        mobility = new int[NO_MASKS][n];
+        twoMoveFanOut = new int[NO_MASKS][n];
+        long[] neighbours = new long[n * words];
+        long[] reached = new long[words];
+        for(int mask = 1; mask < NO_MASKS; mask++){
+            Arrays.fill(neighbours, 0);
+            for(int i = 0; i < n; i++){
+                for(int e = graph.edgeStart(i); e < graph.edgeEnd(i); e++){
+                    if((graph.edgeTransports(e) & mask) == 0) continue;
+                    int target = graph.edgeTarget(e);
+                    neighbours[i * words + (target >>> 6)] |= 1L << target;
+                    mobility[mask][i]++;
+                }
+            }
+            for(int i = 0; i < n; i++){
+                //Nodes within two moves are the neighbours along with their neighbours
+                System.arraycopy(neighbours, i * words, reached, 0, words);
+                for(int e = graph.edgeStart(i); e < graph.edgeEnd(i); e++){
+                    if((graph.edgeTransports(e) & mask) == 0) continue;
+                    int start = graph.edgeTarget(e) * words;
+                    for(int w = 0; w < words; w++) reached[w] |= neighbours[start + w];
+                }
+                reached[i >>> 6] &= ~(1L << i);
+                int count = 0;
+                for(long word : reached) count += Long.bitCount(word);
+                twoMoveFanOut[mask][i] = count;
+            }
+        }
+        stationDistance = stationDistances(graph);
+    }
+
+    /**
+     * Finds the distance of every node to the closest node with an underground edge (multi-source BFS)
+     * @param graph The graph
+     * @return The distances
+     */
+    private static int[] stationDistances(CompiledGraph graph){
+        int n = graph.size();
+        int[] distance = new int[n];
+        Arrays.fill(distance, NO_STATION);
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+        for(int i = 0; i < n; i++){
+            for(int e = graph.edgeStart(i); e < graph.edgeEnd(i); e++){
+                if((graph.edgeTransports(e) & CompiledGraph.UNDERGROUND_BIT) != 0){
+                    distance[i] = 0;
+                    queue[tail++] = i;
+                    break;
+                }
+            }
+        }
+        while(head < tail){
+            int i = queue[head++];
+            for(int e = graph.edgeStart(i); e < graph.edgeEnd(i); e++){
+                int target = graph.edgeTarget(e);
+                if(distance[target] == NO_STATION){
+                    distance[target] = distance[i] + 1;
+                    queue[tail++] = target;
+                }
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * Gets the number of neighbours of a node that can be reached with a set of transports
+     * @param index The dense index of the node
+     * @param transports The transport mask
+     * @return The number of neighbours
+     */
+    public int mobility(int index, int transports){
+        return mobility[transports][index];
+    }
+
+    /**
+     * Gets the number of neighbours of a node that can be reached with one mode of transport
+     * @param index The dense index of the node
+     * @param transport The transport
+     * @return The number of neighbours
+     */
+    public int degree(int index, ScotlandYard.Transport transport){
+        return mobility[CompiledGraph.transportBit(transport)][index];
+    }
+
+    /**
+     * Gets the number of other nodes that can be reached from a node within two moves. This counts the
+     * escape routes of a player at the node.
+     * @param index The dense index of the node
+     * @param transports The transports that can be used
+     * @return The number of nodes
+     */
+    public int twoMoveFanOut(int index, int transports){
+        return twoMoveFanOut[transports][index];
+    }
+
+    /**
+     * Gets the number of moves from a node to the closest underground station
+     * @param index The dense index of the node
+     * @return The number of moves (0 for stations, NO_STATION if no station can be reached)
+     */
+    public int stationDistance(int index){
+        return stationDistance[index];
+    }
+
+    /**
+     * Checks whether a node is an underground station
+     * @param index The dense index of the node
+     * @return True if the node has an underground edge
+     */
+    public boolean isStation(int index){
+        return stationDistance[index] == 0;
+    }
+
+    /**
+     * Gets the compiled graph the features are indexed by
+     * @return The graph
+     */
+    public CompiledGraph getGraph(){
+        return graph;
+    }
+
+    /**
+     * Gets the number of nodes
+     * @return The number of nodes
+     */
+    public int size(){
+        return graph.size();
+    }
+}
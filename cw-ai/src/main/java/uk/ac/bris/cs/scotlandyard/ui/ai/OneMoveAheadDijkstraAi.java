@@ -7,11 +7,11 @@ import uk.ac.bris.cs.scotlandyard.model.Move;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
-import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.standardGraph;
-
 /**
  * Class that uses the mean distance between all detectives and MrX as a score mechanism.
  * Looks one move into the future for both MrX and the detectives and makes the move.
@@ -20,9 +20,11 @@ import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.standardGraph;
  */
 public class OneMoveAheadDijkstraAi implements AiCustom {
     private DijkstraHeuristic heuristicFunction = null;
+    private BeliefReducer reducer = null; //Keeps the number of states searched flat as MrX's location gets less certain
     private final double probabilityOfChoosingBestMove; //Stores probability AI chooses best move
     private static final double bestAiProb = 1.0;
     private static final double mediumAiProb = 0.5;
+    private static final double beliefTimeFraction = 0.5; //Fraction of the move time used to score possible states
 
     /**
      * Returns the probability of the AI selecting the best available move
@@ -52,8 +54,9 @@ public class OneMoveAheadDijkstraAi implements AiCustom {
     @Override public void onStart(){
         //Creates a heuristic that uses Dijkstra's to measure distance between players and MrX
         try{
-            //Loads the default graph and precomputes distances using Dijkstra's
-            heuristicFunction = new DijkstraHeuristic(standardGraph());
+            //Loads the default graph and gets its shared precomputed distances
+            heuristicFunction = new DijkstraHeuristic(GraphRegistry.shared().standardGraph());
+            reducer = new BeliefReducer(heuristicFunction.getDistanceCalculator(), new Random());
         }catch(IOException e){
             System.err.println("Error when retrieving standard graph. " + e);
         }
@@ -70,6 +73,7 @@ public class OneMoveAheadDijkstraAi implements AiCustom {
         //Checks to see if failure occurred when creating object or the graph is different
         if(heuristicFunction == null || !heuristicFunction.graphEqualsCachedGraph(board)){
             heuristicFunction = new DijkstraHeuristic(board.getSetup().graph);
+            reducer = new BeliefReducer(heuristicFunction.getDistanceCalculator(), new Random());
             System.err.println("Pre computation was unsuccessful");
         }
         //Checks to see if heuristic is for correct board
@@ -80,15 +84,24 @@ public class OneMoveAheadDijkstraAi implements AiCustom {
         Move bestMove = null;
         //Stores the total score for each move across all XLocation permutations
         float[] moveValue = new float[board.getAvailableMoves().size()];
+        float[] scores = new float[moveValue.length];
         ImmutableList<Move> moves = board.getAvailableMoves().asList();
-        //Loops through all possible states (if it's Detectives turn, they may not know where MrX is exactly)
-        for(MyGameState startState : MyGameState.getPossibleStates(board)){
+        //Loops through all possible states (if it's Detectives turn, they may not know where MrX is exactly).
+        //Similar locations are merged into weighted representatives so that the time taken stays flat
+        long budget = (long) (TimeUnit.NANOSECONDS.convert(timeoutPair.left(), timeoutPair.right()) * beliefTimeFraction);
+        long startTime = System.nanoTime();
+        List<BeliefReducer.Representative> representatives = reducer.reduce(board, budget);
+        BeliefTracker tracker = reducer.getTracker(board);
+        for(BeliefReducer.Representative rep : representatives){
+            MyGameState startState = MyGameState.withMrXLocation(board, rep.getLocation(), tracker);
+            List<MyGameState> newBoards = new ArrayList<>(moveValue.length);
+            for(Move move : moves) newBoards.add(startState.advance(move));
+            heuristicFunction.scoreAll(newBoards, scores);
             for(int i = 0; i < moveValue.length; i++){
-                MyGameState newBoard = startState.advance(moves.get(i));
-                float score = heuristicFunction.gameScore(newBoard);
-                moveValue[i] += score;
+                moveValue[i] += rep.getWeight() * scores[i];
             }
         }
+        reducer.recordCost(System.nanoTime() - startTime, representatives.size());
         //Selects best move
         for(int i = 0; i < moveValue.length; i++){
             if((mrXTurn && moveValue[i] >= bestValue) || (!mrXTurn && moveValue[i] <= bestValue)){
@@ -0,0 +1,114 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detective AI that uses the same minimax search as {@link ParanoidSearchMrX}.
+ * The root of the search is the detective to move, scored over a weighted set of MrX's possible
+ * locations. Below the root, each possible state is searched paranoidly (i.e. as if the detectives knew
+ * where MrX was) with each round of detective moves searched as a single joint move.
+ * Only the {@link DetectiveRoundGenerator#DEFAULT_MAX_JOINT_MOVES} joint moves that bring the detectives
+ * closest to MrX are searched (a beam), so the search is forward pruned rather than a full minimax search.
+ * Iterative deepening is used so that the whole move time is used.
+ */
+public class ParanoidSearchDetective implements AiCustom {
+    //Maximum number of possible MrX locations searched at the root
+    private static final int MAX_ROOT_STATES = 8;
+    private ClosestDetectiveHeuristic heuristicFunction = null;
+    //Tuned weights from the configured file (null if no file is configured)
+    private float[] weights = null;
+    //Used instead of heuristicFunction when a file of tuned weights is configured
+    private FeatureHeuristic featureHeuristic = null;
+    private HistoryHeuristic h = new HistoryHeuristic();
+    //Scores kept between moves (positions searched on one move are often searched again on the next)
+    private final EvaluationCache cache = new EvaluationCache();
+    private CachedDijkstra dist = null;
+    private BeliefReducer reducer = null;
+    private ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> standardGrph = null;
+
+    @Nonnull
+    @Override
+    public String name() { return "Paranoid Minimax Detectives"; }
+
+    @Override
+    public void onStart() {
+        //Creates a heuristic that uses Dijkstra's to measure minimum distance between players and MrX
+        try{
+            //Loads the default graph and gets its shared precomputed distances
+            standardGrph = GraphRegistry.shared().standardGraph();
+            dist = GraphRegistry.shared().distances(standardGrph, new OneCostPerEdge());
+            heuristicFunction = new ClosestDetectiveHeuristic(standardGrph);
+            reducer = new BeliefReducer(dist, new Random());
+        }catch(IOException e){
+            System.err.println("Error when retrieving standard graph for closest heuristic. " + e);
+        }
+        //Loaded separately so that a missing or invalid weight file stops the AI instead of being reported as a
+        //graph error (it throws an exception naming the file)
+        weights = FeatureHeuristic.configuredWeights().orElse(null);
+        if(weights != null && standardGrph != null) featureHeuristic = new FeatureHeuristic(standardGrph, weights);
+    }
+
+    @Nonnull
+    @Override
+    public Move pickMove(@Nonnull Board board, Pair<Long, TimeUnit> timeoutPair) {
+        long startTime = System.currentTimeMillis();
+        //This is an AI only for detectives
+        if(board.getAvailableMoves().asList().get(0).commencedBy().isMrX())
+            throw new IllegalArgumentException("Paranoid detective search can only be applied for detective moves");
+        //Checks to see if failure occurred when creating object or the graph is different
+        if(heuristicFunction == null || !heuristicFunction.graphEqualsCachedGraph(board)){
+            heuristicFunction = new ClosestDetectiveHeuristic(board.getSetup().graph);
+            dist = GraphRegistry.shared().distances(board.getSetup().graph, new OneCostPerEdge());
+            reducer = new BeliefReducer(dist, new Random());
+            cache.clear();
+            System.err.println("Pre computation was unsuccessful");
+        }
+        if(weights != null && (featureHeuristic == null || !featureHeuristic.graphEqualsCachedGraph(board))){
+            featureHeuristic = new FeatureHeuristic(board.getSetup().graph, weights);
+            cache.clear();
+        }
+        Heuristic evaluation = featureHeuristic == null ? heuristicFunction : featureHeuristic;
+        //Creates a root state for each representative MrX location
+        List<BeliefReducer.Representative> representatives = reducer.reduce(board, MAX_ROOT_STATES);
+        if(representatives.isEmpty()){//Fail-safe, this should never occur
+            System.err.println("Error when calculating possible states. There must be at least one MrX location");
+            return new RandomAI().pickMove(board, timeoutPair);
+        }
+        BeliefTracker tracker = reducer.getTracker(board);
+        List<MyGameState> rootStates = new ArrayList<>(representatives.size());
+        float[] weights = new float[representatives.size()];
+        for(int i = 0; i < representatives.size(); i++){
+            rootStates.add(MyGameState.withMrXLocation(board, representatives.get(i).getLocation(), tracker));
+            weights[i] = representatives.get(i).getWeight();
+        }
+        //Determines whether history heuristic can be safely used
+        boolean useHistory = GraphFingerprint.sameGraph(standardGrph, board.getSetup().graph);
+        //Performs Minimax search
+        h.clearHistory();//Ensures table is in correct start state
+        Minimax minimax = new Minimax(new CachingHeuristic(evaluation, cache), rootStates, weights, dist, h,
+                useHistory);
+        //Remaining detectives move as one joint move, so that orderings of the same moves aren't searched.
+        //Only the closest joint moves are searched, as every joint move of five detectives is too many
+        minimax.useDetectiveRounds(new DetectiveRoundGenerator(dist, DetectiveRoundGenerator.DEFAULT_MAX_JOINT_MOVES));
+        //Runs iterative deepening until the time allowed for the move has run out
+        IterativeDeepening iterativeDeep = new IterativeDeepening(minimax);
+        Move bestMove = iterativeDeep.searchFor(IterativeDeepening.computeTime(startTime, timeoutPair));
+        if(bestMove == null || !board.getAvailableMoves().contains(bestMove)){//Failsafe
+            bestMove = board.getAvailableMoves().asList().get(0);
+            System.err.println("Error in minimax search");
+        }
+        return bestMove;
+    }
+}
@@ -12,8 +12,6 @@ import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
-import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.standardGraph;
-
 /**
  * Class that implements a paranoid MrX search.
  * A paranoid search assumes that detective AI always know where MrX is and thus
@@ -25,7 +23,13 @@ import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.standardGraph;
  */
 public class ParanoidSearchMrX implements AiCustom {
     private ClosestDetectiveHeuristic heuristicFunction = null;
+    //Tuned weights from the configured file (null if no file is configured)
+    private float[] weights = null;
+    //Used instead of heuristicFunction when a file of tuned weights is configured
+    private FeatureHeuristic featureHeuristic = null;
     private HistoryHeuristic h = new HistoryHeuristic();
+    //Scores kept between moves (positions searched on one move are often searched again on the next)
+    private final EvaluationCache cache = new EvaluationCache();
     private CachedDijkstra dist = null;
     private ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> standardGrph = null;
 
@@ -37,13 +41,17 @@ public class ParanoidSearchMrX implements AiCustom {
     public void onStart() {
         //Creates a heuristic that uses Dijkstra's to measure minimum distance between players and MrX
         try{
-            //Loads the default graph and precomputes distances using Dijkstra's
-            standardGrph = standardGraph();
-            dist = CachedDijkstra.preComputeAllDistances(standardGrph, new OneCostPerEdge());
+            //Loads the default graph and gets its shared precomputed distances
+            standardGrph = GraphRegistry.shared().standardGraph();
+            dist = GraphRegistry.shared().distances(standardGrph, new OneCostPerEdge());
             heuristicFunction = new ClosestDetectiveHeuristic(standardGrph);
         }catch(IOException e){
             System.err.println("Error when retrieving standard graph for closest heuristic. " + e);
         }
+        //Loaded separately so that a missing or invalid weight file stops the AI instead of being reported as a
+        //graph error (it throws an exception naming the file)
+        weights = FeatureHeuristic.configuredWeights().orElse(null);
+        if(weights != null && standardGrph != null) featureHeuristic = new FeatureHeuristic(standardGrph, weights);
     }
 
     @Nonnull
@@ -62,36 +70,23 @@ public class ParanoidSearchMrX implements AiCustom {
         //Checks to see if failure occurred when creating object or the graph is different
         if(heuristicFunction == null || !heuristicFunction.graphEqualsCachedGraph(board)){
             heuristicFunction = new ClosestDetectiveHeuristic(board.getSetup().graph);
+            cache.clear();
             System.err.println("Pre computation was unsuccessful");
         }
-        if(dist == null) dist = CachedDijkstra.preComputeAllDistances(board.getSetup().graph, new OneCostPerEdge());
+        if(weights != null && (featureHeuristic == null || !featureHeuristic.graphEqualsCachedGraph(board))){
+            featureHeuristic = new FeatureHeuristic(board.getSetup().graph, weights);
+            cache.clear();
+        }
+        Heuristic evaluation = featureHeuristic == null ? heuristicFunction : featureHeuristic;
+        if(dist == null) dist = GraphRegistry.shared().distances(board.getSetup().graph, new OneCostPerEdge());
         //Determines whether history heuristic can be safely used
-        boolean useHistory = standardGrph != null && standardGrph.equals(board.getSetup().graph);
+        boolean useHistory = GraphFingerprint.sameGraph(standardGrph, board.getSetup().graph);
         //Performs Minimax search
         h.clearHistory();//Ensures table is in correct start state
-        Minimax minimax = new Minimax(heuristicFunction, rootState, dist, h, useHistory);
-        //Calculates end time
-        long timeBeforeSearch = System.currentTimeMillis() - startTime;
-        //Allows program specified ms to return value after ID search finishes
-        //This parameter can normally be safely set to 10 ms or less. However, I have chosen a very high value
-        //to ensure that the AI just never times out.
-        long timeNeededAfterThreadTermination = 200;
-        long computeTime =
-                TimeUnit.MILLISECONDS.convert(timeoutPair.left(), timeoutPair.right()) - timeBeforeSearch
-                        - timeNeededAfterThreadTermination;
-        if(computeTime < 0) computeTime = 0;
-        //Starts thread and allows it to run for certain amount of time
+        Minimax minimax = new Minimax(new CachingHeuristic(evaluation, cache), rootState, dist, h, useHistory);
+        //Runs iterative deepening until the time allowed for the move has run out
         IterativeDeepening iterativeDeep = new IterativeDeepening(minimax);
-        Thread t = new Thread(iterativeDeep);
-        t.start();
-        try {
-            Thread.sleep(computeTime);
-        } catch (InterruptedException e) {
-            System.err.println("Sleeping thread failed " + e);
-        }
-        t.interrupt();
-        iterativeDeep.killSearch();
-        Move bestMove = iterativeDeep.getBestMove();
+        Move bestMove = iterativeDeep.searchFor(IterativeDeepening.computeTime(startTime, timeoutPair));
         if(bestMove == null || !board.getAvailableMoves().contains(bestMove)){//Failsafe
             bestMove = board.getAvailableMoves().asList().get(0);
             System.err.println("Error in minimax search");
@@ -0,0 +1,338 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+/**
+ * High throughput playout kernel used for Monte Carlo style rollouts.
+ * A game is played to the end on a primitive {@link PlayoutState} using a fixed size move buffer, so
+ * apart from construction no allocation is made. The rules mirror those of {@link MyGameState}, however
+ * moves aren't validated as they are generated by the engine itself.
+ * An engine isn't thread safe, so each thread should create its own.
+ */
+public final class PlayoutEngine {
+    private final PlayoutPolicy mrXPolicy;
+    private final PlayoutPolicy detectivePolicy;
+    private final XorShiftRandom rng;
+    private final int[] moveBuffer;
+    private PlayoutState scratch;
+
+    /**
+     * Creates a new playout engine
+     * @param graph The compiled graph games are played on
+     * @param mrXPolicy The policy used to select MrX moves
+     * @param detectivePolicy The policy used to select detective moves
+     * @param seed The random seed
+     */
+    public PlayoutEngine(CompiledGraph graph, PlayoutPolicy mrXPolicy, PlayoutPolicy detectivePolicy, long seed){
+        this.mrXPolicy = mrXPolicy;
+        this.detectivePolicy = detectivePolicy;
+        this.rng = new XorShiftRandom(seed);
+        this.moveBuffer = new int[maxMoves(graph)];
+    }
+
+    /**
+     * Calculates the maximum number of moves any player could have in any position.
+     * This is the number of MrX single moves (one per transport plus a secret move per edge)
+     * plus all of the double moves that could follow them.
+     * @param graph The graph
+     * @return The size of buffer needed
+     */
+    private static int maxMoves(CompiledGraph graph){
+        int maxSingle = 0;
+        for(int i = 0; i < graph.size(); i++){
+            int single = 0;
+            for(int e = graph.edgeStart(i); e < graph.edgeEnd(i); e++){
+                single += Integer.bitCount(graph.edgeTransports(e)) + 1;
+            }
+            maxSingle = Math.max(maxSingle, single);
+        }
+        return Math.max(1, maxSingle + maxSingle * maxSingle);
+    }
+
+    /**
+     * Builds a dense distance table (indexed [from * size + to]) for policies that need distances
+     * @param graph The compiled graph
+     * @param distance The distance calculator for the same graph
+     * @return The table
+     */
+    static int[] denseDistances(CompiledGraph graph, CachedDijkstra distance){
+        int size = graph.size();
+        int[] table = new int[size * size];
+        DistanceMatrix matrix = distance.getDistanceMatrix();
+        for(int i = 0; i < size; i++){
+            int from = matrix.index(graph.nodeId(i));
+            for(int j = 0; j < size; j++){
+                table[i * size + j] = matrix.distanceByIndex(from, matrix.index(graph.nodeId(j)));
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Plays a game to the end from the given state. The start state isn't modified.
+     * @param start The state to start from
+     * @return The winner (PlayoutState.MRX_WINS or PlayoutState.DETECTIVES_WIN)
+     */
+    public int playout(PlayoutState start){
+        if(scratch == null || scratch.graph != start.graph || scratch.detectives.length != start.detectives.length){
+            scratch = start.emptyCopy();
+        }
+        PlayoutState s = scratch;
+        s.copyFrom(start);
+        for(int noMoves = legalMoves(s); noMoves > 0; noMoves = legalMoves(s)){
+            PlayoutPolicy policy = s.mrXToMove ? mrXPolicy : detectivePolicy;
+            applyMove(s, moveBuffer[policy.chooseMove(s, moveBuffer, noMoves, rng)]);
+        }
+        return s.winner;
+    }
+
+    /**
+     * Writes the moves of the player(s) to move into the move buffer (see {@link PlayoutEngine#getMove(int)}).
+     * If no move can be made, the turn is passed on or the winner is set, as in {@link MyGameState}.
+     * @param s The state (may be changed if the turn passes or the game ends)
+     * @return The number of moves generated, 0 if and only if the game is over
+     */
+    int legalMoves(PlayoutState s){
+        if(s.winner != PlayoutState.NO_WINNER) return 0;
+        if(s.mrXToMove){
+            int noMoves = mrXMoves(s);
+            //Either the travel log is full, none of the detectives can move or MrX is stuck.
+            //The detectives win if MrX is stranded whatever the reason
+            if(noMoves == 0) s.winner = isMrXStranded(s) ? PlayoutState.DETECTIVES_WIN : PlayoutState.MRX_WINS;
+            return noMoves;
+        }
+        int noMoves = generateDetectiveMoves(s);
+        if(noMoves > 0) return noMoves;
+        //MrX wins if none of the detectives could move this round
+        if(s.movedMask == 0){
+            s.winner = PlayoutState.MRX_WINS;
+            return 0;
+        }
+        //Otherwise the remaining detectives are skipped. The model still counts this as the detectives' turn,
+        //so MrX wins (rather than being stranded) if he then has no moves
+        s.mrXToMove = true;
+        noMoves = mrXMoves(s);
+        if(noMoves == 0) s.winner = PlayoutState.MRX_WINS;
+        return noMoves;
+    }
+
+    /**
+     * Gets a move written by {@link PlayoutEngine#legalMoves(PlayoutState)}
+     * @param i The index of the move
+     * @return The encoded move
+     */
+    int getMove(int i){
+        return moveBuffer[i];
+    }
+
+    /**
+     * Writes MrX's moves into the move buffer, if he is allowed to move
+     * @param s The state
+     * @return The number of moves generated
+     */
+    private int mrXMoves(PlayoutState s){
+        if(s.round >= s.reveal.length || !anyDetectiveCanMove(s)) return 0;
+        return generateMrXMoves(s);
+    }
+
+    /**
+     * Makes a move generated for a state
+     * @param s The state
+     * @param move The encoded move
+     */
+    void applyMove(PlayoutState s, int move){
+        if(PlayoutState.movePlayer(move) == PlayoutState.MRX) moveMrX(s, move);
+        else moveDetective(s, move);
+    }
+
+    /**
+     * Makes one of MrX's moves
+     * @param s The state
+     * @param move The encoded move
+     */
+    private static void moveMrX(PlayoutState s, int move){
+        moveMrX(s, PlayoutState.moveDestination(move), PlayoutState.moveTicket(move));
+        if(PlayoutState.isDoubleMove(move)){
+            moveMrX(s, PlayoutState.moveSecondDestination(move), PlayoutState.moveSecondTicket(move));
+            s.tickets[PlayoutState.DOUBLE]--;
+        }
+        s.mrXToMove = false;
+        s.movedMask = 0;
+    }
+
+    /**
+     * Moves MrX and writes the move to the travel log
+     * @param s The state
+     * @param destination The destination
+     * @param ticket The ticket used
+     */
+    private static void moveMrX(PlayoutState s, int destination, int ticket){
+        s.tickets[ticket]--;
+        s.mrX = destination;
+        if(s.reveal[s.round]) s.lastKnownMrX = destination;
+        s.round++;
+    }
+
+    /**
+     * Makes a detective move
+     * @param s The state
+     * @param move The encoded move
+     */
+    private static void moveDetective(PlayoutState s, int move){
+        int detective = PlayoutState.movePlayer(move) - 1;
+        int ticket = PlayoutState.moveTicket(move);
+        s.detectives[detective] = PlayoutState.moveDestination(move);
+        s.tickets[(detective + 1) * PlayoutState.NO_TICKETS + ticket]--;
+        s.tickets[ticket]++; //Used detective tickets are given to MrX
+        s.movedMask |= 1 << detective;
+        if(s.detectives[detective] == s.mrX){
+            s.winner = PlayoutState.DETECTIVES_WIN;
+        }else if(s.movedMask == (1 << s.detectives.length) - 1){
+            s.mrXToMove = true;
+        }
+    }
+
+    /**
+     * Checks whether a detective is on a given location
+     * @param s The state
+     * @param location The location
+     * @return True if a detective occupies the location
+     */
+    private static boolean isDetectiveSquare(PlayoutState s, int location){
+        for(int d = 0; d < s.detectives.length; d++){
+            if(s.detectives[d] == location) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the transport mask a player can currently use (ferries need secret tickets)
+     * @param s The state
+     * @param player The player index
+     * @return The transport mask
+     */
+    private static int usableTransports(PlayoutState s, int player){
+        int base = player * PlayoutState.NO_TICKETS;
+        if(s.tickets[base + PlayoutState.SECRET] > 0) return CompiledGraph.ALL_TRANSPORTS;
+        int mask = 0;
+        if(s.tickets[base + PlayoutState.TAXI] > 0) mask |= CompiledGraph.TAXI_BIT;
+        if(s.tickets[base + PlayoutState.BUS] > 0) mask |= CompiledGraph.BUS_BIT;
+        if(s.tickets[base + PlayoutState.UNDERGROUND] > 0) mask |= CompiledGraph.UNDERGROUND_BIT;
+        return mask;
+    }
+
+    /**
+     * Checks whether any detective has a legal move (regardless of whether they've moved this round)
+     * @param s The state
+     * @return True if at least one detective can move
+     */
+    private static boolean anyDetectiveCanMove(PlayoutState s){
+        CompiledGraph g = s.graph;
+        for(int d = 0; d < s.detectives.length; d++){
+            int usable = usableTransports(s, d + 1);
+            for(int e = g.edgeStart(s.detectives[d]); e < g.edgeEnd(s.detectives[d]); e++){
+                if((g.edgeTransports(e) & usable) != 0 && !isDetectiveSquare(s, g.edgeTarget(e))) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether MrX has no unoccupied neighbour that he holds a ticket for
+     * @param s The state
+     * @return True if MrX is stranded
+     */
+    private static boolean isMrXStranded(PlayoutState s){
+        CompiledGraph g = s.graph;
+        int usable = usableTransports(s, PlayoutState.MRX);
+        for(int e = g.edgeStart(s.mrX); e < g.edgeEnd(s.mrX); e++){
+            if((g.edgeTransports(e) & usable) != 0 && !isDetectiveSquare(s, g.edgeTarget(e))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes all moves of the detectives that haven't moved this round into the move buffer
+     * @param s The state
+     * @return The number of moves generated
+     */
+    private int generateDetectiveMoves(PlayoutState s){
+        CompiledGraph g = s.graph;
+        int n = 0;
+        for(int d = 0; d < s.detectives.length; d++){
+            if((s.movedMask & (1 << d)) != 0) continue;
+            int base = (d + 1) * PlayoutState.NO_TICKETS;
+            for(int e = g.edgeStart(s.detectives[d]); e < g.edgeEnd(s.detectives[d]); e++){
+                int target = g.edgeTarget(e);
+                if(isDetectiveSquare(s, target)) continue;
+                int transports = g.edgeTransports(e);
+                if((transports & CompiledGraph.TAXI_BIT) != 0 && s.tickets[base + PlayoutState.TAXI] > 0){
+                    moveBuffer[n++] = PlayoutState.encodeMove(d + 1, target, PlayoutState.TAXI);
+                }
+                if((transports & CompiledGraph.BUS_BIT) != 0 && s.tickets[base + PlayoutState.BUS] > 0){
+                    moveBuffer[n++] = PlayoutState.encodeMove(d + 1, target, PlayoutState.BUS);
+                }
+                if((transports & CompiledGraph.UNDERGROUND_BIT) != 0 && s.tickets[base + PlayoutState.UNDERGROUND] > 0){
+                    moveBuffer[n++] = PlayoutState.encodeMove(d + 1, target, PlayoutState.UNDERGROUND);
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Writes all of MrX's single and double moves into the move buffer
+     * @param s The state
+     * @return The number of moves generated
+     */
+    private int generateMrXMoves(PlayoutState s){
+        int noSingle = generateMrXSingleMoves(s, s.mrX, 0);
+        int n = noSingle;
+        if(s.tickets[PlayoutState.DOUBLE] > 0 && s.round + 1 < s.reveal.length){
+            for(int i = 0; i < noSingle; i++){
+                int first = moveBuffer[i];
+                int ticket1 = PlayoutState.moveTicket(first);
+                int destination1 = PlayoutState.moveDestination(first);
+                //Second moves are generated after the single moves using the remaining tickets
+                s.tickets[ticket1]--;
+                int noSecond = generateMrXSingleMoves(s, destination1, n);
+                s.tickets[ticket1]++;
+                for(int j = n; j < n + noSecond; j++){
+                    moveBuffer[j] = PlayoutState.encodeDoubleMove(destination1, ticket1,
+                            PlayoutState.moveDestination(moveBuffer[j]), PlayoutState.moveTicket(moveBuffer[j]));
+                }
+                n += noSecond;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Writes MrX's single moves from a given location into the move buffer
+     * @param s The state
+     * @param source The location to move from
+     * @param offset The index of the buffer to start writing at
+     * @return The number of moves generated
+     */
+    private int generateMrXSingleMoves(PlayoutState s, int source, int offset){
+        CompiledGraph g = s.graph;
+        int n = offset;
+        for(int e = g.edgeStart(source); e < g.edgeEnd(source); e++){
+            int target = g.edgeTarget(e);
+            if(isDetectiveSquare(s, target)) continue;
+            int transports = g.edgeTransports(e);
+            if((transports & CompiledGraph.TAXI_BIT) != 0 && s.tickets[PlayoutState.TAXI] > 0){
+                moveBuffer[n++] = PlayoutState.encodeMove(PlayoutState.MRX, target, PlayoutState.TAXI);
+            }
+            if((transports & CompiledGraph.BUS_BIT) != 0 && s.tickets[PlayoutState.BUS] > 0){
+                moveBuffer[n++] = PlayoutState.encodeMove(PlayoutState.MRX, target, PlayoutState.BUS);
+            }
+            if((transports & CompiledGraph.UNDERGROUND_BIT) != 0 && s.tickets[PlayoutState.UNDERGROUND] > 0){
+                moveBuffer[n++] = PlayoutState.encodeMove(PlayoutState.MRX, target, PlayoutState.UNDERGROUND);
+            }
+            //Ferries can only be taken with secret tickets, which are handled here
+            if(s.tickets[PlayoutState.SECRET] > 0){
+                moveBuffer[n++] = PlayoutState.encodeMove(PlayoutState.MRX, target, PlayoutState.SECRET);
+            }
+        }
+        return n - offset;
+    }
+}
@@ -0,0 +1,17 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+/**
+ * A light weight policy used to pick moves during playouts.
+ * Implementations are called millions of times per move so they must not allocate.
+ */
+public interface PlayoutPolicy {
+    /**
+     * Picks one of the generated moves
+     * @param state The current playout state
+     * @param moves Buffer holding the encoded moves (see {@link PlayoutState})
+     * @param noMoves The number of valid moves in the buffer (at least 1)
+     * @param rng The random number generator of the playout engine
+     * @return The index of the chosen move in the buffer
+     */
+    int chooseMove(PlayoutState state, int[] moves, int noMoves, XorShiftRandom rng);
+}
@@ -0,0 +1,295 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import uk.ac.bris.cs.scotlandyard.model.LogEntry;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import java.util.List;
+
+/**
+ * Mutable, primitive game state used by the playout engine.
+ * All locations are dense indices of a {@link CompiledGraph} and all tickets are stored in a single
+ * flat array, so the state can be copied and advanced without any allocation.
+ * Moves are encoded as ints (see the static helpers at the bottom of the class).
+ */
+public final class PlayoutState {
+    public static final int NO_WINNER = 0;
+    public static final int MRX_WINS = 1;
+    public static final int DETECTIVES_WIN = 2;
+    public static final int NO_TICKETS = ScotlandYard.Ticket.values().length;
+    public static final int MRX = 0; //Player index of MrX. Detective i has player index i + 1
+    static final int TAXI = ScotlandYard.Ticket.TAXI.ordinal();
+    static final int BUS = ScotlandYard.Ticket.BUS.ordinal();
+    static final int UNDERGROUND = ScotlandYard.Ticket.UNDERGROUND.ordinal();
+    static final int DOUBLE = ScotlandYard.Ticket.DOUBLE.ordinal();
+    static final int SECRET = ScotlandYard.Ticket.SECRET.ordinal();
+    private static final int NODE_BITS = 9;
+    private static final int NODE_MASK = (1 << NODE_BITS) - 1;
+    private static final int TICKET_MASK = 7;
+    private static final int DOUBLE_FLAG = 1 << 28;
+    static final int MAX_NODES = 1 << NODE_BITS;
+
+    final CompiledGraph graph;
+    final boolean[] reveal; //Whether MrX reveals himself on a given round (shared between copies)
+    final int[] detectives; //Location of each detective
+    final int[] tickets; //Tickets indexed by [player * NO_TICKETS + ticket]
+    int mrX; //Location of MrX
+    int round; //Number of entries in MrX's travel log
+    boolean mrXToMove;
+    int movedMask; //Bit i is set if detective i has moved during the current round
+    int lastKnownMrX; //Location MrX was last revealed at (NO_INDEX if he hasn't been revealed yet)
+    int winner;
+
+    /**
+     * Creates an empty state
+     * @param graph The compiled graph
+     * @param reveal The reveal rounds of the game
+     * @param noDetectives The number of detectives
+     */
+    PlayoutState(CompiledGraph graph, boolean[] reveal, int noDetectives){
+        if(graph.size() > MAX_NODES) throw new IllegalArgumentException("Graph is too large for playouts");
+        this.graph = graph;
+        this.reveal = reveal;
+        this.detectives = new int[noDetectives];
+        this.tickets = new int[(noDetectives + 1) * NO_TICKETS];
+    }
+
+    /**
+     * Creates a playout state from a game state where MrX's location is known
+     * @param state The game state
+     * @param graph The compiled version of the game state's graph
+     * @return The playout state
+     */
+    public static PlayoutState fromGameState(MyGameState state, CompiledGraph graph){
+        boolean[] reveal = new boolean[state.getSetup().moves.size()];
+        for(int i = 0; i < reveal.length; i++) reveal[i] = state.getSetup().moves.get(i);
+        List<Player> dets = state.getDetectives();
+        PlayoutState s = new PlayoutState(graph, reveal, dets.size());
+        s.mrX = graph.index(state.getMrX().location());
+        s.copyTickets(MRX, state.getMrX());
+        for(int i = 0; i < dets.size(); i++){
+            s.detectives[i] = graph.index(dets.get(i).location());
+            s.copyTickets(i + 1, dets.get(i));
+        }
+        s.round = state.getMrXTravelLog().size();
+        s.lastKnownMrX = CompiledGraph.NO_INDEX;
+        for(LogEntry entry : state.getMrXTravelLog()){
+            if(entry.location().isPresent()) s.lastKnownMrX = graph.index(entry.location().get());
+        }
+        s.winner = NO_WINNER;
+        if(!state.getWinner().isEmpty()){
+            s.winner = state.getWinner().contains(Piece.MrX.MRX) ? MRX_WINS : DETECTIVES_WIN;
+        }
+        //Works out whose turn it is. Detectives without a move are treated as having moved already
+        s.mrXToMove = false;
+        s.movedMask = (1 << dets.size()) - 1;
+        for(Move m : state.getAvailableMoves()){
+            if(m.commencedBy().isMrX()){
+                s.mrXToMove = true;
+                s.movedMask = 0;
+                break;
+            }
+            for(int i = 0; i < dets.size(); i++){
+                if(dets.get(i).piece() == m.commencedBy()) s.movedMask &= ~(1 << i);
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Copies the tickets of a player into the ticket array
+     * @param playerIndex The player index
+     * @param p The player
+     */
+    private void copyTickets(int playerIndex, Player p){
+        for(ScotlandYard.Ticket t : ScotlandYard.Ticket.values()){
+            tickets[playerIndex * NO_TICKETS + t.ordinal()] = p.tickets().getOrDefault(t, 0);
+        }
+    }
+
+    /**
+     * Creates a new state with the same graph and game length, for use as a scratch state
+     * @return The (uninitialised) state
+     */
+    public PlayoutState emptyCopy(){
+        return new PlayoutState(graph, reveal, detectives.length);
+    }
+
+    /**
+     * Overwrites this state with another one without allocating
+     * @param other The state to copy (must have the same number of detectives)
+     */
+    public void copyFrom(PlayoutState other){
+        System.arraycopy(other.detectives, 0, detectives, 0, detectives.length);
+        System.arraycopy(other.tickets, 0, tickets, 0, tickets.length);
+        mrX = other.mrX;
+        round = other.round;
+        mrXToMove = other.mrXToMove;
+        movedMask = other.movedMask;
+        lastKnownMrX = other.lastKnownMrX;
+        winner = other.winner;
+    }
+
+    /**
+     * Gets the compiled graph this state is played on
+     * @return The graph
+     */
+    public CompiledGraph getGraph(){
+        return graph;
+    }
+
+    /**
+     * Gets MrX's location
+     * @return The dense index of MrX's location
+     */
+    public int getMrX(){
+        return mrX;
+    }
+
+    /**
+     * Gets the location MrX was last revealed at
+     * @return The dense index, or CompiledGraph.NO_INDEX if MrX hasn't been revealed
+     */
+    public int getLastKnownMrX(){
+        return lastKnownMrX;
+    }
+
+    /**
+     * Gets the number of detectives
+     * @return The number of detectives
+     */
+    public int noDetectives(){
+        return detectives.length;
+    }
+
+    /**
+     * Gets the location of a detective
+     * @param detective The detective index
+     * @return The dense index of the detective's location
+     */
+    public int getDetective(int detective){
+        return detectives[detective];
+    }
+
+    /**
+     * Gets the number of tickets a player holds
+     * @param player The player index (MRX or detective index + 1)
+     * @param ticket The ticket ordinal
+     * @return The ticket count
+     */
+    public int getTickets(int player, int ticket){
+        return tickets[player * NO_TICKETS + ticket];
+    }
+
+    /**
+     * Gets the number of MrX moves made so far
+     * @return The round
+     */
+    public int getRound(){
+        return round;
+    }
+
+    /**
+     * Checks whether MrX moves next
+     * @return True if it is MrX's turn
+     */
+    public boolean isMrXToMove(){
+        return mrXToMove;
+    }
+
+    /**
+     * Gets the winner
+     * @return NO_WINNER, MRX_WINS or DETECTIVES_WIN
+     */
+    public int getWinner(){
+        return winner;
+    }
+
+    /**
+     * Encodes a single move
+     * @param player The player making the move
+     * @param destination The destination index
+     * @param ticket The ticket ordinal used
+     * @return The encoded move
+     */
+    static int encodeMove(int player, int destination, int ticket){
+        return destination | (ticket << NODE_BITS) | (player << 24);
+    }
+
+    /**
+     * Encodes a double move (always made by MrX)
+     * @param destination1 The first destination
+     * @param ticket1 The first ticket
+     * @param destination2 The second destination
+     * @param ticket2 The second ticket
+     * @return The encoded move
+     */
+    static int encodeDoubleMove(int destination1, int ticket1, int destination2, int ticket2){
+        return destination1 | (ticket1 << NODE_BITS) | (destination2 << 12) | (ticket2 << 21) | DOUBLE_FLAG;
+    }
+
+    /**
+     * Gets the player index of an encoded move
+     * @param move The move
+     * @return The player index
+     */
+    public static int movePlayer(int move){
+        return (move >>> 24) & 15;
+    }
+
+    /**
+     * Gets the (first) destination of an encoded move
+     * @param move The move
+     * @return The destination index
+     */
+    public static int moveDestination(int move){
+        return move & NODE_MASK;
+    }
+
+    /**
+     * Gets the (first) ticket of an encoded move
+     * @param move The move
+     * @return The ticket ordinal
+     */
+    public static int moveTicket(int move){
+        return (move >>> NODE_BITS) & TICKET_MASK;
+    }
+
+    /**
+     * Checks whether an encoded move is a double move
+     * @param move The move
+     * @return True if it's a double move
+     */
+    public static boolean isDoubleMove(int move){
+        return (move & DOUBLE_FLAG) != 0;
+    }
+
+    /**
+     * Gets the second destination of an encoded double move
+     * @param move The move
+     * @return The destination index
+     */
+    public static int moveSecondDestination(int move){
+        return (move >>> 12) & NODE_MASK;
+    }
+
+    /**
+     * Gets the second ticket of an encoded double move
+     * @param move The move
+     * @return The ticket ordinal
+     */
+    public static int moveSecondTicket(int move){
+        return (move >>> 21) & TICKET_MASK;
+    }
+
+    /**
+     * Gets the location the player ends up at after an encoded move
+     * @param move The move
+     * @return The destination index
+     */
+    public static int finalDestination(int move){
+        return isDoubleMove(move) ? moveSecondDestination(move) : moveDestination(move);
+    }
+}
@@ -0,0 +1,11 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+/**
+ * Playout policy that picks a uniformly random move
+ */
+public final class RandomPlayoutPolicy implements PlayoutPolicy {
+    @Override
+    public int chooseMove(PlayoutState state, int[] moves, int noMoves, XorShiftRandom rng) {
+        return rng.nextInt(noMoves);
+    }
+}
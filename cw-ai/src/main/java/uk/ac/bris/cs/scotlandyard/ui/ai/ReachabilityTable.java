@@ -0,0 +1,200 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableMap;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+/**
+ * Precomputed table of the nodes that can be reached from each node in exactly k moves, for every k up to a
+ * small bound and every mask of allowed transports (see {@link CompiledGraph}).
+ * Each set is stored as a bitset of dense indices in a few longs (4 for the standard graph), so asking which
+ * nodes a group of detectives can reach is a few OR instructions rather than move generation.
+ * Ticket types are taken into account but ticket counts aren't (a detective with one bus ticket is assumed
+ * to be able to take the bus on every move).
+ */
+public final class ReachabilityTable {
+    public static final int DEFAULT_MAX_MOVES = 3;
+    private static final int NO_MASKS = CompiledGraph.ALL_TRANSPORTS + 1;
+    private final CompiledGraph graph;
+    private final int size;
+    private final int words; //Number of longs in each bitset
+    private final int maxMoves;
+    //Bitsets stored one after another, indexed by ((mask * (maxMoves + 1) + moves) * size + index) * words
+    private final long[] table;
+
+    /**
+     * Creates the table for a graph
+     * @param graph The graph
+     * @param maxMoves The largest number of moves that can be queried
+     */
+    public ReachabilityTable(CompiledGraph graph, int maxMoves){
+        if(maxMoves < 1) throw new IllegalArgumentException("At least one move must be stored");
+        this.graph = graph;
+        this.size = graph.size();
+        this.words = (size + 63) >>> 6;
+        this.maxMoves = maxMoves;
+        table = new long[NO_MASKS * (maxMoves + 1) * size * words];
+        for(int mask = 0; mask < NO_MASKS; mask++){
+            for(int i = 0; i < size; i++) table[offset(mask, 0, i) + (i >>> 6)] |= 1L << i;
+            for(int k = 1; k <= maxMoves; k++){
+                for(int i = 0; i < size; i++){
+                    //Nodes reachable in k moves are the nodes reachable in k - 1 moves from a neighbour
+                    int to = offset(mask, k, i);
+                    for(int e = graph.edgeStart(i); e < graph.edgeEnd(i); e++){
+                        if((graph.edgeTransports(e) & mask) == 0) continue;
+                        int from = offset(mask, k - 1, graph.edgeTarget(e));
+                        for(int w = 0; w < words; w++) table[to + w] |= table[from + w];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the table for a graph using the default number of moves
+     * @param graph The graph
+     */
+    public ReachabilityTable(CompiledGraph graph){
+        this(graph, DEFAULT_MAX_MOVES);
+    }
+
+    /**
+     * Gets the number of longs used by each bitset
+     * @return The number of words
+     */
+    public int words(){
+        return words;
+    }
+
+    /**
+     * Gets the number of nodes on the graph
+     * @return The number of nodes
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Gets the largest number of moves that can be queried
+     * @return The number of moves
+     */
+    public int getMaxMoves(){
+        return maxMoves;
+    }
+
+    /**
+     * Gets the transports that a player can use with its tickets (secret tickets allow every transport)
+     * @param tickets The tickets of the player
+     * @return The transport mask
+     */
+    public static int transportMask(ImmutableMap<ScotlandYard.Ticket, Integer> tickets){
+        if(tickets.getOrDefault(ScotlandYard.Ticket.SECRET, 0) > 0) return CompiledGraph.ALL_TRANSPORTS;
+        int mask = 0;
+        if(tickets.getOrDefault(ScotlandYard.Ticket.TAXI, 0) > 0) mask |= CompiledGraph.TAXI_BIT;
+        if(tickets.getOrDefault(ScotlandYard.Ticket.BUS, 0) > 0) mask |= CompiledGraph.BUS_BIT;
+        if(tickets.getOrDefault(ScotlandYard.Ticket.UNDERGROUND, 0) > 0) mask |= CompiledGraph.UNDERGROUND_BIT;
+        return mask;
+    }
+
+    /**
+     * Checks whether a node can be reached in exactly a given number of moves
+     * @param from The start index
+     * @param moves The number of moves (0 to getMaxMoves())
+     * @param transports The transports that can be used
+     * @param to The destination index
+     * @return Whether the destination can be reached
+     */
+    public boolean canReach(int from, int moves, int transports, int to){
+        return (table[offset(transports, moves, from) + (to >>> 6)] & (1L << to)) != 0;
+    }
+
+    /**
+     * ORs the nodes that can be reached in exactly a given number of moves into a bitset
+     * @param out The bitset (of length words())
+     * @param from The start index
+     * @param moves The number of moves (0 to getMaxMoves())
+     * @param transports The transports that can be used
+     */
+    public void orInto(long[] out, int from, int moves, int transports){
+        int start = offset(transports, moves, from);
+        for(int w = 0; w < words; w++) out[w] |= table[start + w];
+    }
+
+    /**
+     * ANDs the nodes that can be reached in exactly a given number of moves into a bitset
+     * @param out The bitset (of length words())
+     * @param from The start index
+     * @param moves The number of moves (0 to getMaxMoves())
+     * @param transports The transports that can be used
+     */
+    public void andInto(long[] out, int from, int moves, int transports){
+        int start = offset(transports, moves, from);
+        for(int w = 0; w < words; w++) out[w] &= table[start + w];
+    }
+
+    /**
+     * Checks whether any detective can move onto a node with its next move
+     * @param state The game state
+     * @param location The node id
+     * @return Whether the node can be reached by a detective
+     */
+    public boolean canAnyDetectiveReach(MyGameState state, int location){
+        int to = graph.index(location);
+        for(Player det : state.getDetectives()){
+            if(canReach(graph.index(det.location()), 1, transportMask(det.tickets()), to)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the nodes that are dangerous for MrX: nodes occupied by a detective or that a detective can
+     * reach within the given number of moves
+     * @param state The game state
+     * @param moves The number of detective moves to consider (1 to getMaxMoves())
+     * @return The bitset of dangerous dense indices
+     */
+    public long[] dangerMask(MyGameState state, int moves){
+        long[] danger = new long[words];
+        for(Player det : state.getDetectives()){
+            int from = graph.index(det.location());
+            int transports = transportMask(det.tickets());
+            for(int k = 0; k <= moves; k++) orInto(danger, from, k, transports);
+        }
+        return danger;
+    }
+
+    /**
+     * Gets the nodes that are dangerous for MrX after the detectives' next move
+     * @param state The game state
+     * @return The bitset of dangerous dense indices
+     */
+    public long[] dangerMask(MyGameState state){
+        return dangerMask(state, 1);
+    }
+
+    /**
+     * Counts the nodes MrX can move to (with a single move) that aren't in the danger mask.
+     * A low count means MrX is close to being trapped.
+     * @param state The game state
+     * @return The number of safe nodes
+     */
+    public int safeNodeCount(MyGameState state){
+        long[] safe = new long[words];
+        orInto(safe, graph.index(state.getMrX().location()), 1, transportMask(state.getMrX().tickets()));
+        long[] danger = dangerMask(state);
+        int count = 0;
+        for(int w = 0; w < words; w++) count += Long.bitCount(safe[w] & ~danger[w]);
+        return count;
+    }
+
+    /**
+     * Gets the start of a bitset in the table
+     * @param transports The transport mask
+     * @param moves The number of moves
+     * @param index The start index
+     * @return The offset of the first word
+     */
+    private int offset(int transports, int moves, int index){
+        return ((transports * (maxMoves + 1) + moves) * size + index) * words;
+    }
+}
@@ -0,0 +1,27 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.util.Arrays;
+
+/**
+ * Plain Java implementation of {@link DistanceReduction}.
+ * The inner loops run over whole rows with no branches, so the JIT is free to unroll (and on some CPUs
+ * auto-vectorise) them.
+ */
+public final class ScalarDistanceReduction implements DistanceReduction {
+    @Override
+    public void reduce(float[][] distances, int n, float[] closest, float[] total){
+        Arrays.fill(closest, 0, n, Float.POSITIVE_INFINITY);
+        Arrays.fill(total, 0, n, 0);
+        for(float[] row : distances){
+            for(int i = 0; i < n; i++){
+                closest[i] = Math.min(closest[i], row[i]);
+                total[i] += row[i];
+            }
+        }
+    }
+
+    @Override
+    public String name(){
+        return "scalar";
+    }
+}
@@ -14,7 +14,7 @@ import java.util.concurrent.TimeUnit;
  */
 public class ScotlandAiHard implements Ai {
     AiCustom mrX = new ParanoidSearchMrX();
-    AiCustom det = OneMoveAheadDijkstraAi.bestPossibleOneMove();
+    AiCustom det = new ParanoidSearchDetective();
     @Nonnull
     @Override
     public String name() {
@@ -0,0 +1,378 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import java.util.Arrays;
+
+/**
+ * Answers "what is the smallest number of moves a detective needs to get from a to b with the tickets
+ * it holds". Unlike {@link CachedDijkstra}, a detective without underground tickets can't use the tube.
+ * <br>
+ * The distances of every transport restricted subgraph (taxi, bus, underground and each combination) are
+ * precomputed. A query first looks up the distance on the subgraph of transports the detective has tickets
+ * for. For subgraphs that include the underground, the smallest number of underground only edges on any of
+ * those shortest paths is precomputed too, as detectives hold far fewer underground tickets than moves.
+ * A shortest path is possible if the detective has that many underground tickets and at least as many taxi
+ * and bus tickets as moves, which is nearly always the case. Otherwise a bounded A* search over
+ * (node, tickets) states is run, using the restricted distances as an admissible heuristic.
+ * Ferries are ignored as detectives can't use secret tickets.
+ */
+public final class TicketDistanceOracle {
+    //Returned when the destination can't be reached with the tickets held
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+    //Maximum number of states expanded by the fallback search before a lower bound is returned
+    public static final int DEFAULT_MAX_EXPANSIONS = 1024;
+    //Ticket masks used to index the tables
+    private static final int TAXI = 1;
+    private static final int BUS = 2;
+    private static final int UNDERGROUND = 4;
+    private static final int NO_MASKS = 8;
+    private static final int COUNT_BITS = 5; //Ticket counts are clamped to 31 in search states
+    private static final int MAX_COUNT = (1 << COUNT_BITS) - 1;
+    private static final int NO_PATH = -1;
+    private final CompiledGraph graph;
+    private final int size;
+    private final short[][] tables; //tables[mask][from * size + to], NO_PATH if unreachable (mask 0 unused)
+    //undergroundHops[mask][from * size + to], the fewest underground only edges on a shortest path of tables[mask]
+    private final byte[][] undergroundHops;
+    private final int diameter; //Largest finite distance when every ticket type can be used
+    private final int maxExpansions;
+    private final ThreadLocal<SearchSpace> searchSpace;
+
+    /**
+     * Creates an oracle for a compiled graph, precomputing the distances of every restricted subgraph
+     * @param graph The graph
+     * @param maxExpansions The maximum number of states the fallback search may expand
+     */
+    public TicketDistanceOracle(CompiledGraph graph, int maxExpansions){
+        if(maxExpansions <= 0) throw new IllegalArgumentException("The search must be able to expand a state");
+        this.graph = graph;
+        this.size = graph.size();
+        this.maxExpansions = maxExpansions;
+        tables = new short[NO_MASKS][];
+        undergroundHops = new byte[NO_MASKS][];
+        int largest = 0;
+        for(int mask = 1; mask < NO_MASKS; mask++){
+            tables[mask] = restrictedDistances(transportsOf(mask));
+            for(short d : tables[mask]) largest = Math.max(largest, d);
+            if((mask & UNDERGROUND) != 0) undergroundHops[mask] = undergroundHops(transportsOf(mask), tables[mask]);
+        }
+        diameter = largest;
+        searchSpace = ThreadLocal.withInitial(() -> new SearchSpace(maxExpansions, size));
+    }
+
+    /**
+     * Creates an oracle for a compiled graph using the default search limit
+     * @param graph The graph
+     */
+    public TicketDistanceOracle(CompiledGraph graph){
+        this(graph, DEFAULT_MAX_EXPANSIONS);
+    }
+
+    /**
+     * Gets the smallest number of moves needed by a detective to reach a node
+     * @param detective The detective
+     * @param destination The node id of the destination
+     * @return The number of moves, or UNREACHABLE
+     */
+    public int minMoves(Player detective, int destination){
+        return minMoves(detective.location(), destination, detective.tickets().get(ScotlandYard.Ticket.TAXI),
+                detective.tickets().get(ScotlandYard.Ticket.BUS),
+                detective.tickets().get(ScotlandYard.Ticket.UNDERGROUND));
+    }
+
+    /**
+     * Gets the smallest number of moves needed to get between two nodes with the given tickets
+     * @param from The node id of the start
+     * @param to The node id of the destination
+     * @param taxi The number of taxi tickets
+     * @param bus The number of bus tickets
+     * @param underground The number of underground tickets
+     * @return The number of moves, or UNREACHABLE
+     */
+    public int minMoves(int from, int to, int taxi, int bus, int underground){
+        return minMovesByIndex(graph.index(from), graph.index(to), taxi, bus, underground);
+    }
+
+    /**
+     * Gets the smallest number of moves needed to get between two dense indices with the given tickets.
+     * If the fallback search runs out of expansions, a lower bound on the number of moves is returned.
+     * @param from The index of the start
+     * @param to The index of the destination
+     * @param taxi The number of taxi tickets
+     * @param bus The number of bus tickets
+     * @param underground The number of underground tickets
+     * @return The number of moves, or UNREACHABLE
+     */
+    public int minMovesByIndex(int from, int to, int taxi, int bus, int underground){
+        if(from == to) return 0;
+        int mask = ticketMask(taxi, bus, underground);
+        if(mask == 0) return UNREACHABLE;
+        int d = tables[mask][from * size + to];
+        if(d == NO_PATH) return UNREACHABLE;
+        //A path of length d uses at most d taxi or bus tickets, and the precomputed number of underground tickets
+        if(((mask & TAXI) == 0 || taxi >= d) && ((mask & BUS) == 0 || bus >= d)
+                && ((mask & UNDERGROUND) == 0 || underground >= undergroundHops[mask][from * size + to])) return d;
+        return searchSpace.get().search(from, to, Math.min(taxi, MAX_COUNT), Math.min(bus, MAX_COUNT),
+                Math.min(underground, MAX_COUNT), d);
+    }
+
+    /**
+     * Gets the largest finite number of moves between two nodes when tickets aren't limited.
+     * Useful as a cap on distances when a node is unreachable.
+     * @return The diameter of the graph
+     */
+    public int getDiameter(){
+        return diameter;
+    }
+
+    /**
+     * Gets the number of nodes on the graph
+     * @return The number of nodes
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Gets the mask of ticket types that have at least one ticket
+     * @param taxi The number of taxi tickets
+     * @param bus The number of bus tickets
+     * @param underground The number of underground tickets
+     * @return The mask
+     */
+    private static int ticketMask(int taxi, int bus, int underground){
+        return (taxi > 0 ? TAXI : 0) | (bus > 0 ? BUS : 0) | (underground > 0 ? UNDERGROUND : 0);
+    }
+
+    /**
+     * Gets the transports that can be used with a ticket mask
+     * @param mask The ticket mask
+     * @return The transport mask (see {@link CompiledGraph})
+     */
+    private static int transportsOf(int mask){
+        return ((mask & TAXI) != 0 ? CompiledGraph.TAXI_BIT : 0) | ((mask & BUS) != 0 ? CompiledGraph.BUS_BIT : 0)
+                | ((mask & UNDERGROUND) != 0 ? CompiledGraph.UNDERGROUND_BIT : 0);
+    }
+
+    /**
+     * Calculates the distance between every pair of nodes using only some transports (breadth first search)
+     * @param transports The transports that can be used
+     * @return The distances, indexed [from * size + to]
+     */
+    private short[] restrictedDistances(int transports){
+        short[] dist = new short[size * size];
+        Arrays.fill(dist, (short) NO_PATH);
+        int[] queue = new int[size];
+        for(int source = 0; source < size; source++){
+            int row = source * size;
+            int head = 0;
+            int tail = 0;
+            dist[row + source] = 0;
+            queue[tail++] = source;
+            while(head < tail){
+                int current = queue[head++];
+                for(int e = graph.edgeStart(current); e < graph.edgeEnd(current); e++){
+                    int target = graph.edgeTarget(e);
+                    if((graph.edgeTransports(e) & transports) != 0 && dist[row + target] == NO_PATH){
+                        dist[row + target] = (short) (dist[row + current] + 1);
+                        queue[tail++] = target;
+                    }
+                }
+            }
+        }
+        return dist;
+    }
+
+    /**
+     * Calculates the fewest edges that can only be travelled by underground on any shortest path between every
+     * pair of nodes using only some transports. Nodes are visited in breadth first order, so every predecessor on
+     * a shortest path is finished before the nodes after it.
+     * @param transports The transports that can be used (must include the underground)
+     * @param dist The distances using those transports, indexed [from * size + to]
+     * @return The number of underground only edges, indexed [from * size + to]
+     */
+    private byte[] undergroundHops(int transports, short[] dist){
+        byte[] hops = new byte[size * size];
+        Arrays.fill(hops, Byte.MAX_VALUE);
+        int[] queue = new int[size];
+        boolean[] queued = new boolean[size];
+        for(int source = 0; source < size; source++){
+            int row = source * size;
+            int head = 0;
+            int tail = 0;
+            Arrays.fill(queued, false);
+            hops[row + source] = 0;
+            queue[tail++] = source;
+            queued[source] = true;
+            while(head < tail){
+                int current = queue[head++];
+                for(int e = graph.edgeStart(current); e < graph.edgeEnd(current); e++){
+                    int target = graph.edgeTarget(e);
+                    int usable = graph.edgeTransports(e) & transports;
+                    if(usable == 0 || dist[row + target] != dist[row + current] + 1) continue;
+                    int viaEdge = hops[row + current] + (usable == CompiledGraph.UNDERGROUND_BIT ? 1 : 0);
+                    if(viaEdge < hops[row + target]) hops[row + target] = (byte) viaEdge;
+                    if(!queued[target]){
+                        queued[target] = true;
+                        queue[tail++] = target;
+                    }
+                }
+            }
+        }
+        return hops;
+    }
+
+    /**
+     * Working memory of the fallback search. Each thread has its own, so queries don't allocate.
+     * States are packed into an int as (index, taxi, bus, underground).
+     */
+    private final class SearchSpace {
+        private final int[] visitedKeys; //Open addressing set of states that have been queued
+        private final int[] visitedStamps; //A slot is only used if its stamp matches the current query
+        private final int[] bucketHead; //Queued entries with each f value
+        private int[] entryState = new int[256];
+        private int[] entryCost = new int[256];
+        private int[] entryNext = new int[256];
+        private int noEntries = 0;
+        private int noVisited = 0;
+        private int stamp = 0;
+
+        /**
+         * Creates the working memory
+         * @param maxExpansions The maximum number of states expanded
+         * @param size The number of nodes on the graph
+         */
+        SearchSpace(int maxExpansions, int size){
+            int capacity = Integer.highestOneBit(Math.max(16, maxExpansions * 16) - 1) << 1;
+            visitedKeys = new int[capacity];
+            visitedStamps = new int[capacity];
+            bucketHead = new int[size + 1]; //Shortest paths never need more than size - 1 moves
+        }
+
+        /**
+         * Runs the A* search. States are expanded in order of f = moves + restricted distance.
+         * @param from The start index
+         * @param to The destination index
+         * @param taxi The number of taxi tickets
+         * @param bus The number of bus tickets
+         * @param underground The number of underground tickets
+         * @param lowerBound The restricted distance from the start to the destination
+         * @return The number of moves, UNREACHABLE or a lower bound if the search was cut off
+         */
+        int search(int from, int to, int taxi, int bus, int underground, int lowerBound){
+            if(++stamp == 0){ //Stamps have wrapped around, so old slots could look current
+                Arrays.fill(visitedStamps, 0);
+                stamp = 1;
+            }
+            noEntries = 0;
+            noVisited = 0;
+            Arrays.fill(bucketHead, -1);
+            int start = pack(from, taxi, bus, underground);
+            visit(start);
+            push(lowerBound, start, 0);
+            int expansions = 0;
+            for(int f = lowerBound; f < bucketHead.length; f++){
+                while(bucketHead[f] != -1){
+                    int entry = bucketHead[f];
+                    bucketHead[f] = entryNext[entry];
+                    int state = entryState[entry];
+                    int moves = entryCost[entry];
+                    int index = state >>> (3 * COUNT_BITS);
+                    if(index == to) return moves;
+                    //Every state left in the queue needs at least f moves
+                    if(++expansions > maxExpansions) return f;
+                    int t = (state >>> (2 * COUNT_BITS)) & MAX_COUNT;
+                    int b = (state >>> COUNT_BITS) & MAX_COUNT;
+                    int u = state & MAX_COUNT;
+                    for(int e = graph.edgeStart(index); e < graph.edgeEnd(index); e++){
+                        int target = graph.edgeTarget(e);
+                        int transports = graph.edgeTransports(e);
+                        if(t > 0 && (transports & CompiledGraph.TAXI_BIT) != 0){
+                            expand(target, t - 1, b, u, moves, to);
+                        }
+                        if(b > 0 && (transports & CompiledGraph.BUS_BIT) != 0){
+                            expand(target, t, b - 1, u, moves, to);
+                        }
+                        if(u > 0 && (transports & CompiledGraph.UNDERGROUND_BIT) != 0){
+                            expand(target, t, b, u - 1, moves, to);
+                        }
+                        if(noVisited * 2 > visitedKeys.length) return f; //Out of working memory
+                    }
+                }
+            }
+            return UNREACHABLE;
+        }
+
+        /**
+         * Queues a successor state if it hasn't been queued before and the destination is reachable from it
+         * @param index The index of the node moved to
+         * @param t The taxi tickets left
+         * @param b The bus tickets left
+         * @param u The underground tickets left
+         * @param moves The moves made to reach the previous state
+         * @param to The destination index
+         */
+        private void expand(int index, int t, int b, int u, int moves, int to){
+            int h = 0;
+            if(index != to){
+                int mask = ticketMask(t, b, u);
+                if(mask == 0) return;
+                h = tables[mask][index * size + to];
+                if(h == NO_PATH) return;
+            }
+            int f = moves + 1 + h;
+            if(f >= bucketHead.length) return;
+            int state = pack(index, t, b, u);
+            if(visit(state)) push(f, state, moves + 1);
+        }
+
+        /**
+         * Packs a state into an int
+         * @param index The node index
+         * @param t The taxi tickets
+         * @param b The bus tickets
+         * @param u The underground tickets
+         * @return The packed state
+         */
+        private int pack(int index, int t, int b, int u){
+            return (index << (3 * COUNT_BITS)) | (t << (2 * COUNT_BITS)) | (b << COUNT_BITS) | u;
+        }
+
+        /**
+         * Marks a state as visited
+         * @param state The state
+         * @return Whether the state hadn't been visited before
+         */
+        private boolean visit(int state){
+            int slot = (state * 0x9E3779B9) & (visitedKeys.length - 1);
+            while(visitedStamps[slot] == stamp){
+                if(visitedKeys[slot] == state) return false;
+                slot = (slot + 1) & (visitedKeys.length - 1);
+            }
+            visitedStamps[slot] = stamp;
+            visitedKeys[slot] = state;
+            noVisited++;
+            return true;
+        }
+
+        /**
+         * Adds an entry to the queue
+         * @param f The estimated total number of moves
+         * @param state The state
+         * @param moves The number of moves made so far
+         */
+        private void push(int f, int state, int moves){
+            if(noEntries == entryState.length){
+                entryState = Arrays.copyOf(entryState, noEntries * 2);
+                entryCost = Arrays.copyOf(entryCost, noEntries * 2);
+                entryNext = Arrays.copyOf(entryNext, noEntries * 2);
+            }
+            entryState[noEntries] = state;
+            entryCost[noEntries] = moves;
+            entryNext[noEntries] = bucketHead[f];
+            bucketHead[f] = noEntries++;
+        }
+    }
+}
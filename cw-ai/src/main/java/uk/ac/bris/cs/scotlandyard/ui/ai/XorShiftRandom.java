@@ -0,0 +1,60 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+/**
+ * Small and fast pseudo random number generator (xorshift64*).
+ * This isn't thread safe and isn't suitable for anything other than simulations, but it is
+ * much cheaper than java.util.Random which uses an atomic seed.
+ */
+public final class XorShiftRandom {
+    private long state;
+
+    /**
+     * Creates a new generator
+     * @param seed The seed. A seed of 0 is replaced as the generator can't leave the all zero state.
+     */
+    public XorShiftRandom(long seed){
+        setSeed(seed);
+    }
+
+    /**
+     * Resets the generator to a given seed
+     * @param seed The seed
+     */
+    public void setSeed(long seed){
+        //Mixes the seed so that similar seeds don't give similar streams
+        long z = seed + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        state = z == 0 ? 0x9E3779B97F4A7C15L : z;
+    }
+
+    /**
+     * Gets the next random 64-bit value
+     * @return The value
+     */
+    public long nextLong(){
+        state ^= state >>> 12;
+        state ^= state << 25;
+        state ^= state >>> 27;
+        return state * 0x2545F4914F6CDD1DL;
+    }
+
+    /**
+     * Gets a random integer in the range [0, bound)
+     * @param bound The exclusive upper bound (must be positive)
+     * @return The value
+     */
+    public int nextInt(int bound){
+        //Multiply-shift range reduction. The top 32 bits are used as they are of the highest quality
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * Gets a random float in the range [0, 1)
+     * @return The value
+     */
+    public float nextFloat(){
+        return (nextLong() >>> 40) * 0x1.0p-24f;
+    }
+}
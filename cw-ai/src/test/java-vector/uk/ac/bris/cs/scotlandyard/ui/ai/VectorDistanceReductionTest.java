@@ -0,0 +1,51 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import jdk.incubator.vector.FloatVector;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests that the vector reduction gives exactly the same results as the scalar reduction.
+ * Only compiled and run with the "vector" Maven profile.
+ */
+public class VectorDistanceReductionTest {
+    @Test
+    /**
+     * Tests that the vector implementation is picked when the module is available
+     */
+    public void CreatePicksVector(){
+        assertThat(DistanceReduction.create()).isInstanceOf(VectorDistanceReduction.class);
+    }
+
+    @Test
+    /**
+     * Tests random rows of every length up to three whole vectors and one more, so every size of tail is covered
+     */
+    public void MatchesScalarOnRandomRows(){
+        Random random = new Random(43);
+        int lanes = FloatVector.SPECIES_PREFERRED.length();
+        DistanceReduction vector = new VectorDistanceReduction();
+        DistanceReduction scalar = new ScalarDistanceReduction();
+        for(int n = 0; n <= 3 * lanes + 1; n++){
+            for(int noRows = 0; noRows <= 5; noRows++){
+                float[][] distances = new float[noRows][n];
+                for(float[] row : distances){
+                    for(int i = 0; i < n; i++){
+                        //Unreachable positions are infinitely far away
+                        if(random.nextInt(16) == 0) row[i] = Float.POSITIVE_INFINITY;
+                        else row[i] = random.nextInt(30) + random.nextFloat();
+                    }
+                }
+                float[] closest = new float[n], total = new float[n];
+                float[] expectedClosest = new float[n], expectedTotal = new float[n];
+                vector.reduce(distances, n, closest, total);
+                scalar.reduce(distances, n, expectedClosest, expectedTotal);
+                assertThat(closest).as("closest with n = %d and %d rows", n, noRows).containsExactly(expectedClosest);
+                assertThat(total).as("total with n = %d and %d rows", n, noRows).containsExactly(expectedTotal);
+            }
+        }
+    }
+}
@@ -8,7 +8,19 @@ import org.junit.runners.Suite;
  */
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
+        BeliefSetTest.class,
         CachedDijkstraTest.class,
+        ClosestDetectiveHeuristicTest.class,
+        DetectiveRoundGeneratorTest.class,
+        DistanceMatrixTest.class,
+        FeatureHeuristicTest.class,
+        GraphRegistryTest.class,
+        IncrementalEvaluatorTest.class,
         MrXLocationsTest.class,
+        NodeFeaturesTest.class,
+        PlayoutEngineTest.class,
+        ReachabilityTableTest.class,
+        SprtTest.class,
+        TicketDistanceOracleTest.class,
 })
 public class AllTest {}
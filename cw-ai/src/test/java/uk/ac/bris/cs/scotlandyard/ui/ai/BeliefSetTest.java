@@ -0,0 +1,129 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import org.junit.Test;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Tests that bitset belief propagation matches looping over the neighbours of each location, and that
+ * tracked beliefs match replaying the travel log
+ */
+public class BeliefSetTest extends ParameterisedModelTestBase{
+    @Test
+    /**
+     * Tests propagation of random sets along every travel ticket
+     */
+    public void PropagationMatchesNeighbourLoop(){
+        ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph = standardGraph();
+        BeliefSet.Transitions transitions = new BeliefSet.Transitions(graph);
+        List<Integer> nodes = new ArrayList<>(graph.nodes());
+        Random random = new Random(3);
+        for(int trial = 0; trial < 50; trial++){
+            Set<Integer> locations = new HashSet<>();
+            int size = 1 + random.nextInt(40);
+            while(locations.size() < size) locations.add(nodes.get(random.nextInt(nodes.size())));
+            BeliefSet belief = BeliefSet.of(transitions, locations);
+            assertThat(belief).isEqualTo(locations);
+            assertThat(belief.hashCode()).isEqualTo(locations.hashCode());
+            for(ScotlandYard.Ticket ticket : ScotlandYard.Ticket.values()){
+                if(ticket == ScotlandYard.Ticket.DOUBLE) continue;
+                Set<Integer> expected = new HashSet<>();
+                for(Integer start : locations){
+                    for(Integer neighbour : graph.adjacentNodes(start)){
+                        for(ScotlandYard.Transport t : graph.edgeValue(start, neighbour).get()){
+                            if(t.requiredTicket() == ticket) expected.add(neighbour);
+                        }
+                        if(ticket == ScotlandYard.Ticket.SECRET) expected.add(neighbour);
+                    }
+                }
+                assertThat(belief.propagate(ticket)).containsExactlyInAnyOrderElementsOf(expected);
+            }
+            Integer removed = locations.iterator().next();
+            assertThat(belief.without(removed)).doesNotContain(removed).hasSize(locations.size() - 1);
+        }
+    }
+
+    @Test
+    /**
+     * Tests that a belief tracker kept across a game gives the same locations as replaying the travel log
+     */
+    public void TrackerMatchesReplay() throws IOException{
+        Random random = new Random(11);
+        for(int game = 0; game < 5; game++){
+            Board.GameState state = PlayGame.getRandomStartState();
+            BeliefTracker tracker = BeliefTracker.forGraph(state.getSetup().graph);
+            while(state.getWinner().isEmpty()){
+                assertThat(tracker.getPossibleLocations(state, false))
+                        .isEqualTo(MrXLocations.getPossibleMrXLocations(state, false));
+                assertThat(tracker.getPossibleLocations(state, true))
+                        .isEqualTo(MrXLocations.getPossibleMrXLocations(state, true));
+                List<Move> moves = state.getAvailableMoves().asList();
+                state = state.advance(moves.get(random.nextInt(moves.size())));
+            }
+        }
+    }
+
+    @Test
+    /**
+     * Tests that the location distribution is spread over exactly the possible locations and sums to one
+     */
+    public void DistributionMatchesLocations() throws IOException{
+        Random random = new Random(12);
+        Board.GameState state = PlayGame.getRandomStartState();
+        BeliefTracker tracker = BeliefTracker.forGraph(state.getSetup().graph);
+        while(state.getWinner().isEmpty()){
+            BeliefSet locations = tracker.getPossibleLocations(state, false);
+            BeliefDistribution distribution = tracker.getDistribution(state);
+            double total = 0;
+            for(Integer node : state.getSetup().graph.nodes()){
+                assertThat(distribution.probability(node) > 0).isEqualTo(locations.contains(node));
+                total += distribution.probability(node);
+            }
+            assertThat(total).isCloseTo(1, within(1e-9));
+            List<Move> moves = state.getAvailableMoves().asList();
+            state = state.advance(moves.get(random.nextInt(moves.size())));
+        }
+    }
+
+    @Test
+    /**
+     * Tests that the locations shared by the states of a board can't be changed through any of them, and that
+     * copies of them can
+     */
+    public void SharedStatesHaveReadOnlyLocations() throws IOException{
+        Board.GameState board = PlayGame.getRandomStartState(4);
+        List<Move> moves = board.getAvailableMoves().asList();
+        board = board.advance(moves.get(0));
+        List<MyGameState> states = MyGameState.getPossibleStates(board);
+        assertThat(states).hasSizeGreaterThan(1);
+        BeliefSet shared = states.get(0).getMrXPossibleLocations();
+        Integer location = shared.iterator().next();
+        assertThatThrownBy(() -> shared.remove(location)).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(shared::clear).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> {
+            Iterator<Integer> iterator = shared.iterator();
+            iterator.next();
+            iterator.remove();
+        }).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> shared.removeMask(new long[]{-1L})).isInstanceOf(UnsupportedOperationException.class);
+        for(MyGameState state : states) assertThat(state.getMrXPossibleLocations()).contains(location);
+        BeliefSet copy = shared.copy();
+        assertThat(copy.remove(location)).isTrue();
+        assertThat(shared).contains(location);
+    }
+}
@@ -0,0 +1,89 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests that scoring states in batches gives the same scores as scoring them one at a time
+ */
+public class ClosestDetectiveHeuristicTest extends ParameterisedModelTestBase{
+    @Test
+    /**
+     * Tests batches of the children of states from random games (including finished games and batches with
+     * different numbers of detectives) against gameScore
+     */
+    public void BatchMatchesGameScore() throws IOException{
+        ClosestDetectiveHeuristic heuristic = new ClosestDetectiveHeuristic(standardGraph());
+        for(List<MyGameState> batch : randomBatches(new Random(37))){
+            assertMatchesGameScore(heuristic, heuristic, batch);
+        }
+    }
+
+    @Test
+    /**
+     * Tests that the caching heuristic gives the same scores as gameScore, whether or not the states are cached
+     */
+    public void CachedBatchMatchesGameScore() throws IOException{
+        ClosestDetectiveHeuristic heuristic = new ClosestDetectiveHeuristic(standardGraph());
+        CachingHeuristic caching = new CachingHeuristic(heuristic, new EvaluationCache(1 << 12));
+        Random random = new Random(41);
+        for(List<MyGameState> batch : randomBatches(random)){
+            //Scores some of the states first so the batch is a mix of cached and uncached states
+            List<MyGameState> some = new ArrayList<>();
+            for(MyGameState state : batch) if(random.nextBoolean()) some.add(state);
+            assertMatchesGameScore(caching, heuristic, some);
+            assertMatchesGameScore(caching, heuristic, batch);
+            assertMatchesGameScore(caching, heuristic, batch);
+        }
+    }
+
+    /**
+     * Checks that a heuristic scores a batch the same as scoring each state on its own
+     * @param batched The heuristic used to score the batch
+     * @param heuristic The heuristic that gives the expected score of each state
+     * @param batch The states
+     */
+    private static void assertMatchesGameScore(Heuristic batched, Heuristic heuristic, List<MyGameState> batch){
+        float[] scores = new float[batch.size() + 1];
+        batched.scoreAll(batch, scores);
+        for(int i = 0; i < batch.size(); i++){
+            assertThat(scores[i]).as("Score of state %d of %d", i, batch.size())
+                    .isEqualTo(heuristic.gameScore(batch.get(i)));
+        }
+    }
+
+    /**
+     * Plays random games, making a batch of every child of each state. A state from a game with fewer
+     * detectives is added to some of the batches.
+     * @param random Picks the games and moves
+     * @return The batches
+     * @throws IOException If the standard graph can't be loaded
+     */
+    private List<List<MyGameState>> randomBatches(Random random) throws IOException{
+        Board.GameState fewerDetectives = gameStateFactory.build(standard24MoveSetup(), blackPlayer(),
+                ImmutableList.of(redPlayer(), greenPlayer()));
+        MyGameState other = MyGameState.getPossibleStates(fewerDetectives).get(0);
+        List<List<MyGameState>> batches = new ArrayList<>();
+        for(int game = 0; game < 6; game++){
+            MyGameState state = MyGameState.getPossibleStates(PlayGame.getRandomStartState(random.nextLong())).get(0);
+            while(state.getWinner().isEmpty()){
+                List<MyGameState> batch = new ArrayList<>();
+                for(Move move : state.getAvailableMoves()) batch.add(state.advance(move));
+                if(random.nextInt(4) == 0) batch.add(random.nextInt(batch.size() + 1), other);
+                batches.add(batch);
+                List<Move> moves = state.getAvailableMoves().asList();
+                state = state.advance(moves.get(random.nextInt(moves.size())));
+            }
+        }
+        return batches;
+    }
+}
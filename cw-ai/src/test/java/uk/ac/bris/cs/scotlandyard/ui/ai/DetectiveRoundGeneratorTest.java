@@ -0,0 +1,108 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import org.junit.Test;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests that detective rounds reach the same states as playing the detectives one at a time
+ */
+public class DetectiveRoundGeneratorTest extends ParameterisedModelTestBase{
+    //Key used for every state where the detectives have won, as the moves made after capturing MrX don't matter
+    private static final String CAPTURED = "captured";
+
+    /**
+     * Gets the states reached by playing every detective's moves one at a time until MrX is to move again
+     * @param state The state (detectives to move)
+     * @return The end states, with every state where MrX is caught replaced by CAPTURED
+     */
+    private static Set<Object> sequentialEndStates(MyGameState state){
+        Set<Object> ends = new HashSet<>();
+        Set<MyGameState> level = Set.of(state);
+        while(!level.isEmpty()){
+            Set<MyGameState> next = new HashSet<>();
+            for(MyGameState s : level){
+                if(!s.getWinner().isEmpty() || s.getAvailableMoves().asList().get(0).commencedBy().isMrX()){
+                    ends.add(key(s));
+                    continue;
+                }
+                for(Move m : s.getAvailableMoves()) next.add(s.advance(m));
+            }
+            level = next;
+        }
+        return ends;
+    }
+
+    /**
+     * Gets the key used to compare an end state
+     * @param state The state
+     * @return The key
+     */
+    private static Object key(MyGameState state){
+        return Heuristic.getGameState(state) == Heuristic.State.detWins ? CAPTURED : state;
+    }
+
+    @Test
+    /**
+     * Tests that a generator without a beam gives the same end states as sequential move generation
+     */
+    public void UncappedRoundsMatchSequentialMoves() throws IOException{
+        Random random = new Random(5);
+        int compared = 0;
+        for(int game = 0; game < 2; game++){
+            MyGameState state = MyGameState.getPossibleStates(PlayGame.getRandomStartState(random.nextLong())).get(0);
+            DetectiveRoundGenerator generator = new DetectiveRoundGenerator(
+                    GraphRegistry.shared().distances(state.getSetup().graph, new OneCostPerEdge()));
+            //Checks the first few rounds of a random game (every round has tens of thousands of joint moves)
+            for(int round = 0; round < 2 && Heuristic.getGameState(state) == Heuristic.State.gameStillGoing;
+                round++){
+                List<Move> moves = state.getAvailableMoves().asList();
+                state = state.advance(moves.get(random.nextInt(moves.size())));
+                if(!state.getWinner().isEmpty()) break;
+                List<DetectiveRoundGenerator.JointMove> rounds = generator.generate(state);
+                //Rounds aren't generated when a detective can't move
+                if(!rounds.isEmpty()){
+                    Set<Object> generated = new HashSet<>();
+                    for(DetectiveRoundGenerator.JointMove jointMove : rounds){
+                        Object end = key(jointMove.getEndState());
+                        assertThat(generated.add(end) || end == CAPTURED)
+                                .as("Each joint move leads to a distinct state").isTrue();
+                    }
+                    assertThat(generated).isEqualTo(sequentialEndStates(state));
+                    compared++;
+                }
+                //Plays a random round to move on to MrX's next turn
+                while(state.getWinner().isEmpty() && state.getAvailableMoves().asList().get(0).commencedBy()
+                        .isDetective()){
+                    moves = state.getAvailableMoves().asList();
+                    state = state.advance(moves.get(random.nextInt(moves.size())));
+                }
+            }
+        }
+        assertThat(compared).isGreaterThan(0);
+    }
+
+    @Test
+    /**
+     * Tests that a beam only returns the requested number of joint moves, all of which are legal rounds
+     */
+    public void BeamLimitsJointMoves() throws IOException{
+        MyGameState state = MyGameState.getPossibleStates(PlayGame.getRandomStartState(7)).get(0);
+        state = state.advance(state.getAvailableMoves().asList().get(0));
+        DetectiveRoundGenerator beam = new DetectiveRoundGenerator(
+                GraphRegistry.shared().distances(state.getSetup().graph, new OneCostPerEdge()), 3);
+        List<DetectiveRoundGenerator.JointMove> rounds = beam.generate(state);
+        assertThat(rounds).hasSizeBetween(1, 3);
+        Set<Object> sequential = sequentialEndStates(state);
+        for(DetectiveRoundGenerator.JointMove jointMove : rounds){
+            assertThat(sequential).contains(key(jointMove.getEndState()));
+        }
+    }
+}
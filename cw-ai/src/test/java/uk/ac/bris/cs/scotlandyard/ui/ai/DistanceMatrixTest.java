@@ -0,0 +1,115 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests that the dense distance matrix gives the same distances as the original graph searches
+ */
+public class DistanceMatrixTest extends ParameterisedModelTestBase{
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    /**
+     * Tests that nodes are given dense indices in ascending order and that unknown nodes have no index
+     */
+    public void IndicesAreDenseAndOrdered(){
+        var graph = standardGraph();
+        DistanceMatrix m = CachedDijkstra.preComputeAllDistances(graph, x -> 1).getDistanceMatrix();
+        assertThat(m.size()).isEqualTo(graph.nodes().size());
+        for(int i = 0; i < m.size(); i++){
+            assertThat(m.index(m.nodeId(i))).isEqualTo(i);
+            if(i > 0) assertThat(m.nodeId(i)).isGreaterThan(m.nodeId(i - 1));
+        }
+        assertThat(m.index(0)).isEqualTo(DistanceMatrix.NO_INDEX);
+        assertThat(m.index(-5)).isEqualTo(DistanceMatrix.NO_INDEX);
+        assertThat(m.index(100000)).isEqualTo(DistanceMatrix.NO_INDEX);
+    }
+
+    @Test
+    /**
+     * Tests that weighted distances are symmetric, zero on the diagonal and obey the triangle inequality
+     * along every edge
+     */
+    public void WeightedDistancesAreConsistent(){
+        ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph = standardGraph();
+        EdgeValue weighting = new DistanceWeighting();
+        CachedDijkstra c = CachedDijkstra.preComputeAllDistances(graph, weighting);
+        DistanceMatrix m = c.getDistanceMatrix();
+        for(Integer a : graph.nodes()){
+            assertThat(m.distance(a, a)).isZero();
+            for(Integer b : graph.nodes()){
+                assertThat(m.distance(a, b)).isEqualTo(m.distance(b, a));
+                assertThat(m.distance(a, b)).isEqualTo(c.getDistance(a, b));
+                assertThat(m.distanceByIndex(m.index(a), m.index(b))).isEqualTo(m.distance(a, b));
+            }
+            for(Integer n : graph.adjacentNodes(a)){
+                int edgeCost = weighting.getEdgeCost(graph.edgeValue(a, n).get());
+                assertThat(m.distance(a, n)).isLessThanOrEqualTo(edgeCost);
+                for(Integer b : graph.nodes()){
+                    assertThat(m.distance(a, b)).isLessThanOrEqualTo(edgeCost + m.distance(n, b));
+                }
+            }
+        }
+        //Hand calculated values (a taxi costs 1, bus 2 and underground 4)
+        assertThat(m.distance(140, 132)).isEqualTo(1);
+        assertThat(m.distance(1, 8)).isEqualTo(1);
+    }
+
+    @Test
+    /**
+     * Tests that distances and compiled graphs read back from the on disk cache match the computed tables,
+     * and that truncated or corrupted files are treated as misses
+     */
+    public void DiskCacheRoundTrips() throws IOException{
+        var graph = standardGraph();
+        GraphTableCache cache = new GraphTableCache(temporaryFolder.newFolder("graph-table-cache").toPath());
+        long fingerprint = GraphFingerprint.of(graph);
+        EdgeValue weighting = new DistanceWeighting();
+        long signature = GraphFingerprint.edgeCostSignature(graph, weighting);
+        assertThat(cache.loadDistances(fingerprint, signature)).isNull();
+        DistanceMatrix computed = CachedDijkstra.preComputeAllDistances(graph, weighting).getDistanceMatrix();
+        cache.storeDistances(fingerprint, signature, new CachedDijkstra(computed));
+        DistanceMatrix loaded = cache.loadDistances(fingerprint, signature).getDistanceMatrix();
+        assertThat(loaded.size()).isEqualTo(computed.size());
+        for(int i = 0; i < computed.size(); i++){
+            assertThat(loaded.nodeId(i)).isEqualTo(computed.nodeId(i));
+            for(int j = 0; j < computed.size(); j++){
+                assertThat(loaded.distanceByIndex(i, j)).isEqualTo(computed.distanceByIndex(i, j));
+            }
+        }
+        assertThat(cache.loadDistances(fingerprint, signature + 1)).isNull();
+        CompiledGraph compiled = CompiledGraph.compile(graph);
+        cache.storeCompiledGraph(fingerprint, compiled);
+        CompiledGraph loadedGraph = cache.loadCompiledGraph(fingerprint);
+        assertThat(loadedGraph.edgeCount()).isEqualTo(compiled.edgeCount());
+        for(int i = 0; i < compiled.size(); i++){
+            assertThat(loadedGraph.nodeId(i)).isEqualTo(compiled.nodeId(i));
+            assertThat(loadedGraph.edgeEnd(i)).isEqualTo(compiled.edgeEnd(i));
+        }
+        for(int e = 0; e < compiled.edgeCount(); e++){
+            assertThat(loadedGraph.edgeTarget(e)).isEqualTo(compiled.edgeTarget(e));
+            assertThat(loadedGraph.edgeTransports(e)).isEqualTo(compiled.edgeTransports(e));
+        }
+        Path file = cache.compiledGraphFile(fingerprint);
+        Files.write(file, Arrays.copyOf(Files.readAllBytes(file), 100));
+        assertThat(cache.loadCompiledGraph(fingerprint)).isNull();
+        //Changes one distance without changing the size of the file
+        Path distances = cache.distancesFile(fingerprint, signature);
+        byte[] bytes = Files.readAllBytes(distances);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(distances, bytes);
+        assertThat(cache.loadDistances(fingerprint, signature)).isNull();
+    }
+}
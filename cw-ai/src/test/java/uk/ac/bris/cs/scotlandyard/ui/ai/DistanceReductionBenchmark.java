@@ -0,0 +1,80 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH comparison of the scalar and the best available {@link DistanceReduction}.
+ * The forked JVM is given the Vector API module, so the vector implementation is measured when the classes
+ * were built with the "vector" profile (mvn -Pvector test-compile). Otherwise both benchmarks measure the
+ * scalar implementation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class DistanceReductionBenchmark {
+    private static final int NO_DETECTIVES = 5;
+    //Number of positions reduced at once (e.g. every node of the standard graph as a possible MrX location)
+    @Param({"16", "199"})
+    private int noPositions;
+    private float[][] distances;
+    private float[] closest;
+    private float[] total;
+    private DistanceReduction scalar;
+    private DistanceReduction best;
+
+    /**
+     * Creates random distances and the implementations being measured
+     */
+    @Setup
+    public void setUp(){
+        Random random = new Random(3);
+        distances = new float[NO_DETECTIVES][noPositions];
+        for(float[] row : distances){
+            for(int i = 0; i < noPositions; i++) row[i] = 1 + random.nextInt(10);
+        }
+        closest = new float[noPositions];
+        total = new float[noPositions];
+        scalar = new ScalarDistanceReduction();
+        best = DistanceReduction.create();
+        System.out.println("Best reduction: " + best.name());
+    }
+
+    /**
+     * Reduces the distances with the scalar implementation
+     * @return A reduced value (returned so the work isn't optimised away)
+     */
+    @Benchmark
+    public float scalarReduction(){
+        scalar.reduce(distances, noPositions, closest, total);
+        return closest[0] + total[noPositions - 1];
+    }
+
+    /**
+     * Reduces the distances with the implementation chosen by {@link DistanceReduction#create()}
+     * @return A reduced value (returned so the work isn't optimised away)
+     */
+    @Benchmark
+    public float bestReduction(){
+        best.reduce(distances, noPositions, closest, total);
+        return closest[0] + total[noPositions - 1];
+    }
+
+    /**
+     * Runs the benchmark
+     * @param args Unused
+     * @throws RunnerException If the benchmark fails to run
+     */
+    public static void main(String[] args) throws RunnerException{
+        new Runner(new OptionsBuilder().include(DistanceReductionBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,86 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Tests the feature heuristic's default weights and weight files
+ */
+public class FeatureHeuristicTest extends ParameterisedModelTestBase{
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    /**
+     * Tests that the default weights score states from random games (including finished games) the same as the
+     * closest detective heuristic
+     */
+    public void DefaultWeightsMatchClosestDetective() throws IOException{
+        Random random = new Random(47);
+        ClosestDetectiveHeuristic closest = new ClosestDetectiveHeuristic(standardGraph());
+        FeatureHeuristic feature = new FeatureHeuristic(standardGraph(), FeatureHeuristic.defaultWeights());
+        int checked = 0;
+        for(int game = 0; game < 20; game++){
+            MyGameState state = MyGameState.getPossibleStates(PlayGame.getRandomStartState(random.nextLong())).get(0);
+            while(true){
+                //The terms are added in a different order, so they may differ by rounding
+                assertThat(feature.gameScore(state)).as("Score after %d states", checked)
+                        .isCloseTo(closest.gameScore(state), within(1e-3f));
+                checked++;
+                if(!state.getWinner().isEmpty()) break;
+                List<Move> moves = state.getAvailableMoves().asList();
+                state = state.advance(moves.get(random.nextInt(moves.size())));
+            }
+        }
+        assertThat(checked).isGreaterThan(200);
+    }
+
+    @Test
+    /**
+     * Tests that saved weights are loaded back unchanged
+     */
+    public void SavedWeightsLoadUnchanged() throws IOException{
+        Random random = new Random(53);
+        float[] weights = new float[FeatureHeuristic.NO_FEATURES];
+        for(int i = 0; i < weights.length; i++) weights[i] = (float) random.nextGaussian() * 100;
+        weights[FeatureHeuristic.BIAS] = Float.MIN_VALUE;
+        Path file = temporaryFolder.newFile().toPath();
+        FeatureHeuristic.saveWeights(file, weights, "Random weights");
+        assertThat(FeatureHeuristic.loadWeights(file)).containsExactly(weights);
+    }
+
+    @Test
+    /**
+     * Tests that a missing or invalid weight file stops the AIs with an error naming the file
+     */
+    public void BadWeightFileFailsLoudly() throws IOException{
+        Path missing = temporaryFolder.getRoot().toPath().resolve("missing.txt");
+        Path invalid = temporaryFolder.newFile().toPath();
+        Files.writeString(invalid, "closestDistance=far\n");
+        String previous = System.getProperty(FeatureHeuristic.WEIGHTS_PROPERTY);
+        try{
+            for(Path file : List.of(missing, invalid)){
+                System.setProperty(FeatureHeuristic.WEIGHTS_PROPERTY, file.toString());
+                assertThatThrownBy(() -> new ParanoidSearchMrX().onStart())
+                        .isInstanceOf(UncheckedIOException.class).hasMessageContaining(file.toString());
+                assertThatThrownBy(() -> new ParanoidSearchDetective().onStart())
+                        .isInstanceOf(UncheckedIOException.class).hasMessageContaining(file.toString());
+            }
+        }finally{
+            if(previous == null) System.clearProperty(FeatureHeuristic.WEIGHTS_PROPERTY);
+            else System.setProperty(FeatureHeuristic.WEIGHTS_PROPERTY, previous);
+        }
+    }
+}
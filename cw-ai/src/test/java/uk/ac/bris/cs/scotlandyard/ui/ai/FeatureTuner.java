@@ -0,0 +1,177 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Offline tuner for the weights of {@link FeatureHeuristic}.
+ * Games are played (in parallel) between one move lookahead players using the current weights, with some random
+ * moves so that a wider range of positions is seen. The features of every position MrX moves from are recorded
+ * along with who won, and logistic regression is fitted to predict a MrX win from the features. The gradient of
+ * each step is summed in parallel over the samples.
+ * <br>
+ * The fitted log-odds are scaled into the range of {@link Heuristic} scores and saved as a weight file that
+ * can be used by setting the {@link FeatureHeuristic#WEIGHTS_PROPERTY} system property.
+ * <br>
+ * Usage: FeatureTuner [games] [output file] [starting weight file]
+ */
+public final class FeatureTuner {
+    private static final int DEFAULT_GAMES = 400;
+    private static final String DEFAULT_OUTPUT = "weights.txt";
+    //Chance of each side making a random move. The detectives see MrX at all times, so they play more randomly
+    //to keep the games balanced enough for both outcomes to be seen.
+    private static final double MRX_EPSILON = Double.parseDouble(System.getProperty("tuner.mrXEpsilon", "0.1"));
+    private static final double DETECTIVE_EPSILON = Double.parseDouble(System.getProperty("tuner.detEpsilon", "0.6"));
+    private static final int ITERATIONS = 2000;
+    private static final double LEARNING_RATE = 0.5;
+    private static final double L2 = 1e-4; //Regularisation of the weights (not the bias)
+    //Heuristic score = MIDPOINT + SCALE * log-odds of MrX winning, so log-odds of ±10 fit in the range
+    private static final float MIDPOINT = (Heuristic.MRX_WINS + Heuristic.DETECTIVE_WINS) / 2;
+    private static final float SCALE = (Heuristic.MRX_WINS - Heuristic.DETECTIVE_WINS) / 20;
+
+    private FeatureTuner(){}
+
+    /**
+     * A recorded position
+     * @param features The features of the position
+     * @param mrXWon Whether MrX went on to win
+     */
+    private record Sample(float[] features, boolean mrXWon){}
+
+    /**
+     * Plays a game between two one move lookahead players and records the positions MrX moved from
+     * @param heuristic The heuristic used by both players
+     * @param seed The seed of the random moves
+     * @return The positions
+     */
+    private static List<Sample> playGame(FeatureHeuristic heuristic, long seed){
+        Random random = new Random(seed);
+        MyGameState state;
+        try{
+            state = MyGameState.getPossibleStates(PlayGame.getRandomStartState()).get(0);
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+        List<float[]> positions = new ArrayList<>();
+        while(!Heuristic.isTerminalState(state)){
+            ImmutableList<Move> moves = state.getAvailableMoves().asList();
+            boolean mrXTurn = moves.get(0).commencedBy().isMrX();
+            if(mrXTurn){
+                float[] features = new float[FeatureHeuristic.NO_FEATURES];
+                heuristic.features(state, features);
+                positions.add(features);
+            }
+            Move chosen;
+            double epsilon = mrXTurn ? MRX_EPSILON : DETECTIVE_EPSILON;
+            if(random.nextDouble() < epsilon) chosen = moves.get(random.nextInt(moves.size()));
+            else{
+                //MrX maximises the score and the detectives minimise it
+                chosen = moves.get(0);
+                float best = mrXTurn ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY;
+                for(Move move : moves){
+                    float score = heuristic.gameScore(state.advance(move));
+                    if(mrXTurn ? score > best : score < best){
+                        best = score;
+                        chosen = move;
+                    }
+                }
+            }
+            state = state.advance(chosen);
+        }
+        boolean mrXWon = Heuristic.getGameState(state) == Heuristic.State.xWins;
+        return positions.stream().map(features -> new Sample(features, mrXWon)).collect(Collectors.toList());
+    }
+
+    /**
+     * Fits logistic regression to the samples with batch gradient descent. Features are standardised while
+     * fitting and the weights are converted back afterwards.
+     * @param samples The samples
+     * @return The weights (the bias weight is the intercept), giving the log-odds of MrX winning
+     */
+    private static double[] fit(List<Sample> samples){
+        int k = FeatureHeuristic.NO_FEATURES;
+        int n = samples.size();
+        double[] mean = new double[k];
+        double[] sd = new double[k];
+        for(Sample s : samples) for(int i = 0; i < k; i++) mean[i] += s.features()[i] / n;
+        for(Sample s : samples) for(int i = 0; i < k; i++) sd[i] += Math.pow(s.features()[i] - mean[i], 2) / n;
+        for(int i = 0; i < k; i++) sd[i] = Math.sqrt(sd[i]);
+        //Constant features (e.g. the bias) are left as they are
+        for(int i = 0; i < k; i++){
+            if(sd[i] < 1e-9){
+                mean[i] = 0;
+                sd[i] = 1;
+            }
+        }
+        double[][] x = new double[n][k];
+        double[] y = new double[n];
+        for(int j = 0; j < n; j++){
+            for(int i = 0; i < k; i++) x[j][i] = (samples.get(j).features()[i] - mean[i]) / sd[i];
+            y[j] = samples.get(j).mrXWon() ? 1 : 0;
+        }
+        double[] w = new double[k];
+        for(int iteration = 0; iteration < ITERATIONS; iteration++){
+            final double[] current = w;
+            double[] gradient = IntStream.range(0, n).parallel().collect(() -> new double[k], (sum, j) -> {
+                double z = 0;
+                for(int i = 0; i < k; i++) z += current[i] * x[j][i];
+                double error = 1 / (1 + Math.exp(-z)) - y[j];
+                for(int i = 0; i < k; i++) sum[i] += error * x[j][i];
+            }, (a, b) -> {
+                for(int i = 0; i < k; i++) a[i] += b[i];
+            });
+            double[] next = new double[k];
+            for(int i = 0; i < k; i++){
+                double penalty = i == FeatureHeuristic.BIAS ? 0 : L2 * current[i];
+                next[i] = current[i] - LEARNING_RATE * (gradient[i] / n + penalty);
+            }
+            w = next;
+        }
+        //Undoes the standardisation
+        double[] weights = new double[k];
+        for(int i = 0; i < k; i++) weights[i] = w[i] / sd[i];
+        for(int i = 0; i < k; i++) weights[FeatureHeuristic.BIAS] -= w[i] * mean[i] / sd[i];
+        return weights;
+    }
+
+    /**
+     * Records self-play games and saves the fitted weights
+     * @param args The number of games, the output file and a weight file to start self-play from (all optional)
+     * @throws IOException If the graph or a weight file can't be read, or the output can't be written
+     */
+    public static void main(String[] args) throws IOException{
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GAMES;
+        Path output = Paths.get(args.length > 1 ? args[1] : DEFAULT_OUTPUT);
+        float[] start = args.length > 2 ? FeatureHeuristic.loadWeights(Paths.get(args[2]))
+                : FeatureHeuristic.defaultWeights();
+        FeatureHeuristic heuristic = new FeatureHeuristic(GraphRegistry.shared().standardGraph(), start);
+        long startTime = System.currentTimeMillis();
+        long seed = new Random().nextLong();
+        List<List<Sample>> recorded = IntStream.range(0, games).parallel()
+                .mapToObj(g -> playGame(heuristic, seed + g)).collect(Collectors.toList());
+        List<Sample> samples = recorded.stream().flatMap(List::stream).collect(Collectors.toList());
+        long mrXWins = recorded.stream().filter(game -> !game.isEmpty() && game.get(0).mrXWon()).count();
+        System.out.println("Played " + games + " games (" + mrXWins + " MrX wins) giving " + samples.size()
+                + " positions in " + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+        double[] logOdds = fit(samples);
+        float[] weights = new float[FeatureHeuristic.NO_FEATURES];
+        for(int i = 0; i < weights.length; i++){
+            weights[i] = (float) (SCALE * logOdds[i]);
+            System.out.println(FeatureHeuristic.FEATURE_NAMES.get(i) + ": " + logOdds[i]);
+        }
+        weights[FeatureHeuristic.BIAS] += MIDPOINT;
+        FeatureHeuristic.saveWeights(output, weights, "Fitted to " + samples.size() + " positions from " + games
+                + " self-play games");
+        System.out.println("Saved weights to " + output.toAbsolutePath());
+    }
+}
@@ -0,0 +1,217 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.ResourceManager;
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless round-robin between every Ai implementation found on the classpath (or a chosen few of them).
+ * Every AI plays MrX against every AI as the detectives, including itself. Every pairing plays the same games,
+ * as game i of each pairing starts from the state given by the seed and i (see {@link Tournament#gameSeed}).
+ * <br>
+ * Pairings are played one after another, and the games of a pairing are played in parallel, so the move times
+ * and nodes searched (counted by {@link IterativeDeepening}) can be attributed to the pairing. Nodes/sec is the
+ * number of nodes searched per second spent picking moves by either side. A row is written for each pairing as
+ * soon as it finishes, as CSV or (if the output file ends in .json) a JSON array.
+ * <br>
+ * Usage: Gauntlet [games per pairing] [ms per move] [output file] [AI names or class names...]
+ */
+public final class Gauntlet {
+    private static final List<String> COLUMNS = List.of("mrX", "detectives", "games", "mrXWins", "mrXWinRate",
+            "mrXMoveMs", "detectiveMoveMs", "nodesPerSecond");
+    private final List<Class<? extends Ai>> ais;
+    private final List<String> names;
+
+    /**
+     * Creates a gauntlet
+     * @param ais The AIs that play each other (each must have a public no argument constructor)
+     */
+    public Gauntlet(List<? extends Ai> ais){
+        if(ais.isEmpty()) throw new IllegalArgumentException("There must be at least one AI");
+        this.ais = new ArrayList<>();
+        this.names = new ArrayList<>();
+        for(Ai ai : ais){
+            this.ais.add(ai.getClass());
+            this.names.add(ai.name());
+        }
+    }
+
+    /**
+     * Finds the AIs on the classpath
+     * @param filter The names or class names (simple or full) of the AIs to keep, or empty to keep every AI
+     * @return The AIs
+     */
+    public static List<Ai> discover(Collection<String> filter){
+        List<Ai> found = new ArrayList<>();
+        for(Ai ai : ResourceManager.scanAis()){
+            if(filter.isEmpty() || filter.stream().anyMatch(f -> f.equalsIgnoreCase(ai.name())
+                    || f.equalsIgnoreCase(ai.getClass().getSimpleName()) || f.equals(ai.getClass().getName()))){
+                found.add(ai);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Creates a new instance of an AI
+     * @param cls The class of the AI
+     * @return The instance
+     */
+    @SuppressWarnings("unchecked")
+    private static Ai instantiate(Class<? extends Ai> cls){
+        return ResourceManager.instantiateAi((Class<Ai>) cls);
+    }
+
+    /**
+     * Plays every pairing
+     * @param noGames The number of games per pairing
+     * @param seed The seed of the games
+     * @param moveTime The time allowed to make a move
+     * @param workers The number of games played at once
+     * @param output Where the result of each pairing is written
+     * @throws IOException If the standard graph can't be loaded or the output can't be written
+     * @throws InterruptedException If interrupted while waiting for games to finish
+     */
+    public void play(int noGames, long seed, Pair<Long, TimeUnit> moveTime, int workers, ResultWriter output)
+            throws IOException, InterruptedException{
+        for(int x = 0; x < ais.size(); x++){
+            for(int d = 0; d < ais.size(); d++){
+                Class<? extends Ai> mrX = ais.get(x);
+                Class<? extends Ai> detectives = ais.get(d);
+                Tournament tournament = new Tournament(() -> instantiate(mrX), () -> instantiate(detectives), workers);
+                int[] xWins = new int[1];
+                long nodesBefore = IterativeDeepening.getNodesSearched();
+                tournament.play(noGames, seed, moveTime, (game, mrXWon) -> {
+                    if(mrXWon) xWins[0]++;
+                    return true;
+                });
+                long nodes = IterativeDeepening.getNodesSearched() - nodesBefore;
+                MoveStatistics statistics = tournament.getStatistics();
+                double thinking = statistics.getThinkingSeconds();
+                output.write(List.of(names.get(x), names.get(d), noGames, xWins[0], xWins[0] / (double) noGames,
+                        statistics.getMeanMoveMillis(true), statistics.getMeanMoveMillis(false),
+                        thinking > 0 ? nodes / thinking : 0.0));
+            }
+        }
+    }
+
+    /**
+     * Writes a table of results one row at a time, flushing each row so partial results survive a crash
+     */
+    public static final class ResultWriter implements Closeable {
+        private final BufferedWriter writer;
+        private final boolean json;
+        private boolean firstRow = true;
+
+        /**
+         * Creates a writer and writes the header
+         * @param file The file to write to (JSON if it ends in .json, otherwise CSV)
+         * @throws IOException If the file can't be written
+         */
+        public ResultWriter(Path file) throws IOException{
+            this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+            this.json = file.toString().toLowerCase(Locale.ROOT).endsWith(".json");
+            if(json) writer.write("[");
+            else writer.write(String.join(",", COLUMNS));
+            writer.newLine();
+            writer.flush();
+        }
+
+        /**
+         * Writes a row
+         * @param values The value of each column
+         * @throws IOException If the row can't be written
+         */
+        public void write(List<?> values) throws IOException{
+            List<String> cells = new ArrayList<>(values.size());
+            for(int i = 0; i < values.size(); i++){
+                String cell = format(values.get(i));
+                cells.add(json ? quote(COLUMNS.get(i)) + ": " + cell : cell);
+            }
+            if(json){
+                if(!firstRow){
+                    writer.write(",");
+                    writer.newLine();
+                }
+                writer.write("  {" + String.join(", ", cells) + "}");
+            }else{
+                writer.write(String.join(",", cells));
+                writer.newLine();
+            }
+            firstRow = false;
+            writer.flush();
+        }
+
+        /**
+         * Formats a value as a cell
+         * @param value The value
+         * @return The cell
+         */
+        private String format(Object value){
+            if(value instanceof Double) return String.format(Locale.ROOT, "%.4f", (Double) value);
+            if(value instanceof Number) return value.toString();
+            return quote(value.toString());
+        }
+
+        /**
+         * Quotes a string, escaping any quotes in it
+         * @param value The string
+         * @return The quoted string
+         */
+        private String quote(String value){
+            if(json) return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+
+        @Override
+        public void close() throws IOException{
+            if(json){
+                writer.newLine();
+                writer.write("]");
+                writer.newLine();
+            }
+            writer.close();
+        }
+    }
+
+    /**
+     * Run this to check the strength of every AI against every other AI
+     * @param args The number of games per pairing, the time per move (ms), the output file and the names of the
+     *             AIs to play (all optional)
+     */
+    public static void main(String[] args){
+        int noGames = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        Pair<Long, TimeUnit> moveTime = new Pair<>(args.length > 1 ? Long.parseLong(args[1]) : 1000L,
+                TimeUnit.MILLISECONDS);
+        Path output = Paths.get(args.length > 2 ? args[2] : "gauntlet.csv");
+        List<String> filter = args.length > 3 ? Arrays.asList(args).subList(3, args.length) : List.of();
+        List<Ai> ais = discover(filter);
+        if(ais.isEmpty()){
+            System.err.println("No AIs found matching " + filter);
+            return;
+        }
+        System.out.println("Playing " + ais.stream().map(Ai::name).toList() + ", writing results to "
+                + output.toAbsolutePath());
+        try(ResultWriter writer = new ResultWriter(output)){
+            new Gauntlet(ais).play(noGames, 0, moveTime, Runtime.getRuntime().availableProcessors(), writer);
+        }catch(IOException e){
+            System.err.println("Error " + e);
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+}
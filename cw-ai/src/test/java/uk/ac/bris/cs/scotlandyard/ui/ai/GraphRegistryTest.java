@@ -0,0 +1,53 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests that the graph registry shares one copy of each table between threads
+ */
+public class GraphRegistryTest extends ParameterisedModelTestBase{
+    @Test
+    /**
+     * Tests that threads asking for the same tables at the same time all get the same instances, and that
+     * each table is only counted once
+     */
+    public void ConcurrentRequestsShareTables() throws Exception{
+        GraphRegistry registry = new GraphRegistry(GraphRegistry.DEFAULT_MAX_BYTES);
+        int noThreads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(noThreads);
+        List<Future<List<Object>>> results = new ArrayList<>();
+        try{
+            for(int t = 0; t < noThreads; t++){
+                results.add(pool.submit(() -> {
+                    start.await();
+                    //Tables that depend on the compiled graph ask the registry for it while it may be computing
+                    return List.<Object>of(registry.ticketOracle(standardGraph()),
+                            registry.reachability(standardGraph()), registry.compiledGraph(standardGraph()),
+                            registry.distances(standardGraph(), new OneCostPerEdge()));
+                }));
+            }
+            start.countDown();
+            List<Object> first = results.get(0).get();
+            for(Future<List<Object>> result : results){
+                List<Object> tables = result.get();
+                for(int i = 0; i < first.size(); i++) assertThat(tables.get(i)).isSameAs(first.get(i));
+            }
+        }finally{
+            pool.shutdownNow();
+        }
+        long bytes = registry.estimatedBytes();
+        //Asking again uses the stored tables
+        assertThat(registry.ticketOracle(standardGraph())).isSameAs(results.get(0).get().get(0));
+        assertThat(registry.estimatedBytes()).isEqualTo(bytes).isPositive();
+    }
+}
@@ -0,0 +1,55 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import org.junit.Test;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests that the incremental evaluator keeps the same score as the heuristic it updates
+ */
+public class IncrementalEvaluatorTest extends ParameterisedModelTestBase{
+    @Test
+    /**
+     * Tests random walks that make and undo moves, checking the score against a full evaluation after every step
+     */
+    public void MatchesHeuristicOnRandomWalks() throws IOException{
+        Random random = new Random(17);
+        ClosestDetectiveHeuristic heuristic = new ClosestDetectiveHeuristic(standardGraph());
+        IncrementalEvaluator evaluator = heuristic.newIncrementalEvaluator();
+        int checked = 0;
+        for(int walk = 0; walk < 10; walk++){
+            MyGameState start = MyGameState.getPossibleStates(PlayGame.getRandomStartState(random.nextLong())).get(0);
+            evaluator.reset(start);
+            Deque<MyGameState> path = new ArrayDeque<>();
+            path.push(start);
+            for(int step = 0; step < 200; step++){
+                MyGameState state = path.peek();
+                boolean finished = Heuristic.getGameState(state) != Heuristic.State.gameStillGoing;
+                //Undoes a move now and then (or when the game is over) so unmade moves are checked too
+                if(path.size() > 1 && (finished || random.nextInt(4) == 0)){
+                    path.pop();
+                    evaluator.onUnmove();
+                }else if(!finished){
+                    List<Move> moves = state.getAvailableMoves().asList();
+                    Move move = moves.get(random.nextInt(moves.size()));
+                    MyGameState next = state.advance(move);
+                    evaluator.onMove(move, next.getMrXPossibleLocations().size());
+                    path.push(next);
+                }
+                //Terminal states are scored by the search before the evaluator is used
+                if(Heuristic.getGameState(path.peek()) != Heuristic.State.gameStillGoing) continue;
+                assertThat(evaluator.score()).as("Score after step %d of walk %d", step, walk)
+                        .isEqualTo(heuristic.gameScore(path.peek()));
+                checked++;
+            }
+        }
+        assertThat(checked).isGreaterThan(1000);
+    }
+}
@@ -0,0 +1,41 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Time spent picking moves by each side of a match. Moves can be recorded from several threads at once.
+ */
+public final class MoveStatistics {
+    private final LongAdder mrXMoves = new LongAdder();
+    private final LongAdder mrXNanos = new LongAdder();
+    private final LongAdder detectiveMoves = new LongAdder();
+    private final LongAdder detectiveNanos = new LongAdder();
+
+    /**
+     * Records a move
+     * @param mrX Whether MrX made the move
+     * @param nanos The time taken to pick the move (ns)
+     */
+    public void record(boolean mrX, long nanos){
+        (mrX ? mrXMoves : detectiveMoves).increment();
+        (mrX ? mrXNanos : detectiveNanos).add(nanos);
+    }
+
+    /**
+     * Gets the mean time taken to pick a move
+     * @param mrX Whether to use MrX's moves or the detectives' moves
+     * @return The mean time (ms), or 0 if no moves have been recorded
+     */
+    public double getMeanMoveMillis(boolean mrX){
+        long moves = (mrX ? mrXMoves : detectiveMoves).sum();
+        return moves == 0 ? 0 : (mrX ? mrXNanos : detectiveNanos).sum() / 1e6 / moves;
+    }
+
+    /**
+     * Gets the total time both sides spent picking moves
+     * @return The time (seconds)
+     */
+    public double getThinkingSeconds(){
+        return (mrXNanos.sum() + detectiveNanos.sum()) / 1e9;
+    }
+}
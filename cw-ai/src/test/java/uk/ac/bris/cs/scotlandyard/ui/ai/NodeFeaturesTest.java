@@ -0,0 +1,108 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import org.junit.Test;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the node features against the graph they were computed from
+ */
+public class NodeFeaturesTest extends ParameterisedModelTestBase{
+    @Test
+    /**
+     * Tests the degree and mobility of every node for every transport mask against the edges of the graph
+     */
+    public void MobilityMatchesEdges(){
+        ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph = standardGraph();
+        CompiledGraph compiled = CompiledGraph.compile(graph);
+        NodeFeatures features = new NodeFeatures(compiled);
+        for(int node : graph.nodes()){
+            int index = compiled.index(node);
+            for(ScotlandYard.Transport t : ScotlandYard.Transport.values()){
+                int edges = 0;
+                for(int neighbour : graph.adjacentNodes(node)){
+                    if(graph.edgeValueOrDefault(node, neighbour, ImmutableSet.of()).contains(t)) edges++;
+                }
+                assertThat(features.degree(index, t)).as("%s degree of %d", t, node).isEqualTo(edges);
+            }
+            for(int mask = 0; mask <= CompiledGraph.ALL_TRANSPORTS; mask++){
+                assertThat(features.mobility(index, mask)).as("Mobility of %d with mask %d", node, mask)
+                        .isEqualTo(neighbours(graph, node, mask).size());
+            }
+        }
+    }
+
+    @Test
+    /**
+     * Tests the two move fan out of every node for every transport mask against a two step walk of the graph
+     */
+    public void FanOutMatchesTwoStepWalk(){
+        ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph = standardGraph();
+        CompiledGraph compiled = CompiledGraph.compile(graph);
+        NodeFeatures features = new NodeFeatures(compiled);
+        for(int mask = 0; mask <= CompiledGraph.ALL_TRANSPORTS; mask++){
+            for(int node : graph.nodes()){
+                Set<Integer> reached = new HashSet<>();
+                for(int neighbour : neighbours(graph, node, mask)){
+                    reached.add(neighbour);
+                    reached.addAll(neighbours(graph, neighbour, mask));
+                }
+                //Moving away and back again doesn't count as reaching another node
+                reached.remove(node);
+                assertThat(features.twoMoveFanOut(compiled.index(node), mask))
+                        .as("Fan out of %d with mask %d", node, mask).isEqualTo(reached.size());
+            }
+        }
+    }
+
+    @Test
+    /**
+     * Tests that exactly the nodes with an underground edge are stations, and that every other node is one move
+     * further from a station than its closest neighbour
+     */
+    public void StationDistanceMatchesUndergroundEdges(){
+        ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph = standardGraph();
+        CompiledGraph compiled = CompiledGraph.compile(graph);
+        NodeFeatures features = new NodeFeatures(compiled);
+        Set<Integer> stations = new HashSet<>();
+        for(int node : graph.nodes()){
+            int index = compiled.index(node);
+            boolean station = !neighbours(graph, node, CompiledGraph.UNDERGROUND_BIT).isEmpty();
+            if(station) stations.add(node);
+            assertThat(features.isStation(index)).as("Station %d", node).isEqualTo(station);
+            assertThat(features.stationDistance(index) == 0).as("Distance of %d", node).isEqualTo(station);
+            if(station) continue;
+            int closest = NodeFeatures.NO_STATION;
+            for(int neighbour : graph.adjacentNodes(node)){
+                closest = Math.min(closest, features.stationDistance(compiled.index(neighbour)));
+            }
+            int expected = closest == NodeFeatures.NO_STATION ? NodeFeatures.NO_STATION : closest + 1;
+            assertThat(features.stationDistance(index)).as("Distance of %d", node).isEqualTo(expected);
+        }
+        assertThat(stations).isNotEmpty();
+    }
+
+    /**
+     * Gets the neighbours of a node that can be reached with a set of transports
+     * @param graph The graph
+     * @param node The node
+     * @param mask The transport mask
+     * @return The neighbours
+     */
+    private static Set<Integer> neighbours(ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph,
+                                           int node, int mask){
+        Set<Integer> neighbours = new HashSet<>();
+        for(int neighbour : graph.adjacentNodes(node)){
+            for(ScotlandYard.Transport t : graph.edgeValueOrDefault(node, neighbour, ImmutableSet.of())){
+                if((CompiledGraph.transportBit(t) & mask) != 0) neighbours.add(neighbour);
+            }
+        }
+        return neighbours;
+    }
+}
@@ -8,15 +8,13 @@ import java.util.Random;
 import java.util.Stack;
 import java.util.concurrent.TimeUnit;
 
-import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.standardGraph;
-
 /**
  * Test class used to have two AI's play against each other a certain number of times to
  * estimate which AI is generally better.
  */
 public final class PlayGame {
-    private final Ai mrX;
-    private final Ai det;
+    private final String mrX;
+    private final String det;
     private final int noGames;
     private final int xWins;
     private final int detWins;
@@ -27,8 +25,8 @@ public final class PlayGame {
 
     /**
      * Creates a new object that stores the test results
-     * @param mrX The MrX AI
-     * @param detectives The detective AI
+     * @param mrX The name of the MrX AI
+     * @param detectives The name of the detective AI
      * @param noGames The number of games used to test two players
      * @param xWins The number of games mrX AI has won
      * @param detWins The number of games the detective AI has won
@@ -36,7 +34,7 @@ public final class PlayGame {
      * @param moveTime The time the AI was allowed to take per move
      * @param testTime The total time spent performing the test
      */
-    private PlayGame(Ai mrX, Ai detectives, int noGames, int xWins, int detWins,
+    private PlayGame(String mrX, String detectives, int noGames, int xWins, int detWins,
                      double testTime, double range, Pair<Long, TimeUnit> moveTime){
         this.mrX = mrX;
         this.det = detectives;
@@ -51,7 +49,7 @@ public final class PlayGame {
     @Override
     public String toString(){
         String stars = "************************************************";
-        String result = stars +"\nMrXAi: " + mrX.name() + "\nDetectivesAI: " + det.name();
+        String result = stars +"\nMrXAi: " + mrX + "\nDetectivesAI: " + det;
         result += "\nTime for each move: " + moveTime.left() + " " + moveTime.right();
         result += "\nTotal test time: " + testTime +" seconds";
         result += "\nTotal games tested: " + noGames;
@@ -78,20 +76,60 @@ public final class PlayGame {
     public static PlayGame testAi(Ai mrX, Ai detectives, int noTests,
                                   final Pair<Long, TimeUnit> moveTime ) throws IOException{
         double start = System.currentTimeMillis();
-        int detWins = 0;
         int xWins = 0;
         for(int test = 0; test < noTests; test++){
-            Board.GameState state = getRandomStartState();
-            while(state.getWinner().isEmpty()){
-                if(state.getAvailableMoves().asList().get(0).commencedBy().isMrX()){
-                    state = state.advance(mrX.pickMove(state, moveTime));
-                }else{
-                    state = state.advance(detectives.pickMove(state, moveTime));
-                }
-            }
-            if(state.getWinner().asList().get(0).isMrX()) xWins++;
-            else detWins++;
+            if(playGame(mrX, detectives, getRandomStartState(), moveTime)) xWins++;
         }
+        double end = System.currentTimeMillis();
+        return fromResults(mrX.name(), detectives.name(), noTests, xWins, (end - start) / 1000.0, moveTime);
+    }
+
+    /**
+     * Plays one game between two AI opponents
+     * @param mrX The mrX AI
+     * @param detectives The detective AI
+     * @param state The starting state
+     * @param moveTime The time allowed to make a move
+     * @return Whether MrX won
+     */
+    static boolean playGame(Ai mrX, Ai detectives, Board.GameState state, Pair<Long, TimeUnit> moveTime){
+        return playGame(mrX, detectives, state, moveTime, new MoveStatistics());
+    }
+
+    /**
+     * Plays one game between two AI opponents, recording how long each move took
+     * @param mrX The mrX AI
+     * @param detectives The detective AI
+     * @param state The starting state
+     * @param moveTime The time allowed to make a move
+     * @param statistics Where the move times are recorded
+     * @return Whether MrX won
+     */
+    static boolean playGame(Ai mrX, Ai detectives, Board.GameState state, Pair<Long, TimeUnit> moveTime,
+                            MoveStatistics statistics){
+        while(state.getWinner().isEmpty()){
+            boolean mrXTurn = state.getAvailableMoves().asList().get(0).commencedBy().isMrX();
+            long start = System.nanoTime();
+            Move move = mrXTurn ? mrX.pickMove(state, moveTime) : detectives.pickMove(state, moveTime);
+            statistics.record(mrXTurn, System.nanoTime() - start);
+            state = state.advance(move);
+        }
+        return state.getWinner().asList().get(0).isMrX();
+    }
+
+    /**
+     * Creates the test results of games that have already been played
+     * @param mrX The name of the MrX AI
+     * @param detectives The name of the detective AI
+     * @param noTests The number of games played
+     * @param xWins The number of games MrX won
+     * @param testTime The time spent playing the games in seconds
+     * @param moveTime The time allowed to make a move
+     * @return Test results
+     */
+    static PlayGame fromResults(String mrX, String detectives, int noTests, int xWins, double testTime,
+                                Pair<Long, TimeUnit> moveTime){
+        int detWins = noTests - xWins;
         //Calculate confidence interval of win-rate
         int sumSquareOfX = xWins;// Σ(x^2)
         int sumOfXAllSquared = xWins * xWins;// (Σx)^2
@@ -99,9 +137,7 @@ public final class PlayGame {
         double numerator = (double) sumSquareOfX -  (((double)(sumOfXAllSquared)) / ((double)(noTests)));
         double sampleStanDev = Math.sqrt(numerator / ((double) (noTests - 1)));
         double rangeZ = sampleStanDev / Math.sqrt(noTests);
-        double end = System.currentTimeMillis();
-        return new PlayGame(mrX, detectives, noTests, xWins, detWins, (end - start) / 1000.0,
-                rangeZ, moveTime);
+        return new PlayGame(mrX, detectives, noTests, xWins, detWins, testTime, rangeZ, moveTime);
     }
 
     /**
@@ -110,8 +146,19 @@ public final class PlayGame {
      * @return The state
      */
     public static Board.GameState getRandomStartState() throws IOException {
-        Random rand = new Random();
-        GameSetup set = new GameSetup(standardGraph(),
+        return getRandomStartState(new Random().nextLong());
+    }
+
+    /**
+     * Gets a starting board state using a default graph and setup, with player locations picked by a seed.
+     * The standard graph is only loaded once and is shared between all states.
+     * @param seed The seed
+     * @throws IOException When attempting to load that standard graph, an error may occur.
+     * @return The state
+     */
+    public static Board.GameState getRandomStartState(long seed) throws IOException {
+        Random rand = new Random(seed);
+        GameSetup set = new GameSetup(GraphRegistry.shared().standardGraph(),
                 ScotlandYard.STANDARD24MOVES);
         Player mrX = new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(),
                 ScotlandYard.generateMrXLocation(rand.nextInt()));
@@ -126,21 +173,19 @@ public final class PlayGame {
         return MyGameStateFactory.a(set, mrX, detectives.build());
     }
     /**
-     * Run this to test difference between two chosen AI players
+     * Run this to test difference between two chosen AI players. Games are played in parallel, one per core.
      * @param args
      */
     public static void main(String[] args) {
         final Pair<Long, TimeUnit> MOVE_TIME = new Pair<>(1000L, TimeUnit.MILLISECONDS);
-        Ai mrX = new ScotlandAiEasy();
-        Ai det = new ScotlandAiEasy();
-        mrX.onStart();
-        det.onStart();
+        Tournament tournament = new Tournament(ScotlandAiEasy::new, ScotlandAiEasy::new,
+                Runtime.getRuntime().availableProcessors());
         try{
-            System.out.println(PlayGame.testAi(mrX, det, 1000, MOVE_TIME));
+            System.out.println(tournament.play(1000, new Random().nextLong(), MOVE_TIME));
         }catch(IOException e){
             System.err.println("Error " + e);
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
         }
-        mrX.onTerminate();
-        det.onTerminate();
     }
 }
@@ -0,0 +1,78 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.standardGraph;
+
+/**
+ * JMH benchmark for the playout engine. Each benchmark runs on a single thread, so the reported
+ * throughput is the number of playouts per second per core.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlayoutBenchmark {
+    private static final int NO_START_STATES = 64;
+    private PlayoutState[] startStates;
+    private PlayoutEngine randomEngine;
+    private PlayoutEngine guidedEngine;
+    private int next;
+
+    /**
+     * Creates a pool of random start states and the engines being measured
+     * @throws IOException If the standard graph can't be loaded
+     */
+    @Setup
+    public void setUp() throws IOException{
+        startStates = new PlayoutState[NO_START_STATES];
+        var standardGraph = standardGraph();
+        CompiledGraph graph = CompiledGraph.compile(standardGraph);
+        for(int i = 0; i < NO_START_STATES; i++){
+            MyGameState state = MyGameState.getPossibleStates(PlayGame.getRandomStartState()).get(0);
+            startStates[i] = PlayoutState.fromGameState(state, graph);
+        }
+        CachedDijkstra distance = CachedDijkstra.preComputeAllDistances(standardGraph, new OneCostPerEdge());
+        randomEngine = new PlayoutEngine(graph, new RandomPlayoutPolicy(), new RandomPlayoutPolicy(), 1);
+        guidedEngine = new PlayoutEngine(graph, new EvadeDetectivesPolicy(graph, distance, 0.1f),
+                new NearestCandidatePolicy(graph, distance, 0.1f), 1);
+    }
+
+    /**
+     * Plays a game to completion with both sides playing uniformly random moves
+     * @return The winner (returned so the playout isn't optimised away)
+     */
+    @Benchmark
+    public int randomPlayout(){
+        next = (next + 1) % NO_START_STATES;
+        return randomEngine.playout(startStates[next]);
+    }
+
+    /**
+     * Plays a game to completion with the distance based light policies
+     * @return The winner (returned so the playout isn't optimised away)
+     */
+    @Benchmark
+    public int guidedPlayout(){
+        next = (next + 1) % NO_START_STATES;
+        return guidedEngine.playout(startStates[next]);
+    }
+
+    /**
+     * Runs the benchmark
+     * @param args Unused
+     * @throws RunnerException If the benchmark fails to run
+     */
+    public static void main(String[] args) throws RunnerException{
+        new Runner(new OptionsBuilder().include(PlayoutBenchmark.class.getSimpleName()).build()).run();
+    }
+}
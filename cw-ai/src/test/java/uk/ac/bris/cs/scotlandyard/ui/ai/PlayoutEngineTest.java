@@ -0,0 +1,166 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.LogEntry;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests that the playout engine follows the same rules as the game states it mirrors
+ */
+public class PlayoutEngineTest extends ParameterisedModelTestBase{
+    @Test
+    /**
+     * Tests random games played on a playout state and a game state side by side, checking the moves (single,
+     * double and secret), the tickets, MrX's last known location and the winner after every move
+     */
+    public void MatchesGameStateOnRandomGames() throws IOException{
+        Random random = new Random(23);
+        CompiledGraph graph = CompiledGraph.compile(standardGraph());
+        PlayoutEngine engine = new PlayoutEngine(graph, new RandomPlayoutPolicy(), new RandomPlayoutPolicy(), 1);
+        int[] winners = new int[3];
+        for(int game = 0; game < 150; game++){
+            MyGameState state = MyGameState.getPossibleStates(PlayGame.getRandomStartState(random.nextLong())).get(0);
+            winners[playSideBySide(engine, graph, state, random)]++;
+        }
+        //Both sides should have won some of the games
+        assertThat(winners[PlayoutState.MRX_WINS]).isPositive();
+        assertThat(winners[PlayoutState.DETECTIVES_WIN]).isPositive();
+    }
+
+    @Test
+    /**
+     * Tests random games where every player starts with a few tickets, so that detectives and MrX often can't
+     * move (including when MrX is stranded after every detective gets stuck)
+     */
+    public void MatchesGameStateWithFewTickets(){
+        Random random = new Random(29);
+        CompiledGraph graph = CompiledGraph.compile(standardGraph());
+        PlayoutEngine engine = new PlayoutEngine(graph, new RandomPlayoutPolicy(), new RandomPlayoutPolicy(), 1);
+        for(int game = 0; game < 1500; game++){
+            Player mrX = new Player(Piece.MrX.MRX, makeTickets(random.nextInt(4), random.nextInt(3),
+                    random.nextInt(2), random.nextInt(2), random.nextInt(2)),
+                    ScotlandYard.generateMrXLocation(random.nextInt()));
+            List<Integer> locations = ScotlandYard.generateDetectiveLocations(random.nextInt(),
+                    Piece.Detective.values().length);
+            int noDetectives = 1 + random.nextInt(locations.size());
+            List<Player> detectives = new ArrayList<>();
+            for(int d = 0; d < noDetectives; d++){
+                detectives.add(new Player(Piece.Detective.values()[d], makeTickets(random.nextInt(4),
+                        random.nextInt(3), random.nextInt(2), 0, 0), locations.get(d)));
+            }
+            Board.GameState board = gameStateFactory.build(standard24MoveSetup(), mrX,
+                    ImmutableList.copyOf(detectives));
+            //MrX may not be able to move at all, so his location is given rather than found from his moves
+            playSideBySide(engine, graph, MyGameState.withMrXLocation(board, mrX.location()), random);
+        }
+    }
+
+    /**
+     * Plays a random game on a playout state and a game state side by side, checking that they match after
+     * every move
+     * @param engine The engine used to generate and make moves
+     * @param graph The compiled graph of the game
+     * @param state The game state to start from (MrX's location must be known)
+     * @param random Picks the moves
+     * @return The winner (as a playout winner)
+     */
+    private static int playSideBySide(PlayoutEngine engine, CompiledGraph graph, MyGameState state,
+                                      Random random){
+        PlayoutState playout = PlayoutState.fromGameState(state, graph);
+        while(true){
+            int noMoves = engine.legalMoves(playout);
+            //Every engine move must be one of the model's moves, with no move generated twice
+            Map<Move, Integer> moves = new HashMap<>();
+            for(int i = 0; i < noMoves; i++){
+                assertThat(moves.put(toMove(playout, engine.getMove(i), state), engine.getMove(i))).isNull();
+            }
+            assertThat(moves.keySet()).isEqualTo(state.getAvailableMoves());
+            assertThat(playout.getWinner()).isEqualTo(winner(state));
+            assertSameState(playout, state, graph);
+            if(noMoves == 0) return playout.getWinner();
+            List<Move> available = state.getAvailableMoves().asList();
+            Move move = available.get(random.nextInt(available.size()));
+            engine.applyMove(playout, moves.get(move));
+            state = state.advance(move);
+        }
+    }
+
+    /**
+     * Converts an encoded move to a model move
+     * @param playout The playout state the move was generated for
+     * @param move The encoded move
+     * @param state The game state matching the playout state
+     * @return The move
+     */
+    private static Move toMove(PlayoutState playout, int move, MyGameState state){
+        CompiledGraph graph = playout.getGraph();
+        ScotlandYard.Ticket[] tickets = ScotlandYard.Ticket.values();
+        int player = PlayoutState.movePlayer(move);
+        Piece piece = player == PlayoutState.MRX ? Piece.MrX.MRX : state.getDetectives().get(player - 1).piece();
+        int source = graph.nodeId(player == PlayoutState.MRX ? playout.getMrX() : playout.getDetective(player - 1));
+        int destination = graph.nodeId(PlayoutState.moveDestination(move));
+        ScotlandYard.Ticket ticket = tickets[PlayoutState.moveTicket(move)];
+        if(!PlayoutState.isDoubleMove(move)) return new Move.SingleMove(piece, source, ticket, destination);
+        return new Move.DoubleMove(piece, source, ticket, destination,
+                tickets[PlayoutState.moveSecondTicket(move)], graph.nodeId(PlayoutState.moveSecondDestination(move)));
+    }
+
+    /**
+     * Gets the winner of a game state as a playout winner
+     * @param state The state
+     * @return NO_WINNER, MRX_WINS or DETECTIVES_WIN
+     */
+    private static int winner(MyGameState state){
+        if(state.getWinner().isEmpty()) return PlayoutState.NO_WINNER;
+        return state.getWinner().contains(Piece.MrX.MRX) ? PlayoutState.MRX_WINS : PlayoutState.DETECTIVES_WIN;
+    }
+
+    /**
+     * Checks that the locations, tickets, round and MrX's last known location of the two states match
+     * @param playout The playout state
+     * @param state The game state
+     * @param graph The compiled graph
+     */
+    private static void assertSameState(PlayoutState playout, MyGameState state, CompiledGraph graph){
+        assertThat(graph.nodeId(playout.getMrX())).isEqualTo(state.getMrX().location());
+        assertTickets(playout, PlayoutState.MRX, state.getMrX());
+        List<Player> detectives = state.getDetectives();
+        for(int d = 0; d < detectives.size(); d++){
+            assertThat(graph.nodeId(playout.getDetective(d))).isEqualTo(detectives.get(d).location());
+            assertTickets(playout, d + 1, detectives.get(d));
+        }
+        assertThat(playout.getRound()).isEqualTo(state.getMrXTravelLog().size());
+        int lastKnown = CompiledGraph.NO_INDEX;
+        for(LogEntry entry : state.getMrXTravelLog()){
+            if(entry.location().isPresent()) lastKnown = graph.index(entry.location().get());
+        }
+        assertThat(playout.getLastKnownMrX()).isEqualTo(lastKnown);
+    }
+
+    /**
+     * Checks that a player holds the same tickets in both states
+     * @param playout The playout state
+     * @param player The player index
+     * @param model The player in the game state
+     */
+    private static void assertTickets(PlayoutState playout, int player, Player model){
+        for(ScotlandYard.Ticket t : ScotlandYard.Ticket.values()){
+            assertThat(playout.getTickets(player, t.ordinal())).as("%s tickets of %s", t, model.piece())
+                    .isEqualTo(model.tickets().getOrDefault(t, 0));
+        }
+    }
+}
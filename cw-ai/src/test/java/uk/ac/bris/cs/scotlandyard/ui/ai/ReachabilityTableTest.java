@@ -0,0 +1,90 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import org.junit.Test;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests that the reachability table gives the same nodes as walking the compiled graph
+ */
+public class ReachabilityTableTest extends ParameterisedModelTestBase{
+    @Test
+    /**
+     * Tests every start node, transport mask and number of moves against a breadth first walk
+     */
+    public void MatchesGraphWalk(){
+        CompiledGraph graph = CompiledGraph.compile(standardGraph());
+        ReachabilityTable table = new ReachabilityTable(graph);
+        for(int mask = 0; mask <= CompiledGraph.ALL_TRANSPORTS; mask++){
+            for(int from = 0; from < graph.size(); from++){
+                boolean[] reached = new boolean[graph.size()];
+                reached[from] = true;
+                for(int k = 0; k <= table.getMaxMoves(); k++){
+                    for(int to = 0; to < graph.size(); to++){
+                        assertThat(table.canReach(from, k, mask, to))
+                                .as("%d to %d in %d moves with mask %d", from, to, k, mask).isEqualTo(reached[to]);
+                    }
+                    reached = step(graph, reached, mask);
+                }
+            }
+        }
+    }
+
+    @Test
+    /**
+     * Tests the danger masks and detective reach of states from random games against the detectives' moves
+     */
+    public void DangerMatchesDetectiveMoves() throws IOException{
+        Random random = new Random(31);
+        CompiledGraph graph = CompiledGraph.compile(standardGraph());
+        ReachabilityTable table = new ReachabilityTable(graph);
+        for(int game = 0; game < 20; game++){
+            MyGameState state = MyGameState.getPossibleStates(PlayGame.getRandomStartState(random.nextLong())).get(0);
+            while(state.getWinner().isEmpty()){
+                boolean[] danger = new boolean[graph.size()];
+                for(Player det : state.getDetectives()){
+                    int from = graph.index(det.location());
+                    danger[from] = true;
+                    boolean[] next = new boolean[graph.size()];
+                    next[from] = true;
+                    next = step(graph, next, ReachabilityTable.transportMask(det.tickets()));
+                    for(int i = 0; i < danger.length; i++) danger[i] |= next[i];
+                }
+                long[] mask = table.dangerMask(state);
+                for(int i = 0; i < graph.size(); i++){
+                    assertThat((mask[i >>> 6] & (1L << i)) != 0).isEqualTo(danger[i]);
+                    boolean occupied = false;
+                    for(Player det : state.getDetectives()) occupied |= graph.index(det.location()) == i;
+                    //A detective can reach its own node by moving away and back, but not with a single move
+                    if(!occupied) assertThat(table.canAnyDetectiveReach(state, graph.nodeId(i))).isEqualTo(danger[i]);
+                }
+                List<Move> moves = state.getAvailableMoves().asList();
+                state = state.advance(moves.get(random.nextInt(moves.size())));
+            }
+        }
+    }
+
+    /**
+     * Gets the nodes reachable with one more move
+     * @param graph The graph
+     * @param reached The nodes reached so far, by dense index
+     * @param mask The transports that can be used
+     * @return The nodes reachable in one move from any reached node
+     */
+    private static boolean[] step(CompiledGraph graph, boolean[] reached, int mask){
+        boolean[] next = new boolean[graph.size()];
+        for(int i = 0; i < graph.size(); i++){
+            if(!reached[i]) continue;
+            for(int e = graph.edgeStart(i); e < graph.edgeEnd(i); e++){
+                if((graph.edgeTransports(e) & mask) != 0) next[graph.edgeTarget(e)] = true;
+            }
+        }
+        return next;
+    }
+}
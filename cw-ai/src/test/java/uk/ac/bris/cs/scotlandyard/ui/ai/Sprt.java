@@ -0,0 +1,202 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import io.atlassian.fugue.Pair;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sequential probability ratio test of whether a candidate MrX AI is stronger than a baseline MrX AI when both
+ * play the same detectives. Scotland Yard isn't symmetric, so a side's win rate says nothing about its strength
+ * on its own, and the hypotheses are offsets from the baseline's win rate p0 instead. If b is the Elo difference
+ * that gives p0 (where a difference of d points means winning with probability 1 / (1 + 10^(-d/400))), the
+ * hypotheses are that the candidate wins with the chance given by b + elo0 (H0) or b + elo1 (H1), so an offset
+ * of 0 means the candidate is as strong as the baseline. p0 can be given or measured by playing the baseline on
+ * the same game seeds (see {@link Sprt#main(String[])}).
+ * <br>
+ * The log-likelihood ratio of H1 to H0 is updated after each of the candidate's games, and the test stops as
+ * soon as it crosses a bound set by the chance of a false positive (alpha) and a false negative (beta). Games
+ * can't be drawn, so every game is a win or a loss.
+ * <br>
+ * The test is a {@link Tournament.GameListener}, so games can be played in parallel and stopped as soon as the
+ * test is decided.
+ */
+public final class Sprt implements Tournament.GameListener {
+    private final double baseline;
+    private final double elo0;
+    private final double elo1;
+    private final double p0; //Chance of the candidate winning under H0
+    private final double p1; //Chance under H1
+    private final double winLlr; //Change in the log-likelihood ratio when MrX wins
+    private final double lossLlr; //Change when MrX loses
+    private final double lowerBound;
+    private final double upperBound;
+    private double llr = 0;
+    private int games = 0;
+    private int xWins = 0;
+    private Decision decision = Decision.CONTINUE;
+
+    /**
+     * The state of a test
+     */
+    public enum Decision {
+        CONTINUE, ACCEPT_H0, ACCEPT_H1
+    }
+
+    /**
+     * Creates a test
+     * @param baseline The chance of the baseline MrX AI beating the detectives
+     * @param elo0 The Elo offset from the baseline of the null hypothesis
+     * @param elo1 The Elo offset from the baseline of the alternative hypothesis (must differ from elo0)
+     * @param alpha The chance of accepting H1 when H0 is true
+     * @param beta The chance of accepting H0 when H1 is true
+     */
+    public Sprt(double baseline, double elo0, double elo1, double alpha, double beta){
+        if(baseline <= 0 || baseline >= 1) throw new IllegalArgumentException("The baseline must be between 0 and 1");
+        if(elo0 == elo1) throw new IllegalArgumentException("The hypotheses must differ");
+        if(alpha <= 0 || alpha >= 1 || beta <= 0 || beta >= 1)
+            throw new IllegalArgumentException("Alpha and beta must be between 0 and 1");
+        this.baseline = baseline;
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+        p0 = expectedScore(eloDifference(baseline) + elo0);
+        p1 = expectedScore(eloDifference(baseline) + elo1);
+        winLlr = Math.log(p1 / p0);
+        lossLlr = Math.log((1 - p1) / (1 - p0));
+        lowerBound = Math.log(beta / (1 - alpha));
+        upperBound = Math.log((1 - beta) / alpha);
+    }
+
+    /**
+     * Gets the chance of winning a game against an opponent
+     * @param elo The Elo difference to the opponent
+     * @return The chance of winning
+     */
+    public static double expectedScore(double elo){
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /**
+     * Gets the Elo difference that gives a chance of winning (the inverse of {@link Sprt#expectedScore(double)})
+     * @param score The chance of winning (between 0 and 1)
+     * @return The Elo difference
+     */
+    public static double eloDifference(double score){
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    @Override
+    public synchronized boolean onGameFinished(int game, boolean mrXWon){
+        if(decision != Decision.CONTINUE) return false;
+        games++;
+        if(mrXWon) xWins++;
+        llr += mrXWon ? winLlr : lossLlr;
+        if(llr >= upperBound) decision = Decision.ACCEPT_H1;
+        else if(llr <= lowerBound) decision = Decision.ACCEPT_H0;
+        return decision == Decision.CONTINUE;
+    }
+
+    /**
+     * Gets the state of the test
+     * @return The decision, or CONTINUE if more games are needed
+     */
+    public synchronized Decision getDecision(){
+        return decision;
+    }
+
+    /**
+     * Gets the log-likelihood ratio of H1 to H0
+     * @return The ratio
+     */
+    public synchronized double getLlr(){
+        return llr;
+    }
+
+    /**
+     * Gets the number of games the test has used
+     * @return The number of games
+     */
+    public synchronized int getGames(){
+        return games;
+    }
+
+    /**
+     * Gets the bounds the log-likelihood ratio is compared against
+     * @return The lower bound (accept H0) and upper bound (accept H1)
+     */
+    public Pair<Double, Double> getBounds(){
+        return new Pair<>(lowerBound, upperBound);
+    }
+
+    /**
+     * Gets the chance of the candidate winning under each hypothesis
+     * @return The chance under H0 and under H1
+     */
+    public Pair<Double, Double> getWinChances(){
+        return new Pair<>(p0, p1);
+    }
+
+    /**
+     * Runs the test on a tournament
+     * @param tournament The tournament
+     * @param maxGames The number of games played if the test isn't decided
+     * @param seed The tournament seed
+     * @param moveTime The time allowed to make a move
+     * @return A summary of the results
+     * @throws IOException If the standard graph can't be loaded
+     * @throws InterruptedException If interrupted while waiting for the games to finish
+     */
+    public String run(Tournament tournament, int maxGames, long seed, Pair<Long, TimeUnit> moveTime)
+            throws IOException, InterruptedException{
+        PlayGame results = tournament.play(maxGames, seed, moveTime, this);
+        return results + "\n" + this + "\nGames saved: " + (maxGames - getGames()) + " of " + maxGames;
+    }
+
+    @Override
+    public synchronized String toString(){
+        return "SPRT baseline=" + String.format("%.3f", baseline) + " elo0=" + elo0 + " elo1=" + elo1 + ": "
+                + decision + " after " + games + " games (" + xWins + " MrX wins), LLR " + String.format("%.3f", llr)
+                + " [" + String.format("%.3f", lowerBound) + ", " + String.format("%.3f", upperBound) + "]";
+    }
+
+    /**
+     * Run this to test whether the hard MrX AI is stronger than the medium one against the medium detectives.
+     * Unless it's given, the baseline win rate is measured first by playing the medium MrX AI on the same game
+     * seeds the test uses.
+     * @param args elo0, elo1, alpha, beta, the maximum number of games, the number of games used to measure the
+     * baseline and the baseline win rate (all optional)
+     */
+    public static void main(String[] args){
+        final Pair<Long, TimeUnit> MOVE_TIME = new Pair<>(1000L, TimeUnit.MILLISECONDS);
+        double elo0 = args.length > 0 ? Double.parseDouble(args[0]) : 0;
+        double elo1 = args.length > 1 ? Double.parseDouble(args[1]) : 50;
+        double alpha = args.length > 2 ? Double.parseDouble(args[2]) : 0.05;
+        double beta = args.length > 3 ? Double.parseDouble(args[3]) : 0.05;
+        int maxGames = args.length > 4 ? Integer.parseInt(args[4]) : 1000;
+        int baselineGames = args.length > 5 ? Integer.parseInt(args[5]) : 400;
+        int workers = Runtime.getRuntime().availableProcessors();
+        long seed = new Random().nextLong();
+        try{
+            double baseline;
+            if(args.length > 6) baseline = Double.parseDouble(args[6]);
+            else{
+                int[] wins = new int[1];
+                Tournament base = new Tournament(ScotlandAiFairlyMedium::new, ScotlandAiFairlyMedium::new, workers);
+                System.out.println(base.play(baselineGames, seed, MOVE_TIME, (game, mrXWon) -> {
+                    if(mrXWon) wins[0]++;
+                    return true;
+                }));
+                //Adds half a win and half a loss so that a baseline that always wins or loses can still be used
+                baseline = (wins[0] + 0.5) / (baselineGames + 1);
+            }
+            Tournament tournament = new Tournament(ScotlandAiHard::new, ScotlandAiFairlyMedium::new, workers);
+            System.out.println(new Sprt(baseline, elo0, elo1, alpha, beta).run(tournament, maxGames, seed,
+                    MOVE_TIME));
+        }catch(IOException e){
+            System.err.println("Error " + e);
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+}
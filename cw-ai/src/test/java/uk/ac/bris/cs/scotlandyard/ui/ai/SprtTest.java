@@ -0,0 +1,78 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Tests the sequential probability ratio test used to compare MrX AIs
+ */
+public class SprtTest extends ParameterisedModelTestBase{
+    @Test
+    /**
+     * Tests that the hypotheses are offsets from the baseline and that each game changes the log-likelihood
+     * ratio by the log of the ratio of the chances of its result
+     */
+    public void LlrIncrementsAndBounds(){
+        Sprt sprt = new Sprt(0.3, 0, 50, 0.05, 0.1);
+        double p0 = sprt.getWinChances().left();
+        double p1 = sprt.getWinChances().right();
+        //An offset of 0 is the baseline's own win rate
+        assertThat(p0).isCloseTo(0.3, within(1e-12));
+        assertThat(p1).isCloseTo(Sprt.expectedScore(Sprt.eloDifference(0.3) + 50), within(1e-12));
+        assertThat(p1).isBetween(0.3, 0.4);
+        assertThat(sprt.getBounds().left()).isCloseTo(Math.log(0.1 / 0.95), within(1e-12));
+        assertThat(sprt.getBounds().right()).isCloseTo(Math.log(0.9 / 0.05), within(1e-12));
+        assertThat(sprt.onGameFinished(0, true)).isTrue();
+        assertThat(sprt.getLlr()).isCloseTo(Math.log(p1 / p0), within(1e-12));
+        assertThat(sprt.onGameFinished(1, false)).isTrue();
+        assertThat(sprt.getLlr()).isCloseTo(Math.log(p1 / p0) + Math.log((1 - p1) / (1 - p0)), within(1e-12));
+        //Enough wins cross the upper bound, after which games are ignored
+        int games = 2;
+        while(sprt.onGameFinished(games, true)) games++;
+        assertThat(sprt.getDecision()).isEqualTo(Sprt.Decision.ACCEPT_H1);
+        assertThat(sprt.getLlr()).isGreaterThanOrEqualTo(sprt.getBounds().right());
+        assertThat(sprt.getLlr() - Math.log(p1 / p0)).isLessThan(sprt.getBounds().right());
+        assertThat(sprt.onGameFinished(games + 1, false)).isFalse();
+        assertThat(sprt.getGames()).isEqualTo(games + 1);
+    }
+
+    @Test
+    /**
+     * Simulates tests where the candidate plays exactly at H0 or exactly at H1, checking that H1 is accepted
+     * about alpha of the time under H0 and about 1 - beta of the time under H1
+     */
+    public void ErrorRatesMatchAlphaAndBeta(){
+        Random random = new Random(59);
+        //A baseline far from 50% as in Scotland Yard, where the sides aren't equally strong
+        Sprt settings = new Sprt(0.3, 0, 50, 0.05, 0.05);
+        int runs = 2000;
+        int falsePositives = 0;
+        int truePositives = 0;
+        for(int run = 0; run < runs; run++){
+            if(simulate(random, settings.getWinChances().left()) == Sprt.Decision.ACCEPT_H1) falsePositives++;
+            if(simulate(random, settings.getWinChances().right()) == Sprt.Decision.ACCEPT_H1) truePositives++;
+        }
+        //Wald's bounds keep the error rates close to (and usually below) alpha and beta
+        assertThat(falsePositives / (double) runs).isBetween(0.03, 0.07);
+        assertThat(truePositives / (double) runs).isBetween(0.93, 0.97);
+    }
+
+    /**
+     * Runs a test with games won at random until it's decided
+     * @param random Decides the games
+     * @param winChance The chance of the candidate winning each game
+     * @return The decision
+     */
+    private static Sprt.Decision simulate(Random random, double winChance){
+        Sprt sprt = new Sprt(0.3, 0, 50, 0.05, 0.05);
+        int game = 0;
+        while(sprt.onGameFinished(game++, random.nextDouble() < winChance)){
+            assertThat(game).isLessThan(100000);
+        }
+        return sprt.getDecision();
+    }
+}
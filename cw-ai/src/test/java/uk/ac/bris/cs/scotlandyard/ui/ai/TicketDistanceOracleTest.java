@@ -0,0 +1,107 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests that the ticket aware distance oracle gives the same answers as a search over every ticket state
+ */
+public class TicketDistanceOracleTest extends ParameterisedModelTestBase{
+    @Test
+    /**
+     * Tests random queries with few tickets (so the fallback search is used) against a breadth first search
+     * over (node, tickets) states
+     */
+    public void MatchesExhaustiveSearch(){
+        CompiledGraph graph = CompiledGraph.compile(standardGraph());
+        TicketDistanceOracle oracle = new TicketDistanceOracle(graph, 1 << 20);
+        Random random = new Random(7);
+        for(int query = 0; query < 2000; query++){
+            int from = random.nextInt(graph.size());
+            int to = random.nextInt(graph.size());
+            int taxi = random.nextInt(5);
+            int bus = random.nextInt(4);
+            int underground = random.nextInt(3);
+            assertThat(oracle.minMovesByIndex(from, to, taxi, bus, underground))
+                    .isEqualTo(exhaustiveSearch(graph, from, to, taxi, bus, underground));
+        }
+    }
+
+    @Test
+    /**
+     * Tests random queries with tickets close to a detective's starting tickets (so the precomputed tables are
+     * nearly always used) against a breadth first search over (node, tickets) states
+     */
+    public void MatchesExhaustiveSearchWithStartingTickets(){
+        CompiledGraph graph = CompiledGraph.compile(standardGraph());
+        TicketDistanceOracle oracle = new TicketDistanceOracle(graph, 1 << 20);
+        Random random = new Random(11);
+        for(int query = 0; query < 300; query++){
+            int from = random.nextInt(graph.size());
+            int to = random.nextInt(graph.size());
+            int taxi = 8 + random.nextInt(4);
+            int bus = 5 + random.nextInt(4);
+            int underground = 1 + random.nextInt(4);
+            assertThat(oracle.minMovesByIndex(from, to, taxi, bus, underground))
+                    .isEqualTo(exhaustiveSearch(graph, from, to, taxi, bus, underground));
+        }
+    }
+
+    @Test
+    /**
+     * Tests that a detective with no tickets can't move and that distances with plenty of tickets match
+     * the unrestricted table
+     */
+    public void HandlesEmptyAndFullTicketCounts(){
+        CompiledGraph graph = CompiledGraph.compile(standardGraph());
+        TicketDistanceOracle oracle = new TicketDistanceOracle(graph);
+        assertThat(oracle.minMoves(1, 8, 0, 0, 0)).isEqualTo(TicketDistanceOracle.UNREACHABLE);
+        assertThat(oracle.minMoves(1, 1, 0, 0, 0)).isZero();
+        assertThat(oracle.minMoves(1, 8, 11, 8, 4)).isEqualTo(1);
+        //Edges that can only be travelled by underground need more moves without underground tickets
+        for(int i = 0; i < graph.size(); i++){
+            for(int e = graph.edgeStart(i); e < graph.edgeEnd(i); e++){
+                if(graph.edgeTransports(e) != CompiledGraph.UNDERGROUND_BIT) continue;
+                assertThat(oracle.minMovesByIndex(i, graph.edgeTarget(e), 11, 8, 4)).isEqualTo(1);
+                assertThat(oracle.minMovesByIndex(i, graph.edgeTarget(e), 11, 8, 0)).isGreaterThan(1);
+            }
+        }
+    }
+
+    /**
+     * Finds the smallest number of moves between two nodes by searching every ticket state
+     * @param graph The graph
+     * @param from The start index
+     * @param to The destination index
+     * @param taxi The taxi tickets
+     * @param bus The bus tickets
+     * @param underground The underground tickets
+     * @return The number of moves, or UNREACHABLE
+     */
+    private static int exhaustiveSearch(CompiledGraph graph, int from, int to, int taxi, int bus, int underground){
+        ArrayDeque<int[]> queue = new ArrayDeque<>();
+        Set<Integer> seen = new HashSet<>();
+        queue.add(new int[]{from, taxi, bus, underground, 0});
+        seen.add(((from * 32 + taxi) * 32 + bus) * 32 + underground);
+        int[] bits = {CompiledGraph.TAXI_BIT, CompiledGraph.BUS_BIT, CompiledGraph.UNDERGROUND_BIT};
+        while(!queue.isEmpty()){
+            int[] state = queue.poll();
+            if(state[0] == to) return state[4];
+            for(int e = graph.edgeStart(state[0]); e < graph.edgeEnd(state[0]); e++){
+                for(int k = 0; k < 3; k++){
+                    if(state[k + 1] == 0 || (graph.edgeTransports(e) & bits[k]) == 0) continue;
+                    int[] next = {graph.edgeTarget(e), state[1], state[2], state[3], state[4] + 1};
+                    next[k + 1]--;
+                    if(seen.add(((next[0] * 32 + next[1]) * 32 + next[2]) * 32 + next[3])) queue.add(next);
+                }
+            }
+        }
+        return TicketDistanceOracle.UNREACHABLE;
+    }
+}
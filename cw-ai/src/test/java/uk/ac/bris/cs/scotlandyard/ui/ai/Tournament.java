@@ -0,0 +1,172 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Plays games between two AI opponents on a pool of worker threads.
+ * Each worker creates its own instances of the AIs, so an AI is only ever used by one thread, and plays games
+ * until none are left. The standard graph is loaded once and the AIs' precomputation is shared through
+ * {@link GraphRegistry#shared()}.
+ * <br>
+ * The start state of game i only depends on the tournament seed and i, so the same seed gives the same games
+ * whatever the number of workers (the moves picked by time limited AIs can still differ between runs).
+ * Workers compete for cores, so moveTime should be kept below the time each game gets when comparing results
+ * between machines.
+ * <br>
+ * A {@link GameListener} can be told about each game and stop the tournament early. Results are buffered and
+ * given to the listener in game index order, so games that take longer (which may favour one side) aren't
+ * counted later than the others. When it stops at game k, exactly games 0 to k are counted, and games after k
+ * that are still being played are thrown away.
+ */
+public final class Tournament {
+    private final Supplier<? extends Ai> mrX;
+    private final Supplier<? extends Ai> detectives;
+    private final int workers;
+    private final MoveStatistics statistics = new MoveStatistics();
+
+    /**
+     * Creates a tournament
+     * @param mrX Creates a new instance of the MrX AI
+     * @param detectives Creates a new instance of the detective AI
+     * @param workers The number of games played at once
+     */
+    public Tournament(Supplier<? extends Ai> mrX, Supplier<? extends Ai> detectives, int workers){
+        if(workers < 1) throw new IllegalArgumentException("There must be at least one worker");
+        this.mrX = mrX;
+        this.detectives = detectives;
+        this.workers = workers;
+    }
+
+    /**
+     * Gets the time taken to pick moves in every game played by the tournament
+     * @return The statistics
+     */
+    public MoveStatistics getStatistics(){
+        return statistics;
+    }
+
+    /**
+     * Listens for games finishing. Calls are made one at a time, in game index order (a game is only reported
+     * once every game before it has finished).
+     */
+    @FunctionalInterface
+    public interface GameListener {
+        /**
+         * Called when a game finishes
+         * @param game The index of the game
+         * @param mrXWon Whether MrX won
+         * @return Whether more games should be played
+         */
+        boolean onGameFinished(int game, boolean mrXWon);
+    }
+
+    /**
+     * Gets the seed of the start state of a game
+     * @param seed The tournament seed
+     * @param game The index of the game
+     * @return The seed of the game
+     */
+    public static long gameSeed(long seed, int game){
+        return GraphFingerprint.mix(seed + game * 0x9E3779B97F4A7C15L);
+    }
+
+    /**
+     * Plays the games
+     * @param noGames The number of games
+     * @param seed The tournament seed
+     * @param moveTime The time allowed to make a move
+     * @return Test results
+     * @throws IOException If the standard graph can't be loaded
+     * @throws InterruptedException If interrupted while waiting for the games to finish
+     */
+    public PlayGame play(int noGames, long seed, Pair<Long, TimeUnit> moveTime)
+            throws IOException, InterruptedException{
+        return play(noGames, seed, moveTime, (game, mrXWon) -> true);
+    }
+
+    /**
+     * Plays the games, stopping early if the listener asks to
+     * @param noGames The maximum number of games
+     * @param seed The tournament seed
+     * @param moveTime The time allowed to make a move
+     * @param listener Told about each game, in game index order
+     * @return Test results of the games counted before stopping
+     * @throws IOException If the standard graph can't be loaded
+     * @throws InterruptedException If interrupted while waiting for the games to finish
+     */
+    public PlayGame play(int noGames, long seed, Pair<Long, TimeUnit> moveTime, GameListener listener)
+            throws IOException, InterruptedException{
+        GraphRegistry.shared().standardGraph();
+        double start = System.currentTimeMillis();
+        AtomicInteger nextGame = new AtomicInteger();
+        //Results are only changed while holding the lock, so the listener sees them in a consistent order
+        Object lock = new Object();
+        int[] results = new int[2]; //Games counted and MrX wins
+        Boolean[] finished = new Boolean[noGames]; //Whether MrX won each finished game that hasn't been reported
+        int[] nextReport = new int[1];
+        //Games from this index on aren't needed, lowered when the listener stops the tournament
+        AtomicInteger stopAt = new AtomicInteger(noGames);
+        String[] names = new String[2];
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        List<Future<?>> running = new ArrayList<>(workers);
+        try{
+            for(int w = 0; w < workers; w++){
+                final boolean first = w == 0;
+                running.add(pool.submit(() -> {
+                    Ai x = mrX.get();
+                    Ai det = detectives.get();
+                    if(first){
+                        names[0] = x.name();
+                        names[1] = det.name();
+                    }
+                    x.onStart();
+                    det.onStart();
+                    try{
+                        for(int g = nextGame.getAndIncrement(); g < stopAt.get(); g = nextGame.getAndIncrement()){
+                            boolean won = PlayGame.playGame(x, det, PlayGame.getRandomStartState(gameSeed(seed, g)),
+                                    moveTime, statistics);
+                            synchronized(lock){
+                                if(g >= stopAt.get()) break;
+                                finished[g] = won;
+                                //Reports every game that has no unfinished games before it
+                                while(nextReport[0] < stopAt.get() && finished[nextReport[0]] != null){
+                                    int report = nextReport[0]++;
+                                    boolean mrXWon = finished[report];
+                                    results[0]++;
+                                    if(mrXWon) results[1]++;
+                                    if(!listener.onGameFinished(report, mrXWon)) stopAt.set(report + 1);
+                                }
+                            }
+                        }
+                    }finally{
+                        x.onTerminate();
+                        det.onTerminate();
+                    }
+                    return null;
+                }));
+            }
+            for(Future<?> worker : running) worker.get();
+        }catch(ExecutionException e){
+            if(e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IllegalStateException("Error when playing a game", e.getCause());
+        }finally{
+            pool.shutdownNow();
+        }
+        double end = System.currentTimeMillis();
+        synchronized(lock){
+            return PlayGame.fromResults(names[0], names[1], results[0], results[1], (end - start) / 1000.0, moveTime);
+        }
+    }
+}